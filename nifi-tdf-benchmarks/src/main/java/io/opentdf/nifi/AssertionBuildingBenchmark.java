@@ -0,0 +1,63 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.AssertionConfig;
+import org.apache.nifi.util.MockFlowFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building assertion configs from {@code tdf_assertion_*} attributes in {@link ConvertToZTDF#buildAssertion}. One
+ * distinct assertion is served by the assertion cache; more distinct assertions than the cache holds are parsed
+ * every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssertionBuildingBenchmark {
+
+    static final String ASSERTION_ATTRIBUTE = AbstractToProcessor.TDF_ASSERTION_PREFIX + "1";
+
+    @Param({"1", "1024"})
+    int distinctAssertions;
+
+    private ConvertToZTDF processor;
+    private MockFlowFile[] flowFiles;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        processor = new ConvertToZTDF();
+        flowFiles = new MockFlowFile[distinctAssertions];
+        for (int i = 0; i < distinctAssertions; i++) {
+            String assertion = """
+                    {"id": "%d", "type": "handling", "appliesToState": "unencrypted", "scope": "payload",
+                     "statement": {"value": "benchmark assertion %d", "format": "sample"}}
+                    """.formatted(i, i);
+            flowFiles[i] = new MockFlowFile(i);
+            flowFiles[i].putAttributes(Map.of(ASSERTION_ATTRIBUTE, assertion));
+        }
+    }
+
+    @Benchmark
+    public AssertionConfig buildAssertion() throws Exception {
+        MockFlowFile flowFile = flowFiles[next];
+        next = next + 1 == flowFiles.length ? 0 : next + 1;
+        return processor.buildAssertion(null, flowFile, ASSERTION_ATTRIBUTE);
+    }
+}
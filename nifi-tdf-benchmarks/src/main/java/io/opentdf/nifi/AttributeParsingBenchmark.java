@@ -0,0 +1,65 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parsing of the comma separated KAS URL and data attribute values in {@link AbstractToProcessor}. With one distinct
+ * value every parse is served by the memo; with more distinct values than the memo holds every parse misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttributeParsingBenchmark {
+
+    @Param({"1", "4096"})
+    int distinctValues;
+
+    @Param({"1", "8"})
+    int attributesPerValue;
+
+    private AbstractToProcessor processor;
+    private MockFlowFile[] flowFiles;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        processor = new ConvertToNanoTDF();
+        flowFiles = new MockFlowFile[distinctValues];
+        for (int i = 0; i < distinctValues; i++) {
+            final int value = i;
+            String attributes = IntStream.range(0, attributesPerValue)
+                    .mapToObj(a -> "https://example.org/attr/a" + a + "/value/v" + value)
+                    .collect(Collectors.joining(","));
+            flowFiles[i] = new MockFlowFile(i);
+            flowFiles[i].putAttributes(Map.of(AbstractToProcessor.TDF_ATTRIBUTE, attributes));
+        }
+    }
+
+    @Benchmark
+    public Set<String> getDataAttributes() throws Exception {
+        MockFlowFile flowFile = flowFiles[next];
+        next = next + 1 == flowFiles.length ? 0 : next + 1;
+        return processor.getDataAttributes(flowFile);
+    }
+}
@@ -0,0 +1,89 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.AsymDecryption;
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.CryptoUtils;
+import io.opentdf.platform.sdk.ECKeyPair;
+import io.opentdf.platform.sdk.Header;
+import io.opentdf.platform.sdk.KASKeyCache;
+import io.opentdf.platform.sdk.KeyType;
+import io.opentdf.platform.sdk.Manifest;
+import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * A KAS backed by key pairs generated in process, so benchmarks measure the processors and the SDK cryptography
+ * without network round trips.
+ * <p>
+ * ZTDF keys are wrapped with an RSA 2048 key pair and NanoTDF keys are derived by ECDH with a P-256 key pair, as the
+ * platform KAS does.
+ */
+class LocalKAS implements SDK.KAS {
+
+    static final String KAS_URL = "https://kas.local";
+    static final String RSA_KID = "r1";
+    static final String EC_KID = "e1";
+
+    private final KeyPair rsaKeyPair;
+    private final ECKeyPair ecKeyPair;
+    private final KASKeyCache keyCache = new KASKeyCache();
+
+    LocalKAS() {
+        rsaKeyPair = CryptoUtils.generateRSAKeypair();
+        ecKeyPair = new ECKeyPair(NanoTDFType.ECCurve.SECP256R1.getCurveName(), ECKeyPair.ECAlgorithm.ECDH);
+    }
+
+    @Override
+    public Config.KASInfo getPublicKey(Config.KASInfo kasInfo) {
+        Config.KASInfo publicKey = new Config.KASInfo();
+        publicKey.URL = kasInfo.URL;
+        publicKey.KID = RSA_KID;
+        publicKey.PublicKey = CryptoUtils.getRSAPublicKeyPEM(rsaKeyPair.getPublic());
+        return publicKey;
+    }
+
+    @Override
+    public Config.KASInfo getECPublicKey(Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+        Config.KASInfo publicKey = new Config.KASInfo();
+        publicKey.URL = kasInfo.URL;
+        publicKey.KID = EC_KID;
+        publicKey.PublicKey = ecKeyPair.publicKeyInPEMFormat();
+        return publicKey;
+    }
+
+    @Override
+    public byte[] unwrap(Manifest.KeyAccess keyAccess, String policy, KeyType sessionKeyType) {
+        return new AsymDecryption(rsaKeyPair.getPrivate()).decrypt(Base64.getDecoder().decode(keyAccess.wrappedKey));
+    }
+
+    @Override
+    public byte[] unwrapNanoTDF(NanoTDFType.ECCurve curve, String header, String kasURL) {
+        Header nanoTDFHeader = new Header(ByteBuffer.wrap(Base64.getDecoder().decode(header)));
+        String ephemeralKey = ECKeyPair.publicKeyFromECPoint(nanoTDFHeader.getEphemeralKey(),
+                nanoTDFHeader.getECCMode().getCurveName());
+        byte[] sharedSecret = ECKeyPair.computeECDHKey(ECKeyPair.publicKeyFromPem(ephemeralKey),
+                ECKeyPair.privateKeyFromPem(ecKeyPair.privateKeyInPEMFormat()));
+        try {
+            byte[] salt = MessageDigest.getInstance("SHA-256").digest(NanoTDF.MAGIC_NUMBER_AND_VERSION);
+            return ECKeyPair.calculateHKDF(salt, sharedSecret);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public KASKeyCache getKeyCache() {
+        return keyCache;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,82 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NanoTDF encryption and decryption across payload sizes with in-process key material. Decryption is measured with
+ * an ECDH key derivation per operation, as against the KAS, and with the key served from the unwrapped key cache of
+ * {@link ConvertFromNanoTDF}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NanoTDFBenchmark {
+
+    @Param({"1024", "65536", "1048576", "8388608"})
+    int payloadSize;
+
+    private final NanoTDF nanoTDF = new NanoTDF();
+    private SDK.KAS kas;
+    private SDK.KAS cachingKAS;
+    private Config.NanoTDFConfig config;
+    private byte[] payload;
+    private byte[] encrypted;
+    private ByteArrayOutputStream outputStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kas = new LocalKAS();
+        cachingKAS = new CachingKAS(kas, new ExpiringLRUCache<>(16, Long.MAX_VALUE), null);
+        Config.KASInfo kasInfo = new Config.KASInfo();
+        kasInfo.URL = LocalKAS.KAS_URL;
+        config = Config.newNanoTDFConfig(Config.withNanoKasInformation(kasInfo));
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        outputStream = new ByteArrayOutputStream(payloadSize + 1024);
+        nanoTDF.createNanoTDF(ByteBuffer.wrap(payload), outputStream, config, kas);
+        encrypted = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int encrypt() throws Exception {
+        outputStream.reset();
+        nanoTDF.createNanoTDF(ByteBuffer.wrap(payload), outputStream, config, kas);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public int decrypt() throws Exception {
+        outputStream.reset();
+        nanoTDF.readNanoTDF(ByteBuffer.wrap(encrypted), outputStream, kas);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public int decryptCachedKey() throws Exception {
+        outputStream.reset();
+        nanoTDF.readNanoTDF(ByteBuffer.wrap(encrypted), outputStream, cachingKAS);
+        return outputStream.size();
+    }
+}
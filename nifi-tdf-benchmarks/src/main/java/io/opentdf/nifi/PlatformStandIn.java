@@ -0,0 +1,333 @@
+package io.opentdf.nifi;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.opentdf.platform.policy.Attribute;
+import io.opentdf.platform.policy.AttributeRuleTypeEnum;
+import io.opentdf.platform.policy.KeyAccessServer;
+import io.opentdf.platform.policy.Value;
+import io.opentdf.platform.policy.attributes.AttributesServiceGrpc;
+import io.opentdf.platform.policy.attributes.GetAttributeValuesByFqnsRequest;
+import io.opentdf.platform.policy.attributes.GetAttributeValuesByFqnsResponse;
+import io.opentdf.platform.sdk.AsymDecryption;
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.CryptoUtils;
+import io.opentdf.platform.sdk.KASKeyCache;
+import io.opentdf.platform.sdk.KeyType;
+import io.opentdf.platform.sdk.Manifest;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * An in-JVM stand-in for the OpenTDF platform services the processors call: the KAS (public keys and rewraps) and
+ * the attributes service (attribute value and KAS grant lookups), with configurable latency, error rate and KAS key
+ * rotation.
+ * <p>
+ * The KAS holds real key material, so TDFs created against it decrypt through the same SDK code paths as against a
+ * platform KAS. Every call first waits for the configured latency, plus up to the configured jitter, and then fails
+ * with {@code UNAVAILABLE} at the configured error rate, as a KAS or platform under load would. Attribute lookups
+ * are answered through a {@link Channel} that dispatches gRPC calls in process, so the SDK's generated stub and any
+ * client interceptors run unchanged; every value FQN resolves to an all-of attribute granted to this KAS.
+ * <p>
+ * RSA keys used for ZTDF rotate on request or on a schedule. Keys retired by a rotation still unwrap the TDFs that
+ * were created with them, as on a platform KAS. The NanoTDF EC key is not rotated because a NanoTDF header does not
+ * identify which KAS key it was created with.
+ */
+class PlatformStandIn implements AutoCloseable {
+
+    static final String KAS_URL = "https://kas.standin";
+    static final String PLATFORM_URL = "https://platform.standin";
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double errorRate;
+    private final LocalKAS nanoKAS = new LocalKAS();
+    private final List<KeyPair> rsaKeys = new CopyOnWriteArrayList<>();
+    private final Map<String, KeyPair> rsaKeysByKid = new ConcurrentHashMap<>();
+    private final KASKeyCache keyCache = new KASKeyCache();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong publicKeyRequests = new AtomicLong();
+    private final AtomicLong rewraps = new AtomicLong();
+    private final AtomicLong attributeLookups = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    /**
+     * @param latency latency added to every call
+     * @param jitter maximum random latency added on top of the fixed latency
+     * @param errorRate fraction of calls, between 0 and 1, failing with {@code UNAVAILABLE}
+     * @param rotationInterval interval at which the KAS rotates its RSA key; zero to rotate only on request
+     * @param unit unit of latency, jitter and rotation interval
+     */
+    PlatformStandIn(long latency, long jitter, double errorRate, long rotationInterval, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        this.jitterNanos = unit.toNanos(jitter);
+        this.errorRate = errorRate;
+        rotateKeys();
+        if (rotationInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "platform-stand-in-rotation");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::rotateKeys, rotationInterval, rotationInterval, unit);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Creates a new current RSA key; earlier keys keep unwrapping the TDFs created with them.
+     *
+     * @return the key identifier of the new key
+     */
+    synchronized String rotateKeys() {
+        String kid = "r" + (rsaKeys.size() + 1);
+        KeyPair keyPair = CryptoUtils.generateRSAKeypair();
+        rsaKeysByKid.put(kid, keyPair);
+        rsaKeys.add(keyPair);
+        return kid;
+    }
+
+    /**
+     * @return key identifier of the current RSA key
+     */
+    String currentKid() {
+        return "r" + rsaKeys.size();
+    }
+
+    /**
+     * @return the stand-in KAS
+     */
+    SDK.KAS kas() {
+        return new StandInKAS();
+    }
+
+    /**
+     * @return an attributes service stub answered by the stand-in
+     */
+    AttributesServiceGrpc.AttributesServiceFutureStub attributes() {
+        return AttributesServiceGrpc.newFutureStub(new StandInChannel());
+    }
+
+    /**
+     * Returns an SDK whose services are this stand-in, for processors whose {@code getTDFSDK} is overridden.
+     *
+     * @return the SDK
+     */
+    SDK sdk() {
+        SDK sdk = mock(SDK.class);
+        SDK.Services services = mock(SDK.Services.class);
+        SDK.KAS kas = kas();
+        AttributesServiceGrpc.AttributesServiceFutureStub attributes = attributes();
+        when(sdk.getServices()).thenReturn(services);
+        when(sdk.getPlatformUrl()).thenReturn(PLATFORM_URL);
+        when(services.kas()).thenReturn(kas);
+        when(services.attributes()).thenReturn(attributes);
+        return sdk;
+    }
+
+    long getPublicKeyRequests() {
+        return publicKeyRequests.get();
+    }
+
+    long getRewraps() {
+        return rewraps.get();
+    }
+
+    long getAttributeLookups() {
+        return attributeLookups.get();
+    }
+
+    long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Waits for the configured latency and fails at the configured error rate.
+     *
+     * @throws StatusRuntimeException with {@code UNAVAILABLE} for an injected error
+     */
+    private void simulateCall() {
+        long nanos = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StatusRuntimeException(Status.CANCELLED.withCause(e));
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            throw new StatusRuntimeException(Status.UNAVAILABLE.withDescription("error injected by platform stand-in"));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * KAS backed by the stand-in key material.
+     */
+    private class StandInKAS implements SDK.KAS {
+
+        @Override
+        public Config.KASInfo getPublicKey(Config.KASInfo kasInfo) {
+            publicKeyRequests.incrementAndGet();
+            simulateCall();
+            String kid = currentKid();
+            Config.KASInfo publicKey = new Config.KASInfo();
+            publicKey.URL = kasInfo.URL;
+            publicKey.KID = kid;
+            publicKey.PublicKey = CryptoUtils.getRSAPublicKeyPEM(rsaKeysByKid.get(kid).getPublic());
+            return publicKey;
+        }
+
+        @Override
+        public Config.KASInfo getECPublicKey(Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+            publicKeyRequests.incrementAndGet();
+            simulateCall();
+            return nanoKAS.getECPublicKey(kasInfo, curve);
+        }
+
+        @Override
+        public byte[] unwrap(Manifest.KeyAccess keyAccess, String policy, KeyType sessionKeyType) {
+            rewraps.incrementAndGet();
+            simulateCall();
+            KeyPair keyPair = keyAccess.kid == null ? null : rsaKeysByKid.get(keyAccess.kid);
+            if (keyPair == null) {
+                throw new StatusRuntimeException(Status.NOT_FOUND.withDescription("unknown KAS key " + keyAccess.kid));
+            }
+            return new AsymDecryption(keyPair.getPrivate()).decrypt(Base64.getDecoder().decode(keyAccess.wrappedKey));
+        }
+
+        @Override
+        public byte[] unwrapNanoTDF(NanoTDFType.ECCurve curve, String header, String kasURL) {
+            rewraps.incrementAndGet();
+            simulateCall();
+            return nanoKAS.unwrapNanoTDF(curve, header, kasURL);
+        }
+
+        @Override
+        public KASKeyCache getKeyCache() {
+            return keyCache;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A channel answering attribute lookups in process. Calls complete on the thread that half-closes them.
+     */
+    private class StandInChannel extends Channel {
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+            return new ClientCall<>() {
+                private Listener<RespT> listener;
+                private ReqT request;
+
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    listener = responseListener;
+                }
+
+                @Override
+                public void request(int numMessages) {
+                }
+
+                @Override
+                public void cancel(String message, Throwable cause) {
+                }
+
+                @Override
+                public void halfClose() {
+                    if (!method.getFullMethodName().equals(AttributesServiceGrpc.getGetAttributeValuesByFqnsMethod().getFullMethodName())) {
+                        listener.onClose(Status.UNIMPLEMENTED.withDescription(method.getFullMethodName()), new Metadata());
+                        return;
+                    }
+                    RespT response;
+                    try {
+                        attributeLookups.incrementAndGet();
+                        simulateCall();
+                        response = method.parseResponse(lookup((GetAttributeValuesByFqnsRequest) request).toByteString().newInput());
+                    } catch (StatusRuntimeException e) {
+                        listener.onClose(e.getStatus(), new Metadata());
+                        return;
+                    }
+                    listener.onHeaders(new Metadata());
+                    listener.onMessage(response);
+                    listener.onClose(Status.OK, new Metadata());
+                }
+
+                @Override
+                public void sendMessage(ReqT message) {
+                    request = message;
+                }
+            };
+        }
+
+        @Override
+        public String authority() {
+            return "platform.standin";
+        }
+    }
+
+    /**
+     * Resolves each requested value FQN, {@code <namespace>/attr/<name>/value/<value>}, to an all-of attribute and
+     * value both granted to the stand-in KAS.
+     */
+    private GetAttributeValuesByFqnsResponse lookup(GetAttributeValuesByFqnsRequest request) {
+        KeyAccessServer kas = KeyAccessServer.newBuilder().setUri(KAS_URL).build();
+        GetAttributeValuesByFqnsResponse.Builder response = GetAttributeValuesByFqnsResponse.newBuilder();
+        for (String fqn : request.getFqnsList()) {
+            int attributeIndex = fqn.indexOf("/attr/");
+            int valueIndex = fqn.indexOf("/value/");
+            if (attributeIndex < 0 || valueIndex < attributeIndex) {
+                throw new StatusRuntimeException(Status.NOT_FOUND.withDescription("unknown attribute value " + fqn));
+            }
+            Attribute attribute = Attribute.newBuilder()
+                    .setFqn(fqn.substring(0, valueIndex))
+                    .setName(fqn.substring(attributeIndex + "/attr/".length(), valueIndex))
+                    .setRule(AttributeRuleTypeEnum.ATTRIBUTE_RULE_TYPE_ENUM_ALL_OF)
+                    .addGrants(kas)
+                    .build();
+            Value value = Value.newBuilder()
+                    .setFqn(fqn)
+                    .setValue(fqn.substring(valueIndex + "/value/".length()))
+                    .addGrants(kas)
+                    .build();
+            response.putFqnAttributeValues(fqn, GetAttributeValuesByFqnsResponse.AttributeAndValue.newBuilder()
+                    .setAttribute(attribute)
+                    .setValue(value)
+                    .build());
+        }
+        return response.build();
+    }
+}
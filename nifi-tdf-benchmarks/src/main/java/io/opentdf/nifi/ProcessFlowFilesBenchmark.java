@@ -0,0 +1,92 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.util.TestRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The full {@code onTrigger}/{@code processFlowFiles} path of each processor driven through the nifi-mock
+ * {@link TestRunner}: one operation pulls and processes one batch. The SDK is backed by {@link LocalKAS}, so the
+ * results cover the processor, session and SDK overhead without network round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessFlowFilesBenchmark {
+
+    @Param({ProcessorHarness.CONVERT_TO_NANO_TDF, ProcessorHarness.CONVERT_FROM_NANO_TDF,
+            ProcessorHarness.CONVERT_TO_ZTDF, ProcessorHarness.CONVERT_FROM_ZTDF})
+    String processor;
+
+    @Param({"1024", "1048576"})
+    int payloadSize;
+
+    @Param({"10"})
+    int batchSize;
+
+    @Param({"1", "4"})
+    int concurrentTransforms;
+
+    private TestRunner runner;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        LocalKAS kas = new LocalKAS();
+        SDK sdk = mock(SDK.class);
+        SDK.Services services = mock(SDK.Services.class);
+        when(sdk.getServices()).thenReturn(services);
+        when(services.kas()).thenReturn(kas);
+        when(sdk.getPlatformUrl()).thenReturn(ZTDFBenchmark.PLATFORM_URL);
+
+        byte[] payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        content = ProcessorHarness.content(processor, payload, kas, LocalKAS.KAS_URL);
+        runner = ProcessorHarness.newRunner(processor, sdk, LocalKAS.KAS_URL);
+        runner.setProperty(AbstractTDFProcessor.FLOWFILE_PULL_SIZE, String.valueOf(batchSize));
+        runner.setProperty(AbstractTDFProcessor.CONCURRENT_TRANSFORMS, String.valueOf(concurrentTransforms));
+        // schedules the processor once; each benchmark operation then triggers it without rescheduling
+        runner.run(1, false, true);
+    }
+
+    @Benchmark
+    public int processBatch() {
+        for (int i = 0; i < batchSize; i++) {
+            runner.enqueue(content);
+        }
+        runner.run(1, false, false);
+        int transferred = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS).size();
+        if (transferred != batchSize) {
+            throw new IllegalStateException(processor + " transferred " + transferred + " of " + batchSize + " to success");
+        }
+        runner.clearTransferState();
+        return transferred;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // one trigger with an empty queue, then the @OnStopped methods
+        runner.run(1, true, false);
+    }
+}
@@ -0,0 +1,115 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.SDK;
+import io.opentdf.platform.sdk.TDF;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.opentdf.nifi.AbstractTDFProcessor.OPENTDF_CONFIG_SERVICE;
+
+/**
+ * Builds nifi-mock test runners for the Convert processors with their SDK replaced, and the content each processor
+ * consumes, for benchmarks and load tests.
+ */
+final class ProcessorHarness {
+
+    static final String CONVERT_TO_NANO_TDF = "ConvertToNanoTDF";
+    static final String CONVERT_FROM_NANO_TDF = "ConvertFromNanoTDF";
+    static final String CONVERT_TO_ZTDF = "ConvertToZTDF";
+    static final String CONVERT_FROM_ZTDF = "ConvertFromZTDF";
+    static final List<String> PROCESSORS = List.of(CONVERT_TO_NANO_TDF, CONVERT_FROM_NANO_TDF, CONVERT_TO_ZTDF, CONVERT_FROM_ZTDF);
+
+    private ProcessorHarness() {
+    }
+
+    /**
+     * Creates a runner for a processor using the given SDK, with the OpenTDF controller service enabled and, for the
+     * ConvertTo processors, the default KAS URL set.
+     *
+     * @param processor processor name, one of {@link #PROCESSORS}
+     * @param sdk SDK returned to the processor
+     * @param kasUrl default KAS URL
+     * @return the runner
+     * @throws Exception if the controller service cannot be enabled
+     */
+    static TestRunner newRunner(String processor, SDK sdk, String kasUrl) throws Exception {
+        AbstractTDFProcessor instance = switch (processor) {
+            case CONVERT_TO_NANO_TDF -> new ConvertToNanoTDF() {
+                @Override
+                SDK getTDFSDK(ProcessContext processContext) {
+                    return sdk;
+                }
+            };
+            case CONVERT_FROM_NANO_TDF -> new ConvertFromNanoTDF() {
+                @Override
+                SDK getTDFSDK(ProcessContext processContext) {
+                    return sdk;
+                }
+            };
+            case CONVERT_TO_ZTDF -> new ConvertToZTDF() {
+                @Override
+                SDK getTDFSDK(ProcessContext processContext) {
+                    return sdk;
+                }
+            };
+            case CONVERT_FROM_ZTDF -> new ConvertFromZTDF() {
+                @Override
+                SDK getTDFSDK(ProcessContext processContext) {
+                    return sdk;
+                }
+            };
+            default -> throw new IllegalArgumentException("unknown processor " + processor);
+        };
+        TestRunner runner = TestRunners.newTestRunner(instance);
+        if (instance instanceof AbstractToProcessor) {
+            runner.setProperty(AbstractToProcessor.KAS_URL, kasUrl);
+        }
+        SimpleOpenTDFControllerService tdfControllerService = new SimpleOpenTDFControllerService();
+        Map<String, String> controllerPropertyMap = new HashMap<>();
+        controllerPropertyMap.put(SimpleOpenTDFControllerService.PLATFORM_ENDPOINT.getName(), "https://platform.local");
+        controllerPropertyMap.put(SimpleOpenTDFControllerService.CLIENT_ID.getName(), "benchmark");
+        controllerPropertyMap.put(SimpleOpenTDFControllerService.CLIENT_SECRET.getName(), "benchmark");
+        controllerPropertyMap.put(SimpleOpenTDFControllerService.USE_PLAINTEXT.getName(), "false");
+        runner.addControllerService(OPENTDF_CONFIG_SERVICE.getName(), tdfControllerService, controllerPropertyMap);
+        runner.enableControllerService(tdfControllerService);
+        runner.setProperty(OPENTDF_CONFIG_SERVICE.getName(), OPENTDF_CONFIG_SERVICE.getName());
+        return runner;
+    }
+
+    /**
+     * Returns the content a processor consumes for a payload: the payload itself for the ConvertTo processors, or
+     * the payload encrypted with the given KAS for the ConvertFrom processors.
+     *
+     * @param processor processor name, one of {@link #PROCESSORS}
+     * @param payload plaintext payload
+     * @param kas KAS to encrypt with
+     * @param kasUrl URL of the KAS
+     * @return the content
+     * @throws Exception if encryption fails
+     */
+    static byte[] content(String processor, byte[] payload, SDK.KAS kas, String kasUrl) throws Exception {
+        Config.KASInfo kasInfo = new Config.KASInfo();
+        kasInfo.URL = kasUrl;
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        switch (processor) {
+            case CONVERT_FROM_NANO_TDF -> new NanoTDF().createNanoTDF(ByteBuffer.wrap(payload), encrypted,
+                    Config.newNanoTDFConfig(Config.withNanoKasInformation(kasInfo)), kas);
+            case CONVERT_FROM_ZTDF -> new TDF().createTDF(new ByteArrayInputStream(payload), encrypted,
+                    Config.newTDFConfig(Config.withKasInformation(kasInfo)), kas, null);
+            default -> {
+                return payload;
+            }
+        }
+        return encrypted.toByteArray();
+    }
+}
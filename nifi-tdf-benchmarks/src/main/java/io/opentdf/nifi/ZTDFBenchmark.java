@@ -0,0 +1,78 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.SDK;
+import io.opentdf.platform.sdk.TDF;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZTDF encryption and decryption across payload sizes with in-process key material, using the same SDK calls and
+ * reader config as {@link ConvertToZTDF} and {@link ConvertFromZTDF}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZTDFBenchmark {
+
+    static final String PLATFORM_URL = "https://platform.local";
+
+    @Param({"1024", "1048576", "16777216"})
+    int payloadSize;
+
+    private final TDF tdf = new TDF();
+    private SDK.KAS kas;
+    private Config.TDFConfig config;
+    private Config.TDFReaderConfig readerConfig;
+    private byte[] payload;
+    private byte[] encrypted;
+    private ByteArrayOutputStream outputStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kas = new LocalKAS();
+        Config.KASInfo kasInfo = new Config.KASInfo();
+        kasInfo.URL = LocalKAS.KAS_URL;
+        config = Config.newTDFConfig(Config.withKasInformation(kasInfo));
+        readerConfig = Config.newTDFReaderConfig(Config.withDisableAssertionVerification(true));
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        outputStream = new ByteArrayOutputStream(payloadSize + 4096);
+        tdf.createTDF(new ByteArrayInputStream(payload), outputStream, config, kas, null);
+        encrypted = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int encrypt() throws Exception {
+        outputStream.reset();
+        tdf.createTDF(new ByteArrayInputStream(payload), outputStream, config, kas, null);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public int decrypt() throws Exception {
+        outputStream.reset();
+        TDF.Reader reader = tdf.loadTDF(new SeekableInMemoryByteChannel(encrypted), kas, readerConfig, null, PLATFORM_URL);
+        reader.readPayload(outputStream);
+        return outputStream.size();
+    }
+}
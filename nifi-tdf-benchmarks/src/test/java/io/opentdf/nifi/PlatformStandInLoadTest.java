@@ -0,0 +1,156 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives each Convert processor with a sustained volume of FlowFiles against {@link PlatformStandIn} and reports
+ * throughput and latency percentiles. The volume and the simulated platform are set by system properties:
+ * {@code load.flowFiles}, {@code load.payloadSize}, {@code load.batchSize}, {@code load.concurrentTransforms},
+ * {@code load.kasLatencyMillis} and {@code load.kasJitterMillis}.
+ */
+class PlatformStandInLoadTest {
+
+    static final int FLOWFILES = Integer.getInteger("load.flowFiles", 1000);
+    static final int PAYLOAD_SIZE = Integer.getInteger("load.payloadSize", 4096);
+    static final int BATCH_SIZE = Integer.getInteger("load.batchSize", 100);
+    static final int CONCURRENT_TRANSFORMS = Integer.getInteger("load.concurrentTransforms", 8);
+    static final long KAS_LATENCY_MILLIS = Long.getLong("load.kasLatencyMillis", 2);
+    static final long KAS_JITTER_MILLIS = Long.getLong("load.kasJitterMillis", 2);
+
+    PlatformStandIn platform;
+
+    @AfterEach
+    void close() {
+        if (platform != null) {
+            platform.close();
+        }
+    }
+
+    static byte[] payload() {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+        return payload;
+    }
+
+    TestRunner newRunner(String processor) throws Exception {
+        TestRunner runner = ProcessorHarness.newRunner(processor, platform.sdk(), PlatformStandIn.KAS_URL);
+        runner.setProperty(AbstractTDFProcessor.FLOWFILE_PULL_SIZE, String.valueOf(BATCH_SIZE));
+        runner.setProperty(AbstractTDFProcessor.CONCURRENT_TRANSFORMS, String.valueOf(CONCURRENT_TRANSFORMS));
+        return runner;
+    }
+
+    /**
+     * Schedules the processor once and triggers it until the queue is drained, as a running flow would.
+     *
+     * @return elapsed nanoseconds
+     */
+    static long drain(TestRunner runner) {
+        long start = System.nanoTime();
+        runner.run(1, false, true);
+        while (!runner.isQueueEmpty()) {
+            runner.run(1, false, false);
+        }
+        long elapsed = System.nanoTime() - start;
+        runner.run(1, true, false);
+        return elapsed;
+    }
+
+    static void report(String processor, TestRunner runner, long elapsedNanos) {
+        Map<String, Number> metrics = ((AbstractTDFProcessor) runner.getProcessor()).getMetricsSnapshot();
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s: %d FlowFiles in %.2f s, %.0f FlowFiles/s, %.2f MB/s, transform p50 %.2f ms, p99 %.2f ms, "
+                        + "KAS rewrap p99 %.2f ms, batch size p50 %s%n",
+                processor, FLOWFILES, seconds, FLOWFILES / seconds,
+                metrics.get(ProcessorMetrics.BYTES_IN_COUNTER).doubleValue() / seconds / (1024 * 1024),
+                metrics.get("Transform Time p50 (ms)").doubleValue(), metrics.get("Transform Time p99 (ms)").doubleValue(),
+                metrics.get("KAS Rewrap Time p99 (ms)").doubleValue(), metrics.get("Batch Size p50"));
+    }
+
+    @Test
+    void testSustainedLoad() throws Exception {
+        platform = new PlatformStandIn(KAS_LATENCY_MILLIS, KAS_JITTER_MILLIS, 0, 0, TimeUnit.MILLISECONDS);
+        byte[] payload = payload();
+        for (String processor : ProcessorHarness.PROCESSORS) {
+            byte[] content = ProcessorHarness.content(processor, payload, platform.kas(), PlatformStandIn.KAS_URL);
+            TestRunner runner = newRunner(processor);
+            for (int i = 0; i < FLOWFILES; i++) {
+                runner.enqueue(content);
+            }
+            long elapsed = drain(runner);
+            runner.assertAllFlowFilesTransferred(AbstractTDFProcessor.REL_SUCCESS, FLOWFILES);
+            report(processor, runner, elapsed);
+        }
+    }
+
+    @Test
+    void testInjectedErrorsRouteToFailure() throws Exception {
+        platform = new PlatformStandIn(0, 0, 0.2, 0, TimeUnit.MILLISECONDS);
+        byte[] content = createWithRetry(ProcessorHarness.CONVERT_FROM_NANO_TDF, payload());
+        TestRunner runner = newRunner(ProcessorHarness.CONVERT_FROM_NANO_TDF);
+        int flowFiles = 200;
+        for (int i = 0; i < flowFiles; i++) {
+            runner.enqueue(content);
+        }
+        drain(runner);
+        List<MockFlowFile> succeeded = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS);
+        List<MockFlowFile> failed = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_FAILURE);
+        assertEquals(flowFiles, succeeded.size() + failed.size());
+        assertFalse(failed.isEmpty(), "expected injected KAS errors to route FlowFiles to failure");
+        assertTrue(platform.getInjectedErrors() > 0);
+        for (MockFlowFile flowFile : succeeded) {
+            flowFile.assertContentEquals(payload());
+        }
+    }
+
+    /**
+     * Creates content against a stand-in injecting errors, retrying the injected public key failures.
+     */
+    byte[] createWithRetry(String processor, byte[] payload) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return ProcessorHarness.content(processor, payload, platform.kas(), PlatformStandIn.KAS_URL);
+            } catch (RuntimeException e) {
+                if (attempt >= 20) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Test
+    void testKeyRotationKeepsEarlierTDFsReadable() throws Exception {
+        platform = new PlatformStandIn(0, 0, 0, 0, TimeUnit.MILLISECONDS);
+        byte[] payload = payload();
+        List<byte[]> contents = new ArrayList<>();
+        List<String> kids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            kids.add(platform.currentKid());
+            contents.add(ProcessorHarness.content(ProcessorHarness.CONVERT_FROM_ZTDF, payload, platform.kas(),
+                    PlatformStandIn.KAS_URL));
+            platform.rotateKeys();
+        }
+        assertEquals(List.of("r1", "r2", "r3"), kids);
+
+        TestRunner runner = newRunner(ProcessorHarness.CONVERT_FROM_ZTDF);
+        for (byte[] content : contents) {
+            runner.enqueue(content);
+        }
+        drain(runner);
+        runner.assertAllFlowFilesTransferred(AbstractTDFProcessor.REL_SUCCESS, contents.size());
+        for (MockFlowFile flowFile : runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS)) {
+            flowFile.assertContentEquals(payload);
+        }
+        assertEquals(contents.size(), platform.getRewraps());
+    }
+}
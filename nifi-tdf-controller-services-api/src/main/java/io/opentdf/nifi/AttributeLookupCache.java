@@ -0,0 +1,40 @@
+package io.opentdf.nifi;
+
+/**
+ * Cache of attribute definition and KAS grant lookups shared by the processors using an
+ * {@link OpenTDFControllerService}.
+ * <p>
+ * Requests and responses are the platform's protocol messages and rejections are the status the platform answered
+ * with. They are typed as {@code Object} so that this API does not depend on the transport the SDK talks to the
+ * platform with; processors adapt the cache to their attributes service client.
+ */
+public interface AttributeLookupCache {
+
+    /**
+     * Get the cached response to a lookup request.
+     * @param request lookup request
+     * @return cached response, or null if the request is not cached
+     */
+    public Object getResponse(Object request);
+
+    /**
+     * Cache the response to a lookup request.
+     * @param request lookup request
+     * @param response response returned by the platform
+     */
+    public void putResponse(Object request, Object response);
+
+    /**
+     * Get the cached rejection of a lookup request, such as an attribute that does not exist.
+     * @param request lookup request
+     * @return cached rejection, or null if the request is not cached
+     */
+    public Object getRejection(Object request);
+
+    /**
+     * Cache the rejection of a lookup request.
+     * @param request lookup request
+     * @param rejection status the platform rejected the request with
+     */
+    public void putRejection(Object request, Object rejection);
+}
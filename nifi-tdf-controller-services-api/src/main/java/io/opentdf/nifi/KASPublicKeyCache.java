@@ -0,0 +1,30 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+
+/**
+ * Cache of KAS public keys shared by the processors using an {@link OpenTDFControllerService}.
+ * <p>
+ * Keys are cached by KAS URL, algorithm and key id and refreshed before they expire, so encryption does not wait on
+ * a public key fetch in steady state.
+ */
+public interface KASPublicKeyCache {
+
+    /**
+     * Get the RSA public key of a KAS, fetching it with the given KAS on a miss.
+     * @param kas KAS used to fetch the key when it is not cached
+     * @param kasInfo KAS URL and optional key id
+     * @return KAS info with the public key and key id
+     */
+    public io.opentdf.platform.sdk.Config.KASInfo getPublicKey(SDK.KAS kas, io.opentdf.platform.sdk.Config.KASInfo kasInfo);
+
+    /**
+     * Get the EC public key of a KAS for a curve, fetching it with the given KAS on a miss.
+     * @param kas KAS used to fetch the key when it is not cached
+     * @param kasInfo KAS URL and optional key id
+     * @param curve EC curve of the key
+     * @return KAS info with the public key and key id
+     */
+    public io.opentdf.platform.sdk.Config.KASInfo getECPublicKey(SDK.KAS kas, io.opentdf.platform.sdk.Config.KASInfo kasInfo, NanoTDFType.ECCurve curve);
+}
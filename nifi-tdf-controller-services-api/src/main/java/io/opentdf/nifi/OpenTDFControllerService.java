@@ -1,5 +1,6 @@
 package io.opentdf.nifi;
 
+import io.opentdf.platform.sdk.SDK;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.controller.ControllerService;
@@ -15,4 +16,26 @@ public interface OpenTDFControllerService extends ControllerService {
      * @throws ProcessException
      */
     public Config getConfig() throws ProcessException;
+
+    /**
+     * Get the SDK shared by all processors using this service. The SDK is built from the service
+     * {@link Config} on first use and closed when the service is disabled; callers must not close it.
+     * @return shared SDK
+     * @throws ProcessException if the SDK cannot be built
+     */
+    public SDK getSDK() throws ProcessException;
+
+    /**
+     * Get the KAS public key cache shared by all processors using this service.
+     * @return shared KAS public key cache
+     * @throws ProcessException if the service is not enabled
+     */
+    public KASPublicKeyCache getKASPublicKeyCache() throws ProcessException;
+
+    /**
+     * Get the cache of attribute definition and KAS grant lookups shared by all processors using this service.
+     * @return shared attribute lookup cache
+     * @throws ProcessException if the service is not enabled
+     */
+    public AttributeLookupCache getAttributeLookupCache() throws ProcessException;
 }
@@ -1,10 +1,14 @@
 package io.opentdf.nifi;
 
+import io.grpc.Status;
+import io.opentdf.platform.policy.kasregistry.ListKeyAccessServersRequest;
 import io.opentdf.platform.sdk.NanoTDF;
 import io.opentdf.platform.sdk.SDK;
 import io.opentdf.platform.sdk.SDKBuilder;
 import io.opentdf.platform.sdk.TDF;
 import org.apache.commons.io.IOUtils;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.expression.ExpressionLanguageScope;
@@ -15,6 +19,7 @@ import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.OutputStreamCallback;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.ssl.SSLContextService;
 import org.apache.nifi.stream.io.StreamUtils;
@@ -22,6 +27,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Common helper processor
@@ -49,15 +60,105 @@ public abstract class AbstractTDFProcessor extends AbstractProcessor {
             .addValidator(StandardValidators.INTEGER_VALIDATOR)
             .build();
 
+    /**
+     * Configuration property enabling adaptive pulls, where the number of FlowFiles pulled is adjusted to keep
+     * batches near the Target Batch Duration and bounded by the FlowFile Pull Byte Limit. The FlowFile queue pull
+     * limit then caps the count.
+     */
+    public static final PropertyDescriptor ADAPTIVE_PULL = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Adaptive FlowFile Pull")
+            .description("When true, the number of FlowFiles pulled at a time is adjusted from the measured time per FlowFile " +
+                    "and the queue depth so batches take about the Target Batch Duration, up to the FlowFile queue pull limit, " +
+                    "and the total content size of a pull is bounded by the FlowFile Pull Byte Limit")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Configuration property for the total content size of an adaptive pull.
+     */
+    public static final PropertyDescriptor PULL_BYTE_LIMIT = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("FlowFile Pull Byte Limit")
+            .description("Maximum total content size of the FlowFiles pulled at a time; a single FlowFile larger than " +
+                    "this is pulled on its own")
+            .required(true)
+            .defaultValue("100 MB")
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .dependsOn(ADAPTIVE_PULL, "true")
+            .build();
+
+    /**
+     * Configuration property for the duration adaptive pulls aim a batch to take.
+     */
+    public static final PropertyDescriptor TARGET_BATCH_DURATION = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Target Batch Duration")
+            .description("Time the processing of one pulled batch should take; the number of FlowFiles pulled is " +
+                    "adjusted towards it")
+            .required(true)
+            .defaultValue("1 sec")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .dependsOn(ADAPTIVE_PULL, "true")
+            .build();
+
+    /**
+     * Configuration property for the number of FlowFiles of a pulled batch whose encryption or decryption,
+     * including the blocking KAS round trips, run at the same time. A value of 1 processes the batch sequentially
+     * on the NiFi task thread.
+     */
+    public static final PropertyDescriptor CONCURRENT_TRANSFORMS = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Concurrent FlowFile Transforms")
+            .description("Number of FlowFiles within a pulled batch encrypted or decrypted concurrently on a bounded " +
+                    "executor; 1 processes the batch sequentially on the task thread. Content larger than " +
+                    "16 MB is always processed on the task thread.")
+            .required(true)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    /**
+     * Largest content size staged in memory for a concurrent transform.
+     */
+    static final long CONCURRENT_STAGING_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * Property descriptor for the number of idle content buffers retained per size class by processors that
+     * read whole flow files into memory; 0 disables pooling.
+     */
+    public static final PropertyDescriptor BUFFER_POOL_SIZE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Buffer Pool Size")
+            .description("Number of idle content buffers retained per size class for reuse across flow files; 0 disables pooling")
+            .required(true)
+            .defaultValue("16")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    /**
+     * Property descriptor for the total size of the idle content buffers retained by processors that read whole flow
+     * files into memory. Without it, a full pool of 16 MB buffers alone could retain 256 MB, off heap when direct
+     * buffers are used.
+     */
+    public static final PropertyDescriptor BUFFER_POOL_MAX_RETAINED = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Buffer Pool Max Retained Size")
+            .description("Total size of the idle content buffers retained across all size classes; released buffers " +
+                    "beyond this size are dropped rather than pooled")
+            .required(true)
+            .defaultValue("64 MB")
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
     /**
      * Property descriptor representing an optional SSL Context Service.
      * This descriptor defines a property that can be used to configure
      * an SSLContextService, which is optional for the processor. This
      * service provides the SSL/TLS context needed for secure communication.
+     * When set, the processor builds its own SDK with this truststore instead of
+     * using the SDK shared by the OpenTDF Config Service.
      */
     public static final PropertyDescriptor SSL_CONTEXT_SERVICE = new org.apache.nifi.components.PropertyDescriptor.Builder()
             .name("SSL Context Service")
-            .description("Optional SSL Context Service")
+            .description("Optional SSL Context Service; when set the processor uses a dedicated SDK instead of the " +
+                    "SDK shared by the OpenTDF Config Service")
             .required(false)
             .identifiesControllerService(SSLContextService.class)
             .build();
@@ -128,36 +229,183 @@ public abstract class AbstractTDFProcessor extends AbstractProcessor {
         return Optional.ofNullable(propertyValue);
     }
 
-    private SDK sdk;
+    private volatile SDK sdk;
+
+    private volatile ExecutorService transformExecutor;
+
+    private volatile AdaptivePullSizer pullSizer;
+
+    private final ProcessorMetrics metrics = new ProcessorMetrics();
+
+    private final Object sdkLock = new Object();
 
     /**
-     * Retrieves an instance of the TDF SDK, initializing it if it is not already created.
+     * Retrieves an instance of the TDF SDK. Unless this processor has its own SSL Context Service configured,
+     * the SDK shared by the OpenTDF Config Service is returned; otherwise a processor owned SDK is initialized
+     * once, under a lock, if it is not already created.
      *
      * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
      * @return an instance of the initialized SDK.
      */
     SDK getTDFSDK(ProcessContext processContext) {
-        if (sdk == null) {
-            getLogger().info("SDK - create");
-            OpenTDFControllerService openTDFControllerService = processContext.getProperty(OPENTDF_CONFIG_SERVICE)
-                    .asControllerService(OpenTDFControllerService.class);
-            Config config = openTDFControllerService.getConfig();
-
-            SDKBuilder sdkBuilder = createSDKBuilder().platformEndpoint(config.getPlatformEndpoint())
-                    .clientSecret(config.getClientId(), config.getClientSecret());
-            if (processContext.getProperty(SSL_CONTEXT_SERVICE).isSet()) {
-                getLogger().info("SDK - use SSLFactory from SSL Context Service truststore");
-                SSLContextService sslContextService = processContext.getProperty(SSL_CONTEXT_SERVICE)
-                        .asControllerService(SSLContextService.class);
-                sdkBuilder = sdkBuilder.sslFactoryFromKeyStore(sslContextService.getTrustStoreFile(), sslContextService.getTrustStorePassword());
+        OpenTDFControllerService openTDFControllerService = processContext.getProperty(OPENTDF_CONFIG_SERVICE)
+                .asControllerService(OpenTDFControllerService.class);
+        if (!processContext.getProperty(SSL_CONTEXT_SERVICE).isSet()) {
+            return openTDFControllerService.getSDK();
+        }
+        SDK current = sdk;
+        if (current == null) {
+            synchronized (sdkLock) {
+                current = sdk;
+                if (current == null) {
+                    getLogger().info("SDK - create");
+                    Config config = openTDFControllerService.getConfig();
+
+                    getLogger().info("SDK - use SSLFactory from SSL Context Service truststore");
+                    SSLContextService sslContextService = processContext.getProperty(SSL_CONTEXT_SERVICE)
+                            .asControllerService(SSLContextService.class);
+                    SDKBuilder sdkBuilder = createSDKBuilder().platformEndpoint(config.getPlatformEndpoint())
+                            .clientSecret(config.getClientId(), config.getClientSecret())
+                            .sslFactoryFromKeyStore(sslContextService.getTrustStoreFile(), sslContextService.getTrustStorePassword());
+                    if (config.isUsePlainText()) {
+                        getLogger().info("SDK - use plaintext connection");
+                        sdkBuilder = sdkBuilder.useInsecurePlaintextConnection(true);
+                    }
+                    current = sdkBuilder.build();
+                    sdk = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Time allowed for the warm up platform call at schedule time.
+     */
+    static final long WARM_UP_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Builds the SDK and warms it up before the first FlowFile arrives so the first batch does not pay for
+     * channel setup and token acquisition. A failure to build or warm up the SDK is only logged, so scheduling
+     * never fails after the transform executor is created; the SDK is then built on first use.
+     *
+     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
+     */
+    @OnScheduled
+    public void onScheduled(ProcessContext processContext) {
+        int concurrentTransforms = processContext.getProperty(CONCURRENT_TRANSFORMS).asInteger();
+        transformExecutor = concurrentTransforms > 1 ? Executors.newFixedThreadPool(concurrentTransforms, runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + getIdentifier() + "-transform");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        pullSizer = createPullSizer(processContext);
+        try {
+            warmUp(processContext, getTDFSDK(processContext));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLogger().warn("SDK - warm up interrupted; connections will be established on first use");
+        } catch (Exception e) {
+            getLogger().warn("SDK - warm up failed; connections will be established on first use", e);
+        }
+    }
+
+    /**
+     * Creates the pull sizer when adaptive pulls are enabled.
+     *
+     * @param processContext the NiFi ProcessContext providing the pull properties
+     * @return the pull sizer, or null to pull a fixed number of FlowFiles
+     */
+    AdaptivePullSizer createPullSizer(ProcessContext processContext) {
+        PropertyValue adaptivePull = processContext.getProperty(ADAPTIVE_PULL);
+        if (adaptivePull == null || !Boolean.TRUE.equals(adaptivePull.asBoolean())) {
+            return null;
+        }
+        int maxCount = processContext.getProperty(FLOWFILE_PULL_SIZE).evaluateAttributeExpressions().asInteger();
+        return new AdaptivePullSizer(maxCount, maxCount,
+                processContext.getProperty(PULL_BYTE_LIMIT).asDataSize(DataUnit.B).longValue(),
+                processContext.getProperty(TARGET_BATCH_DURATION).asTimePeriod(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Exercises the SDK once at schedule time. Building the SDK does not connect, so this makes a lightweight
+     * authenticated platform call, listing the registered KASes, which connects the platform channel used by every
+     * platform service and acquires the access token. A permission denied response still means the channel is
+     * connected and the token acquired, so it is not treated as a failure.
+     *
+     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
+     * @param sdk the SDK used by this processor
+     * @throws Exception if the warm up call fails
+     */
+    void warmUp(ProcessContext processContext, SDK sdk) throws Exception {
+        getLogger().debug("SDK - warm up platform channel");
+        try {
+            sdk.getServices().kasRegistry().listKeyAccessServers(ListKeyAccessServersRequest.newBuilder().build())
+                    .get(WARM_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (Status.fromThrowable(e.getCause()).getCode() != Status.Code.PERMISSION_DENIED) {
+                throw e;
             }
-            if (config.isUsePlainText()) {
-                getLogger().info("SDK - use plaintext connection");
-                sdkBuilder = sdkBuilder.useInsecurePlaintextConnection(true);
+            getLogger().debug("SDK - warm up call not permitted; platform channel connected");
+        }
+    }
+
+    /**
+     * Closes the processor owned SDK when the processor is stopped. The SDK shared by the OpenTDF Config Service
+     * is left open; it is closed when the controller service is disabled.
+     */
+    @OnStopped
+    public void onStopped() {
+        if (transformExecutor != null) {
+            transformExecutor.shutdownNow();
+            transformExecutor = null;
+        }
+        pullSizer = null;
+        closeSDK();
+    }
+
+    /**
+     * Creates a batch applying content transforms either sequentially or on the concurrent transform executor,
+     * depending on the Concurrent FlowFile Transforms property.
+     *
+     * @param processSession the session owning the FlowFiles
+     * @param onSuccess invoked on the task thread with each successfully transformed FlowFile
+     * @param onFailure invoked on the task thread with each FlowFile whose transform failed
+     * @return a new batch
+     */
+    TransformBatch newTransformBatch(ProcessSession processSession, Consumer<FlowFile> onSuccess, BiConsumer<FlowFile, Exception> onFailure) {
+        return new TransformBatch(processSession, transformExecutor, CONCURRENT_STAGING_LIMIT, metrics, onSuccess, onFailure);
+    }
+
+    /**
+     * @return the metrics of this processor, accumulated since it was created
+     */
+    ProcessorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the current throughput, latency, cache and failure metrics of this processor by name. Latencies are
+     * percentiles in milliseconds over recent calls; the totals are also published as processor counters.
+     *
+     * @return metric values sorted by name
+     */
+    public Map<String, Number> getMetricsSnapshot() {
+        return metrics.snapshot();
+    }
+
+    private void closeSDK() {
+        synchronized (sdkLock) {
+            if (sdk != null) {
+                getLogger().info("SDK - close");
+                try {
+                    sdk.close();
+                } catch (Exception e) {
+                    getLogger().warn("error closing SDK", e);
+                }
+                sdk = null;
             }
-            sdk = sdkBuilder.build();
         }
-        return this.sdk;
     }
 
     //this is really here to allow for easier mocking for testing
@@ -167,7 +415,7 @@ public abstract class AbstractTDFProcessor extends AbstractProcessor {
 
     @Override
     public void onPropertyModified(PropertyDescriptor descriptor, String oldValue, String newValue) {
-        this.sdk = null;
+        closeSDK();
     }
 
 
@@ -193,10 +441,26 @@ public abstract class AbstractTDFProcessor extends AbstractProcessor {
 
     @Override
     public void onTrigger(ProcessContext processContext, ProcessSession processSession) throws ProcessException {
-        List<FlowFile> flowFiles = processSession.get(processContext.getProperty(FLOWFILE_PULL_SIZE).asInteger());
-        if (!flowFiles.isEmpty()) {
-            processFlowFiles(processContext, processSession, flowFiles);
+        AdaptivePullSizer sizer = pullSizer;
+        List<FlowFile> flowFiles = sizer == null ?
+                processSession.get(processContext.getProperty(FLOWFILE_PULL_SIZE).asInteger()) : processSession.get(sizer.newFilter());
+        if (flowFiles.isEmpty()) {
+            return;
         }
+        long start = System.nanoTime();
+        processFlowFiles(processContext, processSession, flowFiles);
+        if (sizer != null) {
+            sizer.record(flowFiles.size(), System.nanoTime() - start, processSession.getQueueSize().getObjectCount());
+        }
+        metrics.recordBatch(flowFiles.size());
+        metrics.adjustCounters(processSession);
+    }
+
+    /**
+     * @return the pull sizer of the current schedule, or null when adaptive pulls are disabled
+     */
+    AdaptivePullSizer getPullSizer() {
+        return pullSizer;
     }
 
     /**
@@ -233,6 +497,7 @@ public abstract class AbstractTDFProcessor extends AbstractProcessor {
      */
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return List.of(SSL_CONTEXT_SERVICE, OPENTDF_CONFIG_SERVICE, FLOWFILE_PULL_SIZE);
+        return List.of(SSL_CONTEXT_SERVICE, OPENTDF_CONFIG_SERVICE, FLOWFILE_PULL_SIZE, ADAPTIVE_PULL, PULL_BYTE_LIMIT,
+                TARGET_BATCH_DURATION, CONCURRENT_TRANSFORMS);
     }
 }
@@ -1,17 +1,22 @@
 package io.opentdf.nifi;
 
 import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.SDK;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.util.StandardValidators;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Common utilities for a processor converting content to one of the TDF formats
@@ -21,11 +26,31 @@ public abstract class AbstractToProcessor extends AbstractTDFProcessor{
     static final String TDF_ATTRIBUTE = "tdf_attribute";
     static final String TDF_ASSERTION_PREFIX = "tdf_assertion_";
 
+    /**
+     * Number of distinct KAS URL and data attribute strings whose parsed values are retained.
+     */
+    static final int ATTRIBUTE_PARSE_CACHE_SIZE = 1024;
+
+    /**
+     * Counter name prefix for the attribute parse cache.
+     */
+    static final String ATTRIBUTE_PARSE_CACHE_COUNTER = "Attribute Parse Cache";
+
+    /**
+     * Parsed value of a comma separated attribute: the non-empty values in order and as a set.
+     */
+    record ParsedAttribute(List<String> values, Set<String> valueSet) {
+    }
+
+    private final ExpiringLRUCache<String, ParsedAttribute> attributeParseCache =
+            new ExpiringLRUCache<>(ATTRIBUTE_PARSE_CACHE_SIZE, Long.MAX_VALUE);
+
     /**
      * Default constructor for AbstractToProcessor.
      */
     public AbstractToProcessor() {
         super();
+        getMetrics().registerCache(ATTRIBUTE_PARSE_CACHE_COUNTER, attributeParseCache::getHits, attributeParseCache::getMisses);
     }
 
     /**
@@ -41,7 +66,80 @@ public abstract class AbstractToProcessor extends AbstractTDFProcessor{
 
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return Collections.unmodifiableList(Arrays.asList(SSL_CONTEXT_SERVICE, OPENTDF_CONFIG_SERVICE, FLOWFILE_PULL_SIZE, KAS_URL));
+        return Collections.unmodifiableList(Arrays.asList(SSL_CONTEXT_SERVICE, OPENTDF_CONFIG_SERVICE, FLOWFILE_PULL_SIZE,
+                ADAPTIVE_PULL, PULL_BYTE_LIMIT, TARGET_BATCH_DURATION, CONCURRENT_TRANSFORMS, KAS_URL));
+    }
+
+    /**
+     * Warms up the platform channel, then prefetches the public key of each default KAS URL into the shared public
+     * key cache so the KAS channel is open before the first FlowFile is encrypted.
+     *
+     * @param processContext the NiFi ProcessContext providing the default KAS URL.
+     * @param sdk the SDK used by this processor
+     * @throws Exception if the warm up calls fail
+     */
+    @Override
+    void warmUp(ProcessContext processContext, SDK sdk) throws Exception {
+        super.warmUp(processContext, sdk);
+        if (!processContext.getProperty(KAS_URL).isSet()) {
+            return;
+        }
+        SDK.KAS kas = getKAS(processContext, sdk);
+        String kasUrlValues = getPropertyValue(processContext.getProperty(KAS_URL)).getValue();
+        for (Config.KASInfo kasInfo : getKASInfoFromKASURLs(Arrays.stream(kasUrlValues.split(",")).filter(x -> !x.isEmpty()).toList())) {
+            getLogger().debug(String.format("SDK - warm up KAS %s", kasInfo.URL));
+            prefetchPublicKey(kas, kasInfo);
+        }
+    }
+
+    /**
+     * Fetches the KAS public key used by this processor's TDF format.
+     *
+     * @param kas the KAS to fetch the key with
+     * @param kasInfo the KAS to fetch the key of
+     */
+    void prefetchPublicKey(SDK.KAS kas, Config.KASInfo kasInfo) {
+        kas.getPublicKey(kasInfo);
+    }
+
+    /**
+     * Returns the KAS to encrypt with: the SDK KAS, with public keys served from the cache shared through the
+     * OpenTDF Config Service.
+     *
+     * @param processContext the NiFi ProcessContext providing the OpenTDF Config Service
+     * @param sdk the SDK used by this processor
+     * @return the KAS to pass to the SDK when creating TDFs
+     */
+    SDK.KAS getKAS(ProcessContext processContext, SDK sdk) {
+        KASPublicKeyCache publicKeyCache = processContext.getProperty(OPENTDF_CONFIG_SERVICE)
+                .asControllerService(OpenTDFControllerService.class).getKASPublicKeyCache();
+        return new CachingKAS(sdk.getServices().kas(), null, publicKeyCache, getMetrics());
+    }
+
+    /**
+     * Partitions a pulled batch by policy fingerprint, so the TDF config of each group can be built once and shared
+     * by its members. Groups, and the FlowFiles within each group, keep their order in the batch.
+     *
+     * @param flowFiles the pulled batch
+     * @return the FlowFiles of the batch grouped by {@link #policyFingerprint(FlowFile)}
+     */
+    Collection<List<FlowFile>> groupByPolicy(List<FlowFile> flowFiles) {
+        Map<String, List<FlowFile>> groups = new LinkedHashMap<>();
+        for (FlowFile flowFile : flowFiles) {
+            groups.computeIfAbsent(policyFingerprint(flowFile), k -> new ArrayList<>()).add(flowFile);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Returns a fingerprint of the FlowFile attributes the TDF config is built from. FlowFiles with equal
+     * fingerprints get equal TDF configs.
+     *
+     * @param flowFile the FlowFile
+     * @return the raw KAS URL and data attribute values of the FlowFile
+     */
+    String policyFingerprint(FlowFile flowFile) {
+        return flowFile.getAttribute(KAS_URL_ATTRIBUTE) + "\u0000" + flowFile.getAttribute(TDF_ATTRIBUTE);
     }
 
     /**
@@ -60,13 +158,38 @@ public abstract class AbstractToProcessor extends AbstractTDFProcessor{
             throw new Exception("no " + KAS_URL_ATTRIBUTE + " flowfile attribute and no default KAS URL configured");
         }
         String kasUrlValues = kasUrlAttribute != null ? kasUrlAttribute : getPropertyValue(processContext.getProperty(KAS_URL)).getValue();
-        List<String> kasUrls = Arrays.stream(kasUrlValues.split(","))
-                .filter(x -> !x.isEmpty())
-                .toList(); // Use Stream.toList() for an unmodifiable list
         if (kasUrlValues.isEmpty()) {
             throw new Exception("no KAS Urls provided");
         }
-        return kasUrls;
+        return parseAttribute(kasUrlValues).values();
+    }
+
+    /**
+     * Splits a comma separated attribute value into its non-empty values. Results are memoized in a bounded LRU
+     * keyed by the raw value, since KAS URL and data attribute values come from a small, stable vocabulary.
+     *
+     * @param attributeValue the raw comma separated value
+     * @return the immutable parsed values
+     */
+    ParsedAttribute parseAttribute(String attributeValue) {
+        ParsedAttribute parsed = attributeParseCache.get(attributeValue);
+        if (parsed == null) {
+            List<String> values = Arrays.stream(attributeValue.split(","))
+                    .filter(x -> !x.isEmpty())
+                    .toList(); // Use Stream.toList() for an unmodifiable list
+            parsed = new ParsedAttribute(values, Set.copyOf(values));
+            attributeParseCache.put(attributeValue, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Publishes the attribute parse cache hits, misses and evictions as session counters.
+     *
+     * @param processSession session used to adjust the counters
+     */
+    void adjustAttributeParseCounters(ProcessSession processSession) {
+        attributeParseCache.adjustCounters(processSession, ATTRIBUTE_PARSE_CACHE_COUNTER);
     }
 
     /**
@@ -88,12 +211,12 @@ public abstract class AbstractToProcessor extends AbstractTDFProcessor{
      * The attributes are split by commas and filtered to remove empty strings.
      *
      * @param flowFile the FlowFile from which to retrieve the data attributes.
-     * @return a set of data attributes extracted from the given FlowFile.
+     * @return an immutable set of data attributes extracted from the given FlowFile.
      * @throws Exception if no data attributes are provided via the TDF_ATTRIBUTE FlowFile attribute.
      */
     Set<String> getDataAttributes(FlowFile flowFile) throws Exception{
-        Set<String> dataAttributes = Arrays.stream((flowFile.getAttribute(TDF_ATTRIBUTE) == null ? "" :
-                flowFile.getAttribute(TDF_ATTRIBUTE)).split(",")).filter(x -> !x.isEmpty()).collect(Collectors.toSet());
+        String dataAttributeValues = flowFile.getAttribute(TDF_ATTRIBUTE);
+        Set<String> dataAttributes = dataAttributeValues == null ? Set.of() : parseAttribute(dataAttributeValues).valueSet();
         if (dataAttributes.isEmpty()) {
             throw new Exception("no data attributes provided via " + TDF_ATTRIBUTE + " flowfile attribute");
         }
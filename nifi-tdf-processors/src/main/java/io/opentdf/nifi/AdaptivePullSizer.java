@@ -0,0 +1,96 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.FlowFileFilter;
+
+/**
+ * Sizes FlowFile pulls so that a batch takes about a target duration.
+ * <p>
+ * The number of FlowFiles pulled is derived from a moving average of the time taken per FlowFile by earlier batches
+ * and is kept between 1 and a maximum count. It grows at most twofold per batch, and only while FlowFiles remain
+ * queued after a pull, so an idle queue does not inflate it; it shrinks immediately when batches run long. Each pull
+ * is also bounded by a byte budget: FlowFiles are accepted until the next one would exceed it, except that the first
+ * FlowFile is always accepted so content larger than the budget is still processed, on its own.
+ */
+class AdaptivePullSizer {
+
+    /**
+     * Weight of the latest batch in the per FlowFile latency moving average.
+     */
+    static final double LATENCY_SMOOTHING = 0.3;
+
+    private final int maxCount;
+    private final long maxBytes;
+    private final long targetBatchNanos;
+
+    private int count;
+    private double nanosPerFlowFile = -1;
+
+    /**
+     * @param initialCount number of FlowFiles pulled before any batch has been measured
+     * @param maxCount largest number of FlowFiles pulled at once
+     * @param maxBytes byte budget of a pull
+     * @param targetBatchNanos duration a batch should take
+     */
+    AdaptivePullSizer(int initialCount, int maxCount, long maxBytes, long targetBatchNanos) {
+        this.maxCount = Math.max(1, maxCount);
+        this.maxBytes = maxBytes;
+        this.targetBatchNanos = targetBatchNanos;
+        this.count = Math.max(1, Math.min(initialCount, this.maxCount));
+    }
+
+    /**
+     * @return number of FlowFiles the next pull accepts at most
+     */
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Creates a filter for one pull, accepting up to the current count of FlowFiles within the byte budget.
+     *
+     * @return a new filter
+     */
+    FlowFileFilter newFilter() {
+        final int limit = getCount();
+        return new FlowFileFilter() {
+            private int accepted;
+            private long bytes;
+
+            @Override
+            public FlowFileFilterResult filter(FlowFile flowFile) {
+                if (accepted > 0 && bytes + flowFile.getSize() > maxBytes) {
+                    return FlowFileFilterResult.REJECT_AND_TERMINATE;
+                }
+                accepted++;
+                bytes += flowFile.getSize();
+                return accepted >= limit || bytes >= maxBytes ?
+                        FlowFileFilterResult.ACCEPT_AND_TERMINATE : FlowFileFilterResult.ACCEPT_AND_CONTINUE;
+            }
+        };
+    }
+
+    /**
+     * Records a processed batch and adjusts the count for the next pull.
+     *
+     * @param flowFiles number of FlowFiles in the batch
+     * @param elapsedNanos time taken to process the batch
+     * @param queuedFlowFiles number of FlowFiles left in the queue after the pull
+     */
+    synchronized void record(int flowFiles, long elapsedNanos, int queuedFlowFiles) {
+        if (flowFiles <= 0) {
+            return;
+        }
+        double latest = (double) Math.max(elapsedNanos, 1) / flowFiles;
+        nanosPerFlowFile = nanosPerFlowFile < 0 ? latest :
+                LATENCY_SMOOTHING * latest + (1 - LATENCY_SMOOTHING) * nanosPerFlowFile;
+        long target = Math.max(1, Math.min(maxCount, (long) (targetBatchNanos / nanosPerFlowFile)));
+        if (target > count) {
+            if (queuedFlowFiles <= 0) {
+                return;
+            }
+            target = Math.min(target, (long) count * 2);
+        }
+        count = (int) target;
+    }
+}
@@ -0,0 +1,151 @@
+package io.opentdf.nifi;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.opentdf.platform.policy.attributes.AttributesServiceGrpc;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * gRPC interceptor caching attribute value lookups made while creating ZTDFs.
+ * <p>
+ * The SDK resolves the data attributes of a TDF, with their KAS grants, through
+ * {@code AttributesService/GetAttributeValuesByFqns}. Attribute definitions change rarely, so successful responses are
+ * cached by request for a TTL, and requests the platform rejects because an attribute does not exist are negatively
+ * cached for a shorter TTL, in an {@link AttributeLookupCache}. Cached results are replayed to the caller without a
+ * call to the platform; every other method passes straight through.
+ */
+class AttributeLookupCacheInterceptor implements ClientInterceptor {
+
+    /**
+     * Status codes cached as negative results; they describe the request rather than the state of the connection.
+     */
+    static final Set<Status.Code> NEGATIVE_CACHE_CODES = EnumSet.of(Status.Code.NOT_FOUND, Status.Code.INVALID_ARGUMENT);
+
+    private final AttributeLookupCache cache;
+
+    /**
+     * @param cache cache of responses and rejections, usually shared through the OpenTDF Config Service
+     */
+    AttributeLookupCacheInterceptor(AttributeLookupCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (!method.getFullMethodName().equals(AttributesServiceGrpc.getGetAttributeValuesByFqnsMethod().getFullMethodName())) {
+            return next.newCall(method, callOptions);
+        }
+        return new CachingCall<>(method, callOptions, next);
+    }
+
+    /**
+     * A unary call answered from the caches, or forwarded to the platform on a miss.
+     */
+    private class CachingCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT request;
+        private ClientCall<ReqT, RespT> delegate;
+        private boolean cancelled;
+
+        private CachingCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            this.request = message;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void halfClose() {
+            if (cancelled) {
+                return;
+            }
+            Object cached = cache.getResponse(request);
+            if (cached != null) {
+                listener.onHeaders(new Metadata());
+                listener.onMessage((RespT) cached);
+                listener.onClose(Status.OK, new Metadata());
+                return;
+            }
+            Object rejection = cache.getRejection(request);
+            if (rejection instanceof Status) {
+                listener.onClose((Status) rejection, new Metadata());
+                return;
+            }
+            final ReqT sent = request;
+            delegate = next.newCall(method, callOptions);
+            delegate.start(new Listener<>() {
+                private RespT response;
+
+                @Override
+                public void onHeaders(Metadata headers) {
+                    listener.onHeaders(headers);
+                }
+
+                @Override
+                public void onMessage(RespT message) {
+                    response = message;
+                    listener.onMessage(message);
+                }
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    if (status.isOk() && response != null) {
+                        cache.putResponse(sent, response);
+                    } else if (NEGATIVE_CACHE_CODES.contains(status.getCode())) {
+                        cache.putRejection(sent, status);
+                    }
+                    listener.onClose(status, trailers);
+                }
+
+                @Override
+                public void onReady() {
+                    listener.onReady();
+                }
+            }, headers);
+            delegate.request(1);
+            delegate.sendMessage(sent);
+            delegate.halfClose();
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            if (delegate != null) {
+                delegate.cancel(message, cause);
+            } else if (listener != null && !cancelled) {
+                cancelled = true;
+                listener.onClose(Status.CANCELLED.withDescription(message).withCause(cause), new Metadata());
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate == null || delegate.isReady();
+        }
+    }
+}
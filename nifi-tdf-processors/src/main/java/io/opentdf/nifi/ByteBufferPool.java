@@ -0,0 +1,209 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of reusable ByteBuffers grouped into power of two size classes.
+ * <p>
+ * Buffers are borrowed with {@link #acquire(int)} and handed back with {@link #release(ByteBuffer)}. Each size class
+ * retains at most a fixed number of idle buffers, and the idle buffers of all classes together retain at most a fixed
+ * number of bytes, so a burst of large FlowFiles cannot pin memory beyond that cap; a released buffer that would
+ * exceed either bound is dropped. Requests larger than the biggest size class are served with an unpooled buffer that
+ * is simply dropped on release.
+ */
+class ByteBufferPool {
+
+    /**
+     * Smallest size class, 1 KiB, as a power of two.
+     */
+    static final int MIN_SIZE_CLASS_SHIFT = 10;
+
+    /**
+     * Counter name for buffer acquisitions served from the pool.
+     */
+    static final String HITS_COUNTER = "Buffer Pool Hits";
+
+    /**
+     * Counter name for buffer acquisitions that required a new allocation.
+     */
+    static final String MISSES_COUNTER = "Buffer Pool Misses";
+
+    /**
+     * Per-thread transfer chunk used to fill direct buffers from a stream.
+     */
+    private static final ThreadLocal<byte[]> TRANSFER_CHUNK = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final int maxPooledSize;
+    private final long maxRetainedBytes;
+    private final boolean direct;
+    private final List<BlockingQueue<ByteBuffer>> sizeClasses;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong reportedHits = new AtomicLong();
+    private final AtomicLong reportedMisses = new AtomicLong();
+
+    /**
+     * Creates a pool whose retained bytes are bounded only by its size classes.
+     *
+     * @param maxPooledSize largest buffer capacity retained by the pool; rounded down to a power of two
+     * @param maxBuffersPerClass number of idle buffers retained per size class; 0 disables pooling
+     * @param direct whether to allocate direct rather than heap buffers
+     */
+    ByteBufferPool(int maxPooledSize, int maxBuffersPerClass, boolean direct) {
+        this(maxPooledSize, maxBuffersPerClass, Long.MAX_VALUE, direct);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxPooledSize largest buffer capacity retained by the pool; rounded down to a power of two
+     * @param maxBuffersPerClass number of idle buffers retained per size class; 0 disables pooling
+     * @param maxRetainedBytes total capacity of the idle buffers retained across all size classes
+     * @param direct whether to allocate direct rather than heap buffers
+     */
+    ByteBufferPool(int maxPooledSize, int maxBuffersPerClass, long maxRetainedBytes, boolean direct) {
+        this.direct = direct;
+        this.maxRetainedBytes = maxRetainedBytes;
+        int maxShift = Math.max(MIN_SIZE_CLASS_SHIFT, 31 - Integer.numberOfLeadingZeros(Math.max(1, maxPooledSize)));
+        this.maxPooledSize = 1 << maxShift;
+        this.sizeClasses = new ArrayList<>();
+        for (int shift = MIN_SIZE_CLASS_SHIFT; shift <= maxShift; shift++) {
+            sizeClasses.add(maxBuffersPerClass > 0 ? new ArrayBlockingQueue<>(maxBuffersPerClass) : null);
+        }
+    }
+
+    /**
+     * Borrows a buffer with at least the requested capacity, positioned at zero with its limit set to the size.
+     *
+     * @param size number of bytes needed
+     * @return a buffer ready to be filled
+     */
+    ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0 && sizeClasses.get(sizeClass) != null) {
+            buffer = sizeClasses.get(sizeClass).poll();
+        }
+        if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            int capacity = sizeClass >= 0 ? 1 << (sizeClass + MIN_SIZE_CLASS_SHIFT) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that do not belong to a size class, whose class is full, or that would take
+     * the pool over its retained bytes cap, are dropped.
+     *
+     * @param buffer buffer previously obtained from {@link #acquire(int)}
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1 || capacity > maxPooledSize) {
+            return;
+        }
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < 0 || sizeClasses.get(sizeClass) == null) {
+            return;
+        }
+        long retained;
+        do {
+            retained = retainedBytes.get();
+            if (retained + capacity > maxRetainedBytes) {
+                return;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + capacity));
+        if (!sizeClasses.get(sizeClass).offer(buffer)) {
+            retainedBytes.addAndGet(-capacity);
+        }
+    }
+
+    /**
+     * @return total capacity of the idle buffers currently retained
+     */
+    long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return number of acquisitions served by a pooled buffer
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of acquisitions that required a new allocation
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Publishes the hits and misses accumulated since the previous call as session counters.
+     *
+     * @param processSession session used to adjust the counters
+     */
+    void adjustCounters(ProcessSession processSession) {
+        long currentHits = hits.get();
+        long currentMisses = misses.get();
+        processSession.adjustCounter(HITS_COUNTER, currentHits - reportedHits.getAndSet(currentHits), false);
+        processSession.adjustCounter(MISSES_COUNTER, currentMisses - reportedMisses.getAndSet(currentMisses), false);
+    }
+
+    private int sizeClass(int size) {
+        if (size > maxPooledSize) {
+            return -1;
+        }
+        int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, MIN_SIZE_CLASS_SHIFT) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    /**
+     * Reads exactly {@code buffer.remaining()} bytes from the stream into the buffer and flips it for reading.
+     *
+     * @param inputStream source stream
+     * @param buffer destination buffer
+     * @throws IOException if the stream ends before the buffer is filled
+     */
+    static void fill(InputStream inputStream, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            int length = buffer.remaining();
+            int read = inputStream.readNBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            if (read < length) {
+                throw new EOFException("expected " + length + " bytes but read " + read);
+            }
+            buffer.position(buffer.position() + read);
+        } else {
+            byte[] chunk = TRANSFER_CHUNK.get();
+            while (buffer.hasRemaining()) {
+                int read = inputStream.read(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+                if (read < 0) {
+                    throw new EOFException("stream ended with " + buffer.remaining() + " bytes remaining");
+                }
+                buffer.put(chunk, 0, read);
+            }
+        }
+        buffer.flip();
+    }
+}
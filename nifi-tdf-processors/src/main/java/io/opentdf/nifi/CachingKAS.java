@@ -0,0 +1,177 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.KASKeyCache;
+import io.opentdf.platform.sdk.KeyType;
+import io.opentdf.platform.sdk.Manifest;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A {@link SDK.KAS} that serves repeated NanoTDF key unwraps and KAS public keys from caches instead of calling the KAS.
+ * <p>
+ * NanoTDFs that share a header, such as the items of a NanoTDF collection, share the same wrapped key, so the key
+ * unwrapped for one of them can be reused for the others. Unwrapped keys are cached by a SHA-256 digest of the KAS
+ * URL, curve and header. Public keys come from the {@link KASPublicKeyCache} shared through the OpenTDF controller
+ * service. Every other call is passed to the wrapped KAS. When metrics are given, the time taken by each call reaching
+ * the wrapped KAS is recorded.
+ */
+class CachingKAS implements SDK.KAS {
+
+    private final SDK.KAS delegate;
+    private final SDK.KAS timedDelegate;
+    private final ExpiringLRUCache<String, byte[]> unwrapCache;
+    private final KASPublicKeyCache publicKeyCache;
+
+    /**
+     * @param delegate the KAS to call on a cache miss
+     * @param unwrapCache cache of unwrapped NanoTDF keys by header digest; null to disable caching
+     * @param publicKeyCache cache of KAS public keys; null to disable caching
+     */
+    CachingKAS(SDK.KAS delegate, ExpiringLRUCache<String, byte[]> unwrapCache, KASPublicKeyCache publicKeyCache) {
+        this(delegate, unwrapCache, publicKeyCache, null);
+    }
+
+    /**
+     * @param delegate the KAS to call on a cache miss
+     * @param unwrapCache cache of unwrapped NanoTDF keys by header digest; null to disable caching
+     * @param publicKeyCache cache of KAS public keys; null to disable caching
+     * @param metrics metrics recording the latency of calls to the wrapped KAS; null to disable timing
+     */
+    CachingKAS(SDK.KAS delegate, ExpiringLRUCache<String, byte[]> unwrapCache, KASPublicKeyCache publicKeyCache,
+               ProcessorMetrics metrics) {
+        this.delegate = delegate;
+        this.timedDelegate = metrics == null ? delegate : new TimedKAS(delegate, metrics);
+        this.unwrapCache = unwrapCache;
+        this.publicKeyCache = publicKeyCache;
+    }
+
+    /**
+     * @return the wrapped KAS
+     */
+    SDK.KAS getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Config.KASInfo getPublicKey(Config.KASInfo kasInfo) {
+        return publicKeyCache == null ? timedDelegate.getPublicKey(kasInfo) : publicKeyCache.getPublicKey(timedDelegate, kasInfo);
+    }
+
+    @Override
+    public Config.KASInfo getECPublicKey(Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+        return publicKeyCache == null ? timedDelegate.getECPublicKey(kasInfo, curve) : publicKeyCache.getECPublicKey(timedDelegate, kasInfo, curve);
+    }
+
+    @Override
+    public byte[] unwrap(Manifest.KeyAccess keyAccess, String policy, KeyType sessionKeyType) {
+        return timedDelegate.unwrap(keyAccess, policy, sessionKeyType);
+    }
+
+    @Override
+    public byte[] unwrapNanoTDF(NanoTDFType.ECCurve curve, String header, String kasURL) {
+        if (unwrapCache == null) {
+            return timedDelegate.unwrapNanoTDF(curve, header, kasURL);
+        }
+        String key = headerDigest(curve, header, kasURL);
+        byte[] unwrapped = unwrapCache.get(key);
+        if (unwrapped == null) {
+            unwrapped = timedDelegate.unwrapNanoTDF(curve, header, kasURL);
+            unwrapCache.put(key, unwrapped.clone());
+            return unwrapped;
+        }
+        return unwrapped.clone();
+    }
+
+    @Override
+    public KASKeyCache getKeyCache() {
+        return delegate.getKeyCache();
+    }
+
+    /**
+     * The wrapped KAS belongs to the SDK and is closed with it.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Passes every call to a KAS, recording the time taken by rewraps and public key requests.
+     */
+    private static class TimedKAS implements SDK.KAS {
+        private final SDK.KAS delegate;
+        private final ProcessorMetrics metrics;
+
+        private TimedKAS(SDK.KAS delegate, ProcessorMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Config.KASInfo getPublicKey(Config.KASInfo kasInfo) {
+            long start = System.nanoTime();
+            try {
+                return delegate.getPublicKey(kasInfo);
+            } finally {
+                metrics.recordKASPublicKey(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Config.KASInfo getECPublicKey(Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+            long start = System.nanoTime();
+            try {
+                return delegate.getECPublicKey(kasInfo, curve);
+            } finally {
+                metrics.recordKASPublicKey(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public byte[] unwrap(Manifest.KeyAccess keyAccess, String policy, KeyType sessionKeyType) {
+            long start = System.nanoTime();
+            try {
+                return delegate.unwrap(keyAccess, policy, sessionKeyType);
+            } finally {
+                metrics.recordKASRewrap(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public byte[] unwrapNanoTDF(NanoTDFType.ECCurve curve, String header, String kasURL) {
+            long start = System.nanoTime();
+            try {
+                return delegate.unwrapNanoTDF(curve, header, kasURL);
+            } finally {
+                metrics.recordKASRewrap(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public KASKeyCache getKeyCache() {
+            return delegate.getKeyCache();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static String headerDigest(NanoTDFType.ECCurve curve, String header, String kasURL) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(kasURL.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(curve).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(header.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
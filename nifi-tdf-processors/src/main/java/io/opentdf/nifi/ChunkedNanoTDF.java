@@ -0,0 +1,189 @@
+package io.opentdf.nifi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Framing of content too large for a single NanoTDF as a sequence of NanoTDF chunks.
+ * <p>
+ * A chunked NanoTDF starts with {@link #MAGIC}, followed by each chunk as a 4 byte big-endian length and the NanoTDF
+ * bytes, and ends with a zero length. The chunks are items of one NanoTDF collection, so they share a header and
+ * derived key and a reader needs one KAS rewrap per object. Chunks are written and read one at a time, so memory is
+ * bounded by the chunk size rather than the content size. The magic cannot be mistaken for the start of a NanoTDF,
+ * which begins with {@code L1L}.
+ */
+final class ChunkedNanoTDF {
+
+    /**
+     * Leading bytes of a chunked NanoTDF: {@code TDFC} and the framing version.
+     */
+    static final byte[] MAGIC = {'T', 'D', 'F', 'C', 1};
+
+    /**
+     * Largest chunk length accepted by the reader.
+     */
+    static final int MAX_CHUNK_LENGTH = (int) ConvertToNanoTDF.MAX_SIZE + 1024;
+
+    /**
+     * Encrypts or decrypts one chunk.
+     */
+    @FunctionalInterface
+    interface ChunkTransform {
+        void apply(ByteBuffer input, OutputStream outputStream) throws Exception;
+    }
+
+    private ChunkedNanoTDF() {
+    }
+
+    /**
+     * Consumes the magic if the stream starts with it, or pushes back the bytes read otherwise.
+     *
+     * @param inputStream stream able to push back {@code MAGIC.length} bytes
+     * @return whether the stream holds a chunked NanoTDF
+     * @throws IOException if the stream cannot be read
+     */
+    static boolean readMagic(PushbackInputStream inputStream) throws IOException {
+        byte[] leading = inputStream.readNBytes(MAGIC.length);
+        if (Arrays.equals(leading, MAGIC)) {
+            return true;
+        }
+        inputStream.unread(leading);
+        return false;
+    }
+
+    /**
+     * Consumes the magic if the buffer starts with it, leaving the buffer unchanged otherwise.
+     *
+     * @param content buffered content
+     * @return whether the buffer holds a chunked NanoTDF
+     */
+    static boolean readMagic(ByteBuffer content) {
+        if (content.remaining() < MAGIC.length ||
+                !content.slice(content.position(), MAGIC.length).equals(ByteBuffer.wrap(MAGIC))) {
+            return false;
+        }
+        content.position(content.position() + MAGIC.length);
+        return true;
+    }
+
+    /**
+     * Writes content as a chunked NanoTDF.
+     *
+     * @param inputStream plaintext content
+     * @param contentSize size of the plaintext content
+     * @param outputStream destination of the chunked NanoTDF
+     * @param chunkSize plaintext bytes per chunk
+     * @param pool pool the chunk buffers are borrowed from
+     * @param encrypt encrypts a plaintext chunk into a NanoTDF
+     * @throws IOException if the content cannot be read, encrypted or written
+     */
+    static void write(InputStream inputStream, long contentSize, OutputStream outputStream, int chunkSize,
+                      ByteBufferPool pool, ChunkTransform encrypt) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.write(MAGIC);
+        ByteArrayOutputStream nanoTDF = new ByteArrayOutputStream();
+        long remaining = contentSize;
+        while (remaining > 0) {
+            int length = (int) Math.min(chunkSize, remaining);
+            ByteBuffer chunk = pool.acquire(length);
+            try {
+                ByteBufferPool.fill(inputStream, chunk);
+                nanoTDF.reset();
+                encrypt.apply(chunk, nanoTDF);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                pool.release(chunk);
+            }
+            dataOutputStream.writeInt(nanoTDF.size());
+            nanoTDF.writeTo(dataOutputStream);
+            remaining -= length;
+        }
+        dataOutputStream.writeInt(0);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Reads the chunks of a chunked NanoTDF whose magic has been consumed.
+     *
+     * @param inputStream chunked NanoTDF after the magic
+     * @param outputStream destination of the plaintext
+     * @param pool pool the chunk buffers are borrowed from
+     * @param decrypt decrypts a NanoTDF chunk
+     * @throws IOException if a chunk is malformed or cannot be decrypted, or the stream ends before the final chunk
+     */
+    static void read(InputStream inputStream, OutputStream outputStream, ByteBufferPool pool, ChunkTransform decrypt) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        while (true) {
+            int length;
+            try {
+                length = dataInputStream.readInt();
+            } catch (EOFException e) {
+                throw new EOFException("chunked NanoTDF ended without its final chunk");
+            }
+            if (length == 0) {
+                return;
+            }
+            if (length < 0 || length > MAX_CHUNK_LENGTH) {
+                throw new IOException("invalid chunked NanoTDF chunk length " + length);
+            }
+            ByteBuffer chunk = pool.acquire(length);
+            try {
+                ByteBufferPool.fill(dataInputStream, chunk);
+                decrypt.apply(chunk, outputStream);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                pool.release(chunk);
+            }
+        }
+    }
+
+    /**
+     * Reads the chunks of a buffered chunked NanoTDF whose magic has been consumed. Chunks are decrypted from slices of
+     * the buffer, without copying.
+     *
+     * @param content chunked NanoTDF after the magic
+     * @param outputStream destination of the plaintext
+     * @param decrypt decrypts a NanoTDF chunk
+     * @throws IOException if a chunk is malformed or cannot be decrypted, or the buffer ends before the final chunk
+     */
+    static void read(ByteBuffer content, OutputStream outputStream, ChunkTransform decrypt) throws IOException {
+        while (true) {
+            if (content.remaining() < Integer.BYTES) {
+                throw new EOFException("chunked NanoTDF ended without its final chunk");
+            }
+            int length = content.getInt();
+            if (length == 0) {
+                return;
+            }
+            if (length < 0 || length > MAX_CHUNK_LENGTH) {
+                throw new IOException("invalid chunked NanoTDF chunk length " + length);
+            }
+            if (length > content.remaining()) {
+                throw new EOFException("chunked NanoTDF ended within a chunk");
+            }
+            ByteBuffer chunk = content.slice(content.position(), length);
+            content.position(content.position() + length);
+            try {
+                decrypt.apply(chunk, outputStream);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
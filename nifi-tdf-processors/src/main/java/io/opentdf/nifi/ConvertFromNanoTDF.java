@@ -3,14 +3,25 @@ package io.opentdf.nifi;
 import io.opentdf.platform.sdk.SDK;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * A processor for decrypting NanoTDF flow file content using the OpenTDF framework.
@@ -19,6 +30,15 @@ import java.util.List;
  * it using the associated SDK. The decrypted content is then written back into the
  * flow file and routed to the success relationship. If decryption fails, the flow file
  * is routed to the failure relationship.
+ * <p>
+ * Encrypted content is read into buffers borrowed from a bounded, size-classed pool owned by the processor, so
+ * steady state decryption does not allocate a new array per flow file.
+ * <p>
+ * Chunked NanoTDFs, as written by ConvertToNanoTDF in chunked mode, are read and decrypted one chunk at a time, so
+ * their size is not limited by the maximum NanoTDF size and memory is bounded by the chunk size.
+ * <p>
+ * Keys unwrapped by the KAS are cached by a digest of the NanoTDF header, so NanoTDFs sharing a header need only one
+ * KAS call per cache TTL.
  */
 @CapabilityDescription("Decrypts NanoTDF flow file content")
 @Tags({"NanoTDF", "OpenTDF", "Decrypt", "Data Centric Security"})
@@ -31,6 +51,118 @@ public class ConvertFromNanoTDF extends AbstractTDFProcessor {
         super();
     }
 
+    /**
+     * Property descriptor controlling whether pooled buffers are allocated outside the heap.
+     */
+    public static final PropertyDescriptor USE_DIRECT_BUFFERS = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Use Direct Buffers")
+            .description("Allocate pooled content buffers as direct (off-heap) buffers; the idle buffers retained " +
+                    "are bounded by Buffer Pool Max Retained Size")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Property descriptor enabling the cache of unwrapped NanoTDF keys.
+     */
+    public static final PropertyDescriptor UNWRAP_CACHE_ENABLED = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Unwrapped Key Cache Enabled")
+            .description("When true, the key unwrapped by the KAS for a NanoTDF header is cached and reused for other " +
+                    "NanoTDFs with the same header, such as the items of a NanoTDF collection")
+            .required(true)
+            .defaultValue("true")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Property descriptor for the maximum number of cached unwrapped keys.
+     */
+    public static final PropertyDescriptor UNWRAP_CACHE_SIZE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Unwrapped Key Cache Size")
+            .description("Maximum number of unwrapped keys cached; the least recently used key is evicted beyond this")
+            .required(true)
+            .defaultValue("1000")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .dependsOn(UNWRAP_CACHE_ENABLED, "true")
+            .build();
+
+    /**
+     * Property descriptor for the time an unwrapped key is cached.
+     */
+    public static final PropertyDescriptor UNWRAP_CACHE_TTL = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Unwrapped Key Cache TTL")
+            .description("Time an unwrapped key is cached before the KAS is asked to unwrap it again")
+            .required(true)
+            .defaultValue("5 min")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .dependsOn(UNWRAP_CACHE_ENABLED, "true")
+            .build();
+
+    /**
+     * Counter name prefix for the unwrapped key cache.
+     */
+    static final String UNWRAP_CACHE_COUNTER = "Unwrapped Key Cache";
+
+    private volatile ByteBufferPool bufferPool;
+
+    private volatile ExpiringLRUCache<String, byte[]> unwrapCache;
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        propertyDescriptors.add(BUFFER_POOL_SIZE);
+        propertyDescriptors.add(BUFFER_POOL_MAX_RETAINED);
+        propertyDescriptors.add(USE_DIRECT_BUFFERS);
+        propertyDescriptors.add(UNWRAP_CACHE_ENABLED);
+        propertyDescriptors.add(UNWRAP_CACHE_SIZE);
+        propertyDescriptors.add(UNWRAP_CACHE_TTL);
+        return Collections.unmodifiableList(propertyDescriptors);
+    }
+
+    /**
+     * Creates the buffer pool for this schedule.
+     *
+     * @param processContext the NiFi ProcessContext providing the pool properties
+     */
+    @OnScheduled
+    public void createBufferPool(ProcessContext processContext) {
+        bufferPool = new ByteBufferPool((int) ConvertToNanoTDF.MAX_SIZE,
+                processContext.getProperty(BUFFER_POOL_SIZE).asInteger(),
+                processContext.getProperty(BUFFER_POOL_MAX_RETAINED).asDataSize(DataUnit.B).longValue(),
+                processContext.getProperty(USE_DIRECT_BUFFERS).asBoolean());
+        ByteBufferPool pool = bufferPool;
+        getMetrics().registerCache("Buffer Pool", pool::getHits, pool::getMisses);
+    }
+
+    /**
+     * Creates the unwrapped key cache for this schedule, if enabled.
+     *
+     * @param processContext the NiFi ProcessContext providing the cache properties
+     */
+    @OnScheduled
+    public void createUnwrapCache(ProcessContext processContext) {
+        ExpiringLRUCache<String, byte[]> cache = processContext.getProperty(UNWRAP_CACHE_ENABLED).asBoolean() ?
+                new ExpiringLRUCache<>(processContext.getProperty(UNWRAP_CACHE_SIZE).asInteger(),
+                        processContext.getProperty(UNWRAP_CACHE_TTL).asTimePeriod(TimeUnit.NANOSECONDS)) : null;
+        if (cache != null) {
+            getMetrics().registerCache(UNWRAP_CACHE_COUNTER, cache::getHits, cache::getMisses);
+        }
+        unwrapCache = cache;
+    }
+
+    /**
+     * Drops the unwrapped keys when the processor stops.
+     */
+    @OnStopped
+    public void clearUnwrapCache() {
+        ExpiringLRUCache<String, byte[]> cache = unwrapCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        unwrapCache = null;
+    }
+
     /**
      * Processes the provided list of flow files by decrypting their content using the NanoTDF protocol.
      * If decryption succeeds, the flow file is routed to the success relationship; otherwise, it is routed to the failure relationship.
@@ -43,22 +175,51 @@ public class ConvertFromNanoTDF extends AbstractTDFProcessor {
     @Override
     public void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
         SDK sdk = getTDFSDK(processContext);
+        ByteBufferPool pool = bufferPool;
+        ExpiringLRUCache<String, byte[]> cache = unwrapCache;
+        SDK.KAS kas = new CachingKAS(sdk.getServices().kas(), cache, null, getMetrics());
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error decrypting flowfile", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile -> processSession.transfer(updatedFlowFile, REL_SUCCESS), onFailure);
+        ChunkedNanoTDF.ChunkTransform decrypt = (chunk, plaintext) -> getNanoTDF().readNanoTDF(chunk, plaintext, kas);
         for (FlowFile flowFile : flowFiles) {
-            try {
-                byte[] nanoTDFBytes = readEntireFlowFile(flowFile, processSession);
-                FlowFile updatedFlowFile = processSession.write(flowFile, outputStream -> {
-                    try {
-                        getNanoTDF().readNanoTDF(ByteBuffer.wrap(nanoTDFBytes), outputStream, sdk.getServices().kas());
-                    } catch (Exception e) {
-                        getLogger().error("error decrypting NanoTDF", e);
-                        throw new IOException(e);
-                    }
-                });
-                processSession.transfer(updatedFlowFile, REL_SUCCESS);
-            } catch (Exception e) {
-                getLogger().error(flowFile.getId() + ": error decrypting flowfile", e);
-                processSession.transfer(flowFile, REL_FAILURE);
-            }
+            batch.add(flowFile, (inputStream, outputStream) -> {
+                PushbackInputStream nanoTDFStream = new PushbackInputStream(inputStream, ChunkedNanoTDF.MAGIC.length);
+                if (ChunkedNanoTDF.readMagic(nanoTDFStream)) {
+                    ChunkedNanoTDF.read(nanoTDFStream, outputStream, pool, decrypt);
+                    return;
+                }
+                ByteBuffer nanoTDFBuffer = pool.acquire((int) flowFile.getSize());
+                try {
+                    ByteBufferPool.fill(nanoTDFStream, nanoTDFBuffer);
+                    readNanoTDF(nanoTDFBuffer, outputStream, kas);
+                } finally {
+                    pool.release(nanoTDFBuffer);
+                }
+            }, pool, (nanoTDFBuffer, outputStream) -> {
+                if (ChunkedNanoTDF.readMagic(nanoTDFBuffer)) {
+                    ChunkedNanoTDF.read(nanoTDFBuffer, outputStream, decrypt);
+                    return;
+                }
+                readNanoTDF(nanoTDFBuffer, outputStream, kas);
+            });
+        }
+        batch.complete();
+        pool.adjustCounters(processSession);
+        if (cache != null) {
+            cache.adjustCounters(processSession, UNWRAP_CACHE_COUNTER);
+        }
+    }
+
+    private void readNanoTDF(ByteBuffer nanoTDFBuffer, OutputStream outputStream, SDK.KAS kas) throws IOException {
+        try {
+            getNanoTDF().readNanoTDF(nanoTDFBuffer, outputStream, kas);
+        } catch (Exception e) {
+            getLogger().error("error decrypting NanoTDF", e);
+            throw new IOException(e);
         }
     }
-}
\ No newline at end of file
+}
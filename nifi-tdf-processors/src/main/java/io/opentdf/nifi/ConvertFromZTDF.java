@@ -4,19 +4,37 @@ import io.opentdf.platform.sdk.Config;
 import io.opentdf.platform.sdk.Config.TDFConfig;
 import io.opentdf.platform.sdk.SDK;
 import io.opentdf.platform.sdk.TDF;
-import io.opentdf.platform.sdk.KeyType;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.stream.io.StreamUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 
 /**
  * Converts and decrypts ZTDF (Zero Trust Data Format) flow file content.
@@ -34,13 +52,29 @@ import java.util.List;
  * <p>
  * The method `processFlowFiles` performs the following steps:
  * 1. Retrieves the TDF SDK instance.
- * 2. Reads the entire encrypted content of each flow file into an in-memory byte channel.
+ * 2. Reads the encrypted content of each flow file into an in-memory byte channel, or into a temporary
+ *    spill file when the content is larger than the spill threshold.
  * 3. Uses TDF Reader to load and decrypt the content.
  * 4. Writes the decrypted content back into the flow file and transfers it to the success relationship.
  * 5. If any error occurs during the decryption process, logs the error and transfers the flow file to the failure relationship.
+ * <p>
+ * With parallel decryption, step 3 still loads the ZTDF with the TDF Reader, which checks the KAS allowlist, unwraps
+ * the payload key and verifies the root signature, but reads the segments from the channel directly: the segments
+ * are checked against their hashes and decrypted concurrently, and written in order through a bounded reorder buffer.
+ * <p>
+ * A FlowFile with a {@code tdf.range.offset} or {@code tdf.range.length} attribute is decrypted to that byte range of
+ * the payload only. The central directory and manifest are read from the content without staging it, the ZTDF is
+ * loaded with the TDF Reader on the session thread to unwrap the payload key, and only the segments covering the
+ * range are read and decrypted.
  */
 @CapabilityDescription("Decrypts ZTDF flow file content")
 @Tags({"ZTDF", "Zero Trust Data Format", "OpenTDF", "Decrypt", "Data Centric Security"})
+@ReadsAttributes(value = {
+        @ReadsAttribute(attribute = "tdf.range.offset", description = "Plaintext offset of the byte range of the payload " +
+                "to decrypt; defaults to 0 when only tdf.range.length is set"),
+        @ReadsAttribute(attribute = "tdf.range.length", description = "Length of the byte range of the payload to decrypt; " +
+                "defaults to the rest of the payload when only tdf.range.offset is set, and is cut at the end of the payload")
+})
 public class ConvertFromZTDF extends AbstractTDFProcessor {
 
     /**
@@ -50,6 +84,208 @@ public class ConvertFromZTDF extends AbstractTDFProcessor {
         super();
     }
 
+    /**
+     * Largest content size that can be held in a single in-memory byte channel.
+     */
+    static final long MAX_IN_MEMORY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Property descriptor for the size above which encrypted content is spilled to a temporary file
+     * rather than read onto the heap before decryption.
+     */
+    public static final PropertyDescriptor SPILL_THRESHOLD = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Spill Threshold")
+            .description("ZTDF content larger than this size is copied to a temporary file and decrypted from disk " +
+                    "instead of being read into memory")
+            .required(true)
+            .defaultValue("32 MB")
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    /**
+     * Property descriptor for the directory holding temporary spill files; defaults to the JVM temporary directory.
+     */
+    public static final PropertyDescriptor SPILL_DIRECTORY = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Spill Directory")
+            .description("Directory for temporary spill files; the JVM temporary directory is used when not set")
+            .required(false)
+            .addValidator(StandardValidators.createDirectoryExistsValidator(false, false))
+            .build();
+
+    /**
+     * Attribute holding the plaintext offset of the byte range to decrypt.
+     */
+    public static final String RANGE_OFFSET_ATTRIBUTE = "tdf.range.offset";
+
+    /**
+     * Attribute holding the length of the byte range to decrypt.
+     */
+    public static final String RANGE_LENGTH_ATTRIBUTE = "tdf.range.length";
+
+    /**
+     * Property descriptor enabling concurrent decryption of the payload segments of each ZTDF.
+     */
+    public static final PropertyDescriptor PARALLEL_DECRYPTION = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Parallel Decryption")
+            .description("When true, the payload segments of each ZTDF are hash checked and decrypted concurrently on " +
+                    "one thread per available processor and written in order, instead of one after another")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Property descriptor for the number of segments read ahead of the output in parallel decryption.
+     */
+    public static final PropertyDescriptor SEGMENTS_IN_FLIGHT = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Segments In Flight")
+            .description("Maximum number of segments of a ZTDF being decrypted or waiting to be written; memory used " +
+                    "per FlowFile is bounded by about twice this many segments")
+            .required(true)
+            .defaultValue("8")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .dependsOn(PARALLEL_DECRYPTION, "true")
+            .build();
+
+    private volatile ExecutorService segmentExecutor;
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        propertyDescriptors.add(SPILL_THRESHOLD);
+        propertyDescriptors.add(SPILL_DIRECTORY);
+        propertyDescriptors.add(PARALLEL_DECRYPTION);
+        propertyDescriptors.add(SEGMENTS_IN_FLIGHT);
+        return Collections.unmodifiableList(propertyDescriptors);
+    }
+
+    /**
+     * A ZTDF whose manifest has been read and whose payload key has been unwrapped.
+     *
+     * @param index a closed reader holding the manifest and payload location, to be used through
+     *              {@link ZTDFPayloadReader#withChannel}
+     * @param payloadKey the payload key
+     */
+    record PayloadIndex(ZTDFPayloadReader index, byte[] payloadKey) {
+    }
+
+    /**
+     * Reads the manifest and locates the payload of a ZTDF, and unwraps its payload key with the TDF Reader, reading
+     * only the ZIP central directory and the manifest entry of the FlowFile content.
+     *
+     * @param processSession the session owning the FlowFile
+     * @param flowFile the ZTDF FlowFile
+     * @param sdk the SDK providing the KAS registry and platform URL for the KAS allowlist
+     * @param kas the KAS client
+     * @return the manifest, payload location and payload key
+     * @throws IOException if the content is not a ZTDF, or the TDF Reader rejects it
+     */
+    PayloadIndex readIndex(ProcessSession processSession, FlowFile flowFile, SDK sdk, SDK.KAS kas) throws IOException {
+        StreamSeekableChannel channel = new StreamSeekableChannel(flowFile.getSize(), () -> processSession.read(flowFile));
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(channel)) {
+            return new PayloadIndex(reader, unwrapPayloadKey(reader, channel, sdk, kas));
+        }
+    }
+
+    /**
+     * Unwraps the payload key of a ZTDF by loading it with the TDF Reader, with the same reader configuration, KAS
+     * registry and platform URL as sequential decryption, so the KAS allowlist and key types are handled by the SDK.
+     *
+     * @param reader the reader of the ZTDF
+     * @param channel channel over the ZTDF content
+     * @param sdk the SDK providing the KAS registry and platform URL
+     * @param kas the KAS client
+     * @return the payload key
+     * @throws IOException if the TDF Reader rejects the ZTDF
+     */
+    byte[] unwrapPayloadKey(ZTDFPayloadReader reader, SeekableByteChannel channel, SDK sdk, SDK.KAS kas) throws IOException {
+        return reader.unwrapPayloadKey(kas, capturingKAS -> getTDF().loadTDF(channel, capturingKAS,
+                Config.newTDFReaderConfig(Config.withDisableAssertionVerification(true)),
+                sdk.getServices().kasRegistry(), sdk.getPlatformUrl()));
+    }
+
+    /**
+     * Parses a byte range attribute.
+     *
+     * @param flowFile the FlowFile
+     * @param attribute the attribute name
+     * @param defaultValue value of an absent attribute
+     * @return the non-negative attribute value
+     * @throws IllegalArgumentException if the attribute is not a non-negative integer
+     */
+    static long parseRangeAttribute(FlowFile flowFile, String attribute, long defaultValue) {
+        String value = flowFile.getAttribute(attribute);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(attribute + " is not an integer: " + value, e);
+        }
+        if (parsed < 0) {
+            throw new IllegalArgumentException(attribute + " is negative: " + value);
+        }
+        return parsed;
+    }
+
+    /**
+     * Creates the segment decryption executor for this schedule when parallel decryption is enabled. Segment
+     * decryption never waits on other tasks, so one executor is shared by every FlowFile being decrypted.
+     *
+     * @param processContext the NiFi ProcessContext providing the decryption properties
+     */
+    @OnScheduled
+    public void createSegmentExecutor(ProcessContext processContext) {
+        segmentExecutor = processContext.getProperty(PARALLEL_DECRYPTION).asBoolean() ?
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + getIdentifier() + "-segment");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
+    }
+
+    /**
+     * Stops the segment decryption threads of this schedule.
+     */
+    @OnStopped
+    public void stopSegmentExecutor() {
+        if (segmentExecutor != null) {
+            segmentExecutor.shutdownNow();
+            segmentExecutor = null;
+        }
+    }
+
+    /**
+     * Opens a seekable channel over the encrypted content. Content up to the spill threshold is held in memory;
+     * larger content is copied to a temporary file that is deleted when the channel is closed, so heap use does not
+     * grow with the payload size.
+     *
+     * @param flowFile the flow file being decrypted
+     * @param inputStream the flow file content
+     * @param spillThreshold size in bytes above which content is spilled to disk
+     * @param spillDirectory directory for the spill file
+     * @return a seekable channel over the flow file content
+     * @throws IOException if the content cannot be read or spilled
+     */
+    SeekableByteChannel openSeekableChannel(FlowFile flowFile, InputStream inputStream, long spillThreshold, Path spillDirectory) throws IOException {
+        if (flowFile.getSize() <= Math.min(spillThreshold, MAX_IN_MEMORY_SIZE)) {
+            final byte[] buffer = new byte[(int) flowFile.getSize()];
+            StreamUtils.fillBuffer(inputStream, buffer);
+            return new SeekableInMemoryByteChannel(buffer);
+        }
+        getLogger().debug(String.format("%s: spilling %d bytes to %s", flowFile.getId(), flowFile.getSize(), spillDirectory));
+        Path spillFile = Files.createTempFile(spillDirectory, "ztdf-", ".spill");
+        try {
+            Files.copy(inputStream, spillFile, StandardCopyOption.REPLACE_EXISTING);
+            return FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(spillFile);
+            throw e;
+        }
+    }
+
     /**
      * Processes a list of flow files by decrypting their content using the TDF (Trusted Data Format) SDK.
      * For each flow file in the provided list, the following steps are executed:
@@ -67,28 +303,65 @@ public class ConvertFromZTDF extends AbstractTDFProcessor {
     @Override
     void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
         SDK sdk = getTDFSDK(processContext);
-        
+        long spillThreshold = processContext.getProperty(SPILL_THRESHOLD).asDataSize(DataUnit.B).longValue();
+        Path spillDirectory = processContext.getProperty(SPILL_DIRECTORY).isSet() ?
+                Paths.get(processContext.getProperty(SPILL_DIRECTORY).getValue()) : Paths.get(System.getProperty("java.io.tmpdir"));
+
+        SDK.KAS kas = new CachingKAS(sdk.getServices().kas(), null, null, getMetrics());
+        ExecutorService executor = segmentExecutor;
+        int segmentsInFlight = executor == null ? 0 : processContext.getProperty(SEGMENTS_IN_FLIGHT).asInteger();
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error decrypting flowfile", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile -> processSession.transfer(updatedFlowFile, REL_SUCCESS), onFailure);
         for (FlowFile flowFile : flowFiles) {
-            try {
-                try (SeekableByteChannel seekableByteChannel = new SeekableInMemoryByteChannel(readEntireFlowFile(flowFile, processSession))) {
-                    FlowFile updatedFlowFile = processSession.write(flowFile, outputStream -> {
-                        try {
-                            TDF.Reader reader = getTDF().loadTDF(seekableByteChannel, sdk.getServices().kas(), Config.newTDFReaderConfig(Config.withDisableAssertionVerification(true)), sdk.getServices().kasRegistry(), sdk.getPlatformUrl());
-                            reader.readPayload(outputStream);
-                        } catch (InterruptedException e) {
-                            getLogger().error("error decrypting ZTDF", e);
-                            Thread.currentThread().interrupt();
-                        } catch (Exception e) {
-                            getLogger().error("error decrypting ZTDF", e);
-                            throw new IOException(e);
-                        }
-                    });
-                    processSession.transfer(updatedFlowFile, REL_SUCCESS);
+            if (flowFile.getAttribute(RANGE_OFFSET_ATTRIBUTE) != null || flowFile.getAttribute(RANGE_LENGTH_ATTRIBUTE) != null) {
+                long offset;
+                long length;
+                PayloadIndex payloadIndex;
+                try {
+                    offset = parseRangeAttribute(flowFile, RANGE_OFFSET_ATTRIBUTE, 0);
+                    length = parseRangeAttribute(flowFile, RANGE_LENGTH_ATTRIBUTE, Long.MAX_VALUE);
+                    payloadIndex = readIndex(processSession, flowFile, sdk, kas);
+                } catch (Exception e) {
+                    onFailure.accept(flowFile, e);
+                    continue;
                 }
-            } catch (Exception e) {
-                getLogger().error(flowFile.getId() + ": error decrypting flowfile", e);
-                processSession.transfer(flowFile, REL_FAILURE);
+                batch.add(flowFile, (inputStream, outputStream) -> {
+                    try (ZTDFPayloadReader reader = payloadIndex.index().withChannel(StreamSeekableChannel.forward(inputStream, flowFile.getSize()))) {
+                        reader.readRange(payloadIndex.payloadKey(), offset, length, outputStream, executor, segmentsInFlight);
+                    } catch (IOException e) {
+                        getLogger().error("error decrypting ZTDF range", e);
+                        throw e;
+                    }
+                });
+                continue;
             }
+            batch.add(flowFile, (inputStream, outputStream) -> {
+                try (SeekableByteChannel seekableByteChannel = openSeekableChannel(flowFile, inputStream, spillThreshold, spillDirectory)) {
+                    if (executor != null) {
+                        try (ZTDFPayloadReader payloadReader = ZTDFPayloadReader.open(seekableByteChannel)) {
+                            payloadReader.readPayload(unwrapPayloadKey(payloadReader, seekableByteChannel, sdk, kas),
+                                    outputStream, executor, segmentsInFlight);
+                        }
+                        return;
+                    }
+                    TDF.Reader reader = getTDF().loadTDF(seekableByteChannel, kas, Config.newTDFReaderConfig(Config.withDisableAssertionVerification(true)), sdk.getServices().kasRegistry(), sdk.getPlatformUrl());
+                    reader.readPayload(outputStream);
+                } catch (InterruptedException e) {
+                    getLogger().error("error decrypting ZTDF", e);
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    getLogger().error("error decrypting ZTDF", e);
+                    throw e;
+                } catch (Exception e) {
+                    getLogger().error("error decrypting ZTDF", e);
+                    throw new IOException(e);
+                }
+            });
         }
+        batch.complete();
     }
 }
@@ -0,0 +1,120 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Processor decrypting selected fields of the records in a FlowFile from NanoTDFs.
+ * <p>
+ * Records are streamed from the configured Record Reader to the Record Writer. The value of each selected top-level
+ * field is read as the Base64 encoding of a NanoTDF, as written by {@link ConvertRecordFieldsToNanoTDF}, and replaced
+ * by the decrypted UTF-8 string. Null values are left null.
+ * <p>
+ * Keys unwrapped by the KAS are cached for the batch by a digest of the NanoTDF header, so the values encrypted as
+ * items of one NanoTDF collection need only one KAS call.
+ */
+@CapabilityDescription("Decrypts selected record fields from NanoTDFs")
+@Tags({"NanoTDF", "OpenTDF", "Decrypt", "Data Centric Security", "record"})
+@WritesAttributes(value = {
+        @WritesAttribute(attribute = "record.count", description = "The number of records written"),
+        @WritesAttribute(attribute = "mime.type", description = "The MIME type of the Record Writer")
+})
+public class ConvertRecordFieldsFromNanoTDF extends AbstractTDFProcessor {
+
+    /**
+     * Maximum number of unwrapped keys cached for a batch.
+     */
+    static final int UNWRAP_CACHE_SIZE = 1024;
+
+    /**
+     * Default constructor for ConvertRecordFieldsFromNanoTDF.
+     */
+    public ConvertRecordFieldsFromNanoTDF() {
+        super();
+    }
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        propertyDescriptors.add(RecordFieldTransform.RECORD_READER);
+        propertyDescriptors.add(RecordFieldTransform.RECORD_WRITER);
+        propertyDescriptors.add(RecordFieldTransform.RECORD_FIELDS);
+        return Collections.unmodifiableList(propertyDescriptors);
+    }
+
+    /**
+     * Decrypts the selected record fields of each FlowFile. A FlowFile is routed to failure if any selected value
+     * cannot be decrypted.
+     *
+     * @param processContext the NiFi ProcessContext which provides configuration and controller services
+     * @param processSession the ProcessSession which provides mechanisms for reading, writing, transferring, and penalizing flow files
+     * @param flowFiles the list of FlowFile objects to be processed
+     * @throws ProcessException if any error occurs during the processing of flow files
+     */
+    @Override
+    public void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
+        SDK sdk = getTDFSDK(processContext);
+        ExpiringLRUCache<String, byte[]> cache = new ExpiringLRUCache<>(UNWRAP_CACHE_SIZE, Long.MAX_VALUE);
+        getMetrics().registerCache(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER, cache::getHits, cache::getMisses);
+        SDK.KAS kas = new CachingKAS(sdk.getServices().kas(), cache, null, getMetrics());
+        RecordFieldTransform recordTransform = new RecordFieldTransform(
+                processContext.getProperty(RecordFieldTransform.RECORD_READER).asControllerService(RecordReaderFactory.class),
+                processContext.getProperty(RecordFieldTransform.RECORD_WRITER).asControllerService(RecordSetWriterFactory.class),
+                getLogger());
+        Map<String, Map<String, String>> writtenAttributes = new ConcurrentHashMap<>();
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error decrypting record fields from NanoTDF", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile -> {
+            Map<String, String> attributes = writtenAttributes.remove(updatedFlowFile.getAttribute(CoreAttributes.UUID.key()));
+            processSession.transfer(attributes == null ? updatedFlowFile : processSession.putAllAttributes(updatedFlowFile, attributes), REL_SUCCESS);
+        }, onFailure);
+        for (FlowFile flowFile : flowFiles) {
+            Set<String> fields = RecordFieldTransform.parseFields(processContext.getProperty(RecordFieldTransform.RECORD_FIELDS)
+                    .evaluateAttributeExpressions(flowFile).getValue());
+            Map<String, String> attributes = flowFile.getAttributes();
+            batch.add(flowFile, (inputStream, outputStream) -> {
+                ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+                writtenAttributes.put(attributes.get(CoreAttributes.UUID.key()), recordTransform.transform(attributes,
+                        inputStream, outputStream, flowFile.getSize(), fields, false, value -> {
+                            plaintext.reset();
+                            try {
+                                byte[] nanoTDF = Base64.getDecoder().decode(value.toString());
+                                getNanoTDF().readNanoTDF(ByteBuffer.wrap(nanoTDF), plaintext, kas);
+                            } catch (Exception e) {
+                                throw new IOException(e);
+                            }
+                            return plaintext.toString(StandardCharsets.UTF_8);
+                        }));
+            });
+        }
+        batch.complete();
+        cache.adjustCounters(processSession, ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER);
+    }
+}
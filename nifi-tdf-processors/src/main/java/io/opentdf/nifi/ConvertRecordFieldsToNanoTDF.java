@@ -0,0 +1,145 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.record.util.DataTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Processor encrypting selected fields of the records in a FlowFile into NanoTDFs.
+ * <p>
+ * Records are streamed from the configured Record Reader to the Record Writer. The value of each selected top-level
+ * field is encrypted, as its UTF-8 string form, into a NanoTDF and written as the Base64 encoding of that NanoTDF, so
+ * the field becomes a string in any record format. Null values are left null.
+ * <p>
+ * The values of a pulled batch that share KAS URLs and data attributes are encrypted as items of one NanoTDF
+ * collection, so the policy, header and derived key are established once per batch rather than once per value.
+ * <p>
+ * Reads Attributes:
+ * - kas_url: The Key Access Server (KAS) URL used for TDF creation. Overrides the default KAS URL property.
+ * - tdf_attribute: A comma-separated list of data attributes added to the created TDF Data Policy.
+ */
+@CapabilityDescription("Encrypts selected record fields into NanoTDFs")
+@Tags({"NanoTDF", "OpenTDF", "Encrypt", "Data Centric Security", "record"})
+@ReadsAttributes(value = {
+        @ReadsAttribute(attribute = "kas_url", description = "The Key Access Server (KAS) URL used TDF Creation. This overrides " +
+                "the KAS URL property of this processor."),
+        @ReadsAttribute(attribute = "tdf_attribute", description = "A comma separated list of data attributes added " +
+                "to created TDF Data Policy. e.g. http://example.org/attr/foo/value/bar,http://example.org/attr/foo/value/bar2")
+})
+@WritesAttributes(value = {
+        @WritesAttribute(attribute = "record.count", description = "The number of records written"),
+        @WritesAttribute(attribute = "mime.type", description = "The MIME type of the Record Writer")
+})
+public class ConvertRecordFieldsToNanoTDF extends AbstractToProcessor {
+
+    /**
+     * Default constructor for ConvertRecordFieldsToNanoTDF.
+     */
+    public ConvertRecordFieldsToNanoTDF() {
+        super();
+    }
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        propertyDescriptors.add(RecordFieldTransform.RECORD_READER);
+        propertyDescriptors.add(RecordFieldTransform.RECORD_WRITER);
+        propertyDescriptors.add(RecordFieldTransform.RECORD_FIELDS);
+        return Collections.unmodifiableList(propertyDescriptors);
+    }
+
+    /**
+     * Encrypts the selected record fields of each FlowFile. FlowFiles are grouped by policy, and the values of each
+     * group are encrypted as items of a NanoTDF collection opened for this batch.
+     *
+     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
+     * @param processSession the NiFi ProcessSession representing a transaction context for the processing of FlowFiles.
+     * @param flowFiles a list of FlowFiles to be processed.
+     * @throws ProcessException if an error occurs during the processing of the FlowFiles.
+     */
+    @Override
+    public void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
+        SDK sdk = getTDFSDK(processContext);
+        SDK.KAS kas = getKAS(processContext, sdk);
+        RecordFieldTransform recordTransform = new RecordFieldTransform(
+                processContext.getProperty(RecordFieldTransform.RECORD_READER).asControllerService(RecordReaderFactory.class),
+                processContext.getProperty(RecordFieldTransform.RECORD_WRITER).asControllerService(RecordSetWriterFactory.class),
+                getLogger());
+        // one header per policy for the whole batch
+        NanoTDFCollections collections = new NanoTDFCollections(NanoTDFCollections.MAX_COLLECTION_ITEMS, Long.MAX_VALUE,
+                Integer.MAX_VALUE);
+        Map<String, Map<String, String>> writtenAttributes = new ConcurrentHashMap<>();
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error encrypting record fields to NanoTDF", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile -> {
+            Map<String, String> attributes = writtenAttributes.remove(updatedFlowFile.getAttribute(CoreAttributes.UUID.key()));
+            processSession.transfer(attributes == null ? updatedFlowFile : processSession.putAllAttributes(updatedFlowFile, attributes), REL_SUCCESS);
+        }, onFailure);
+        for (List<FlowFile> group : groupByPolicy(flowFiles)) {
+            List<Config.KASInfo> kasInfoList;
+            Set<String> dataAttributes;
+            try {
+                kasInfoList = getKASInfoFromKASURLs(getKasUrl(group.get(0), processContext));
+                dataAttributes = getDataAttributes(group.get(0));
+            } catch (Exception e) {
+                group.forEach(flowFile -> onFailure.accept(flowFile, e));
+                continue;
+            }
+            String policyKey = ConvertToNanoTDF.policyKey(kasInfoList.stream().map(kasInfo -> kasInfo.URL).toList(), dataAttributes);
+            for (FlowFile flowFile : group) {
+                Set<String> fields = RecordFieldTransform.parseFields(processContext.getProperty(RecordFieldTransform.RECORD_FIELDS)
+                        .evaluateAttributeExpressions(flowFile).getValue());
+                Map<String, String> attributes = flowFile.getAttributes();
+                batch.add(flowFile, (inputStream, outputStream) -> {
+                    ByteArrayOutputStream nanoTDF = new ByteArrayOutputStream();
+                    writtenAttributes.put(attributes.get(CoreAttributes.UUID.key()), recordTransform.transform(attributes,
+                            inputStream, outputStream, flowFile.getSize(), fields, true, value -> {
+                                Config.NanoTDFConfig config = collections.next(policyKey,
+                                        () -> ConvertToNanoTDF.newConfig(kasInfoList, dataAttributes, true));
+                                byte[] plaintext = DataTypeUtils.toString(value, (String) null, StandardCharsets.UTF_8)
+                                        .getBytes(StandardCharsets.UTF_8);
+                                nanoTDF.reset();
+                                try {
+                                    getNanoTDF().createNanoTDF(ByteBuffer.wrap(plaintext), nanoTDF, config, kas);
+                                } catch (Exception e) {
+                                    throw new IOException(e);
+                                }
+                                return Base64.getEncoder().encodeToString(nanoTDF.toByteArray());
+                            }));
+                });
+            }
+        }
+        batch.complete();
+        adjustAttributeParseCounters(processSession);
+    }
+}
@@ -1,24 +1,33 @@
 package io.opentdf.nifi;
 
 import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.NanoTDFType;
 import io.opentdf.platform.sdk.SDK;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
-import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.processor.util.StandardValidators;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Processor for converting the content of a FlowFile into a NanoTDF (Trusted Data Format).
@@ -30,11 +39,21 @@ import java.util.Set;
  * Relationships:
  * - REL_SUCCESS: When the conversion to NanoTDF is successful.
  * - REL_FAILURE: When the conversion to NanoTDF fails.
- * - REL_FLOWFILE_EXCEEDS_NANO_SIZE: When the content size exceeds the maximum allowed size for NanoTDF.
+ * - REL_FLOWFILE_EXCEEDS_NANO_SIZE: When the content size exceeds the maximum allowed size for NanoTDF and chunked mode is off.
  * <p>
  * Property Descriptors:
  * - Inherited from AbstractToProcessor (e.g., KAS URL, SSL_CONTEXT_SERVICE, OPENTDF_CONFIG_SERVICE, etc.)
  * <p>
+ * Plaintext content is read into heap buffers borrowed from a bounded, size-classed pool sized up to MAX_SIZE, so
+ * steady state encryption does not allocate an input array per flow file.
+ * <p>
+ * In chunked mode, content larger than MAX_SIZE is streamed into a chunked NanoTDF: a framed sequence of NanoTDFs of
+ * up to Chunk Size plaintext bytes each, sharing one header, so large content stays on the NanoTDF path with memory
+ * bounded by the chunk size.
+ * <p>
+ * In collection mode, flow files with the same KAS URLs and data attributes are encrypted as items of a NanoTDF
+ * collection that shares one header, so the KAS public key and ephemeral key are only established once per collection.
+ * <p>
  * Reads Attributes:
  * - kas_url: The Key Access Server (KAS) URL used for TDF creation. Overrides the default KAS URL property.
  * - tdf_attribute: A comma-separated list of data attributes added to the created TDF Data Policy.
@@ -71,6 +90,131 @@ public class ConvertToNanoTDF extends AbstractToProcessor {
      */
     static final long MAX_SIZE = 16777218;
 
+    /**
+     * Property descriptor enabling NanoTDF collections, where flow files with the same KAS and data attributes share
+     * one NanoTDF header and key.
+     */
+    public static final PropertyDescriptor COLLECTION_MODE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Collection Mode")
+            .description("When true, flow files with the same KAS URLs and data attributes are encrypted as items of a NanoTDF " +
+                    "collection: they share one header and derived key and differ only in their IV. Collections are bounded " +
+                    "by Collection Max Items and Collection Max Age")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Property descriptor for the number of flow files encrypted under one collection header.
+     */
+    public static final PropertyDescriptor COLLECTION_MAX_ITEMS = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Collection Max Items")
+            .description("Maximum number of flow files encrypted under one NanoTDF collection header before a new header is created")
+            .required(true)
+            .defaultValue("10000")
+            .addValidator(StandardValidators.createLongValidator(1, NanoTDFCollections.MAX_COLLECTION_ITEMS, true))
+            .dependsOn(COLLECTION_MODE, "true")
+            .build();
+
+    /**
+     * Property descriptor for the time a collection header is reused.
+     */
+    public static final PropertyDescriptor COLLECTION_MAX_AGE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Collection Max Age")
+            .description("Maximum time a NanoTDF collection header is reused before a new header is created")
+            .required(true)
+            .defaultValue("5 min")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .dependsOn(COLLECTION_MODE, "true")
+            .build();
+
+    /**
+     * Property descriptor enabling chunked NanoTDFs for content larger than the maximum NanoTDF size.
+     */
+    public static final PropertyDescriptor CHUNKED_MODE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Chunked Mode")
+            .description("When true, content larger than the maximum NanoTDF size is streamed into a chunked NanoTDF, a framed " +
+                    "sequence of NanoTDF chunks sharing one header, instead of being routed to exceeds_size_limit. " +
+                    "ConvertFromNanoTDF reads chunked NanoTDFs chunk by chunk")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Smallest chunk size, matching the smallest ZTDF segment size. Every chunk carries its own NanoTDF header and
+     * is encrypted and decrypted separately, so tiny chunks multiply the size and processing cost of a chunked
+     * NanoTDF.
+     */
+    static final long MIN_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Property descriptor for the plaintext size of a chunk.
+     */
+    public static final PropertyDescriptor CHUNK_SIZE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Chunk Size")
+            .description("Plaintext size of each chunk of a chunked NanoTDF, between 16 KB and 16 MB; memory used per " +
+                    "FlowFile is bounded by about twice this size")
+            .required(true)
+            .defaultValue("1 MB")
+            .addValidator(StandardValidators.createDataSizeBoundsValidator(MIN_CHUNK_SIZE, MAX_SIZE))
+            .dependsOn(CHUNKED_MODE, "true")
+            .build();
+
+    /**
+     * Maximum number of distinct policies with an open collection.
+     */
+    static final int MAX_COLLECTION_POLICIES = 1024;
+
+    /**
+     * Failure cause counted for content routed to exceeds_size_limit.
+     */
+    static final String EXCEEDS_SIZE_LIMIT_CAUSE = "Exceeds Size Limit";
+
+    private volatile ByteBufferPool bufferPool;
+
+    private volatile NanoTDFCollections collections;
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        propertyDescriptors.add(BUFFER_POOL_SIZE);
+        propertyDescriptors.add(BUFFER_POOL_MAX_RETAINED);
+        propertyDescriptors.add(COLLECTION_MODE);
+        propertyDescriptors.add(COLLECTION_MAX_ITEMS);
+        propertyDescriptors.add(COLLECTION_MAX_AGE);
+        propertyDescriptors.add(CHUNKED_MODE);
+        propertyDescriptors.add(CHUNK_SIZE);
+        return Collections.unmodifiableList(propertyDescriptors);
+    }
+
+    /**
+     * Creates the buffer pool for this schedule. Heap buffers are used since NanoTDF creation encrypts from the
+     * buffer's backing array, and the idle buffers retained are bounded by the buffer pool max retained size.
+     *
+     * @param processContext the NiFi ProcessContext providing the pool properties
+     */
+    @OnScheduled
+    public void createBufferPool(ProcessContext processContext) {
+        ByteBufferPool pool = new ByteBufferPool((int) MAX_SIZE, processContext.getProperty(BUFFER_POOL_SIZE).asInteger(),
+                processContext.getProperty(BUFFER_POOL_MAX_RETAINED).asDataSize(DataUnit.B).longValue(), false);
+        getMetrics().registerCache("Buffer Pool", pool::getHits, pool::getMisses);
+        bufferPool = pool;
+    }
+
+    /**
+     * Starts with no open collections for this schedule, so headers are never reused across schedules.
+     *
+     * @param processContext the NiFi ProcessContext providing the collection properties
+     */
+    @OnScheduled
+    public void createCollections(ProcessContext processContext) {
+        collections = processContext.getProperty(COLLECTION_MODE).asBoolean() ?
+                new NanoTDFCollections(processContext.getProperty(COLLECTION_MAX_ITEMS).asInteger(),
+                        processContext.getProperty(COLLECTION_MAX_AGE).asTimePeriod(TimeUnit.NANOSECONDS),
+                        MAX_COLLECTION_POLICIES) : null;
+    }
+
     /**
      * Retrieves all the relationships defined in the ConvertToNanoTDF processor.
      *
@@ -83,8 +227,11 @@ public class ConvertToNanoTDF extends AbstractToProcessor {
 
 
     /**
-     * Processes a list of FlowFiles to convert them to NanoTDF format.
-     * If a FlowFile's size exceeds the maximum allowed size, it is routed to a specific relationship.
+     * Processes a list of FlowFiles to convert them to NanoTDF format. FlowFiles are grouped by policy and the KAS
+     * URLs and data attributes are resolved once per group. Each FlowFile gets its own NanoTDF config, except for the
+     * members of a NanoTDF collection, which share the collection config.
+     * If a FlowFile's size exceeds the maximum allowed size, it is written as a chunked NanoTDF in chunked mode, or
+     * routed to a specific relationship otherwise.
      * Otherwise, it attempts to convert the FlowFile's content and transfer it to a success relationship.
      * In case of an error during processing, the FlowFile is routed to a failure relationship.
      *
@@ -96,42 +243,117 @@ public class ConvertToNanoTDF extends AbstractToProcessor {
     @Override
     public void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
         SDK sdk = getTDFSDK(processContext);
-        for (final FlowFile flowFile : flowFiles) {
+        ByteBufferPool pool = bufferPool;
+        NanoTDFCollections collections = this.collections;
+        SDK.KAS kas = getKAS(processContext, sdk);
+        int chunkSize = processContext.getProperty(CHUNKED_MODE).asBoolean() ?
+                processContext.getProperty(CHUNK_SIZE).asDataSize(DataUnit.B).intValue() : 0;
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error converting plain text to NanoTDF", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile -> processSession.transfer(updatedFlowFile, REL_SUCCESS), onFailure);
+        for (List<FlowFile> group : groupByPolicy(flowFiles)) {
+            List<String> kasUrls;
+            Set<String> dataAttributes;
             try {
-                var kasInfoList = getKASInfoFromKASURLs(getKasUrl(flowFile, processContext));
-                Set<String> dataAttributes = getDataAttributes(flowFile);
-                // Config.newNanoTDFConfig is correctly handling the varargs
-                @SuppressWarnings("unchecked")
-                Config.NanoTDFConfig config = Config.newNanoTDFConfig(
-                        Config.withNanoKasInformation(kasInfoList.toArray(new Config.KASInfo[0])),
-                        Config.witDataAttributes(dataAttributes.toArray(new String[0]))
-                );
-
-                if (flowFile.getSize() >MAX_SIZE){
-                    getLogger().error(flowFile.getId() + ": error converting plain text to NanoTDF; content length of " + flowFile.getSize() + " > " + MAX_SIZE);
-                    processSession.transfer(flowFile, REL_FLOWFILE_EXCEEDS_NANO_SIZE);
-                }else {
-
-                    //write NanoTDF to FlowFile
-                    FlowFile updatedFlowFile = processSession.write(flowFile, (inputStream, outputStream) -> {
-                                try {
-                                    byte[] bytes = new byte[(int) flowFile.getSize()];
-                                    StreamUtils.fillBuffer(inputStream, bytes);
-                                    ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-                                    getNanoTDF().createNanoTDF(byteBuffer, outputStream, config, sdk.getServices().kas());
-                                } catch (Exception e) {
-                                    getLogger().error("error creating NanoTDF", e);
-                                    throw new IOException(e);
+                kasUrls = getKasUrl(group.get(0), processContext);
+                dataAttributes = getDataAttributes(group.get(0));
+            } catch (Exception e) {
+                group.forEach(flowFile -> onFailure.accept(flowFile, e));
+                continue;
+            }
+            String policyKey = policyKey(kasUrls, dataAttributes);
+            for (final FlowFile flowFile : group) {
+                try {
+                    if (flowFile.getSize() > MAX_SIZE && chunkSize > 0) {
+                        // one collection per chunked NanoTDF, so its chunks share a header
+                        Config.NanoTDFConfig config = createConfig(kasUrls, dataAttributes, true);
+                        batch.add(flowFile, (inputStream, outputStream) -> ChunkedNanoTDF.write(inputStream, flowFile.getSize(),
+                                outputStream, chunkSize, pool, (chunk, nanoTDF) -> getNanoTDF().createNanoTDF(chunk, nanoTDF, config, kas)));
+                    } else if (flowFile.getSize() >MAX_SIZE){
+                        getLogger().error(flowFile.getId() + ": error converting plain text to NanoTDF; content length of " + flowFile.getSize() + " > " + MAX_SIZE);
+                        getMetrics().recordFailure(EXCEEDS_SIZE_LIMIT_CAUSE);
+                        processSession.transfer(flowFile, REL_FLOWFILE_EXCEEDS_NANO_SIZE);
+                    }else {
+                        // the SDK updates a config while creating a NanoTDF, so only collection members share one
+                        Config.NanoTDFConfig config = collections == null ? createConfig(kasUrls, dataAttributes, false) :
+                                collections.next(policyKey, () -> createConfig(kasUrls, dataAttributes, true));
+
+                        //write NanoTDF to FlowFile
+                        batch.add(flowFile, pool, (byteBuffer, outputStream) -> {
+                                    try {
+                                        getNanoTDF().createNanoTDF(byteBuffer, outputStream, config, kas);
+                                    } catch (Exception e) {
+                                        getLogger().error("error creating NanoTDF", e);
+                                        throw new IOException(e);
+                                    }
                                 }
-                            }
-                    );
-                    processSession.transfer(updatedFlowFile, REL_SUCCESS);
+                        );
+                    }
+                } catch (Exception e) {
+                    onFailure.accept(flowFile, e);
                 }
-            } catch (Exception e) {
-                getLogger().error(flowFile.getId() + ": error converting plain text to NanoTDF", e);
-                processSession.transfer(flowFile, REL_FAILURE);
             }
         }
+        batch.complete();
+        pool.adjustCounters(processSession);
+        adjustAttributeParseCounters(processSession);
+    }
+
+    /**
+     * Fetches the EC public key NanoTDFs are created with.
+     *
+     * @param kas the KAS to fetch the key with
+     * @param kasInfo the KAS to fetch the key of
+     */
+    @Override
+    void prefetchPublicKey(SDK.KAS kas, Config.KASInfo kasInfo) {
+        kas.getECPublicKey(kasInfo, NanoTDFType.ECCurve.SECP256R1);
+    }
+
+    /**
+     * Creates the NanoTDF config for a KAS and policy.
+     *
+     * @param kasUrls KAS URLs of the NanoTDF
+     * @param dataAttributes data attributes of the NanoTDF policy
+     * @param collection whether NanoTDFs created from the config form a collection sharing one header
+     * @return the NanoTDF config
+     */
+    Config.NanoTDFConfig createConfig(List<String> kasUrls, Set<String> dataAttributes, boolean collection) {
+        return newConfig(getKASInfoFromKASURLs(kasUrls), dataAttributes, collection);
+    }
+
+    /**
+     * Creates a NanoTDF config for KAS infos and a policy.
+     *
+     * @param kasInfoList KAS infos of the NanoTDF
+     * @param dataAttributes data attributes of the NanoTDF policy
+     * @param collection whether NanoTDFs created from the config form a collection sharing one header
+     * @return the NanoTDF config
+     */
+    static Config.NanoTDFConfig newConfig(List<Config.KASInfo> kasInfoList, Set<String> dataAttributes, boolean collection) {
+        List<Consumer<Config.NanoTDFConfig>> configurationOptions = new ArrayList<>(Arrays.asList(
+                Config.withNanoKasInformation(kasInfoList.toArray(new Config.KASInfo[0])),
+                Config.witDataAttributes(dataAttributes.toArray(new String[0]))));
+        if (collection) {
+            configurationOptions.add(Config.withCollection());
+        }
+        // Config.newNanoTDFConfig is correctly handling the varargs
+        @SuppressWarnings("unchecked")
+        Config.NanoTDFConfig config = Config.newNanoTDFConfig(configurationOptions.toArray(new Consumer[0]));
+        return config;
     }
 
+    /**
+     * Builds a key identifying a KAS and policy combination, independent of the order of the URLs and attributes.
+     *
+     * @param kasUrls KAS URLs of the NanoTDF
+     * @param dataAttributes data attributes of the NanoTDF policy
+     * @return the policy key
+     */
+    static String policyKey(List<String> kasUrls, Set<String> dataAttributes) {
+        return String.join(",", new TreeSet<>(kasUrls)) + "\n" + String.join(",", new TreeSet<>(dataAttributes));
+    }
 }
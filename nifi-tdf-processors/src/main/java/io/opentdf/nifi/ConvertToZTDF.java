@@ -1,6 +1,7 @@
 package io.opentdf.nifi;
 
 import com.google.gson.Gson;
+import io.opentdf.platform.policy.attributes.AttributesServiceGrpc;
 import io.opentdf.platform.sdk.AssertionConfig;
 import io.opentdf.platform.sdk.Config;
 import io.opentdf.platform.sdk.Config.TDFConfig;
@@ -9,19 +10,27 @@ import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.key.service.api.PrivateKeyService;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.StreamCallback;
+import org.apache.nifi.processor.util.StandardValidators;
 
 import java.io.IOException;
 import java.security.PrivateKey;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -72,7 +81,8 @@ public class ConvertToZTDF extends AbstractToProcessor {
      */
     public static final PropertyDescriptor SIGN_ASSERTIONS = new org.apache.nifi.components.PropertyDescriptor.Builder()
             .name("Sign Assertions")
-            .description("sign assertions")
+            .description("sign assertions with the key of the Private Key Controller Service; only RSA keys are " +
+                    "supported, and assertions are signed with RS256")
             .required(false)
             .defaultValue("false")
             .allowableValues("true", "false")
@@ -90,7 +100,8 @@ public class ConvertToZTDF extends AbstractToProcessor {
      */
     public static final PropertyDescriptor PRIVATE_KEY_CONTROLLER_SERVICE = new org.apache.nifi.components.PropertyDescriptor.Builder()
             .name("Private Key Controller Service")
-            .description("Optional Private Key Service; this is need for assertion signing")
+            .description("Optional Private Key Service; this is need for assertion signing and must provide an RSA " +
+                    "private key, since the OpenTDF SDK signs assertions with RS256 only")
             .required(true)
             .identifiesControllerService(PrivateKeyService.class)
             .dependsOn(SIGN_ASSERTIONS, new AllowableValue("true"))
@@ -98,6 +109,66 @@ public class ConvertToZTDF extends AbstractToProcessor {
             .build();
 
 
+    /**
+     * Property descriptor for the plaintext size of each ZTDF payload segment.
+     */
+    public static final PropertyDescriptor SEGMENT_SIZE = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Segment Size")
+            .description("Plaintext size of each encrypted and integrity protected segment of the ZTDF payload, " +
+                    "between 16 KB and 4 MB")
+            .required(true)
+            .defaultValue("2 MB")
+            .addValidator(StandardValidators.createDataSizeBoundsValidator(16 * 1024, 4 * 1024 * 1024))
+            .build();
+
+    /**
+     * Property descriptor for the algorithm signing the aggregate of the segment hashes.
+     */
+    public static final PropertyDescriptor INTEGRITY_ALGORITHM = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Integrity Algorithm")
+            .description("Algorithm of the root signature over the segment hashes")
+            .required(true)
+            .defaultValue(Config.IntegrityAlgorithm.HS256.name())
+            .allowableValues(Config.IntegrityAlgorithm.HS256.name(), Config.IntegrityAlgorithm.GMAC.name())
+            .build();
+
+    /**
+     * Property descriptor for the algorithm hashing each payload segment.
+     */
+    public static final PropertyDescriptor SEGMENT_INTEGRITY_ALGORITHM = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Segment Integrity Algorithm")
+            .description("Algorithm of the hash of each payload segment; GMAC reuses the AES-GCM tag while HS256 " +
+                    "computes an HMAC over the encrypted segment")
+            .required(true)
+            .defaultValue(Config.IntegrityAlgorithm.GMAC.name())
+            .allowableValues(Config.IntegrityAlgorithm.GMAC.name(), Config.IntegrityAlgorithm.HS256.name())
+            .build();
+
+    /**
+     * Property descriptor enabling read-ahead and write-behind of segments around the encryption of large content.
+     */
+    public static final PropertyDescriptor PIPELINED_ENCRYPTION = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Pipelined Encryption")
+            .description("When true, content larger than 16 MB is read ahead and the ZTDF written behind on separate " +
+                    "threads, in segment sized buffers, so content repository I/O overlaps encryption")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    /**
+     * Property descriptor for the number of segments buffered on each side of a pipelined encryption.
+     */
+    public static final PropertyDescriptor SEGMENTS_IN_FLIGHT = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Segments In Flight")
+            .description("Maximum number of segments read ahead of, and written behind, the encryption of a FlowFile; " +
+                    "memory used per FlowFile is bounded by about twice this many segments")
+            .required(true)
+            .defaultValue("4")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .dependsOn(PIPELINED_ENCRYPTION, "true")
+            .build();
+
     /**
      * Retrieves the PrivateKeyService from the given process context if it is set.
      *
@@ -120,9 +191,137 @@ public class ConvertToZTDF extends AbstractToProcessor {
         List<PropertyDescriptor> propertyDescriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
         propertyDescriptors.add(PRIVATE_KEY_CONTROLLER_SERVICE);
         propertyDescriptors.add(SIGN_ASSERTIONS);
+        propertyDescriptors.add(SEGMENT_SIZE);
+        propertyDescriptors.add(INTEGRITY_ALGORITHM);
+        propertyDescriptors.add(SEGMENT_INTEGRITY_ALGORITHM);
+        propertyDescriptors.add(PIPELINED_ENCRYPTION);
+        propertyDescriptors.add(SEGMENTS_IN_FLIGHT);
         return Collections.unmodifiableList(propertyDescriptors);
     }
 
+    /**
+     * Number of distinct assertion JSON values whose parsed assertions are retained per schedule.
+     */
+    static final int ASSERTION_CACHE_SIZE = 256;
+
+    /**
+     * Counter name prefix for the assertion cache.
+     */
+    static final String ASSERTION_CACHE_COUNTER = "Assertion Cache";
+
+    private volatile AssertionConfig.AssertionKey assertionSigningKey;
+
+    private volatile ExpiringLRUCache<String, ParsedAssertion> assertionCache =
+            new ExpiringLRUCache<>(ASSERTION_CACHE_SIZE, Long.MAX_VALUE);
+
+    /**
+     * An assertion parsed and validated from its JSON. Unlike an {@link AssertionConfig}, which the SDK reads while
+     * signing and binding it to a TDF, it is immutable and can be shared by every FlowFile carrying the same JSON.
+     */
+    record ParsedAssertion(String id, AssertionConfig.Type type, AssertionConfig.Scope scope,
+                           AssertionConfig.AppliesToState appliesToState, String format, String value) {
+
+        /**
+         * @param signingKey the key to sign the assertion with, or null to leave it unsigned
+         * @return a new assertion config
+         */
+        AssertionConfig toAssertionConfig(AssertionConfig.AssertionKey signingKey) {
+            AssertionConfig assertionConfig = new AssertionConfig();
+            assertionConfig.id = id;
+            assertionConfig.type = type;
+            assertionConfig.scope = scope;
+            assertionConfig.appliesToState = appliesToState;
+            assertionConfig.statement = new AssertionConfig.Statement();
+            assertionConfig.statement.format = format;
+            assertionConfig.statement.value = value;
+            if (signingKey != null) {
+                assertionConfig.signingKey = signingKey;
+            }
+            return assertionConfig;
+        }
+    }
+
+    /**
+     * Resolves the assertion signing key once per schedule and starts with an empty assertion cache.
+     *
+     * @param processContext the NiFi ProcessContext providing the signing properties and private key service
+     * @throws ProcessException if assertion signing is enabled with a key other than an RSA key
+     */
+    @OnScheduled
+    public void resolveAssertionSigning(ProcessContext processContext) throws ProcessException {
+        ExpiringLRUCache<String, ParsedAssertion> cache = new ExpiringLRUCache<>(ASSERTION_CACHE_SIZE, Long.MAX_VALUE);
+        getMetrics().registerCache(ASSERTION_CACHE_COUNTER, cache::getHits, cache::getMisses);
+        assertionCache = cache;
+        assertionSigningKey = null;
+        Optional<PropertyValue> signAssertions = getPropertyValue(processContext);
+        //populate assertion signing config only when sign assertions property is true
+        if (signAssertions.isPresent() && Boolean.TRUE.equals(signAssertions.get().asBoolean())) {
+            getLogger().debug("signed assertions is active");
+            PrivateKeyService privateKeyService = getPrivateKeyService(processContext);
+            if (privateKeyService != null) {
+                PrivateKey privateKey = privateKeyService.getPrivateKey();
+                if (privateKey == null) {
+                    getLogger().warn("private key service returned no key; assertions will not be signed");
+                    return;
+                }
+                AssertionConfig.AssertionKeyAlg alg = getAssertionKeyAlg(privateKey).orElseThrow(() ->
+                        new ProcessException("assertion signing requires an RSA private key; the OpenTDF SDK cannot " +
+                                "sign assertions with a " + privateKey.getAlgorithm() + " key"));
+                getLogger().debug(String.format("assertions signed with %s", alg));
+                assertionSigningKey = new AssertionConfig.AssertionKey(alg, privateKey);
+            }
+        }
+    }
+
+    /**
+     * Maps a private key to its assertion signing algorithm. The SDK signs assertions with RS256 or with an HS256
+     * shared secret, so only RSA keys are supported.
+     *
+     * @param privateKey the signing key
+     * @return RS256 for an RSA key, or empty for any other key
+     */
+    static Optional<AssertionConfig.AssertionKeyAlg> getAssertionKeyAlg(PrivateKey privateKey) {
+        return "RSA".equals(privateKey.getAlgorithm()) ? Optional.of(AssertionConfig.AssertionKeyAlg.RS256) : Optional.empty();
+    }
+
+    private volatile ExecutorService pipelineExecutor;
+
+    private volatile SegmentPipeline segmentPipeline;
+
+    /**
+     * Creates the segment pipeline for this schedule when pipelined encryption is enabled. Large content is encrypted
+     * on the task thread, so two pipeline threads per concurrent task are enough for every pipeline to run.
+     *
+     * @param processContext the NiFi ProcessContext providing the pipeline properties
+     */
+    @OnScheduled
+    public void createSegmentPipeline(ProcessContext processContext) {
+        if (!processContext.getProperty(PIPELINED_ENCRYPTION).asBoolean()) {
+            segmentPipeline = null;
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2 * processContext.getMaxConcurrentTasks(), runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + getIdentifier() + "-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pipelineExecutor = executor;
+        segmentPipeline = new SegmentPipeline(executor, processContext.getProperty(SEGMENT_SIZE).asDataSize(DataUnit.B).intValue(),
+                processContext.getProperty(SEGMENTS_IN_FLIGHT).asInteger());
+    }
+
+    /**
+     * Stops the segment pipeline threads of this schedule.
+     */
+    @OnStopped
+    public void stopSegmentPipeline() {
+        segmentPipeline = null;
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdownNow();
+            pipelineExecutor = null;
+        }
+    }
+
     Gson gson = new Gson();
 
     Map<String, AssertionConfig.Type> assertionTypeMap = Map.of("handling", AssertionConfig.Type.HandlingAssertion,
@@ -132,18 +331,34 @@ public class ConvertToZTDF extends AbstractToProcessor {
     Map<String, AssertionConfig.AppliesToState> assertionAppliesToStateMap = Map.of("encrypted", AssertionConfig.AppliesToState.Encrypted,
             "unencrypted", AssertionConfig.AppliesToState.Unencrypted);
     /**
-     * Builds an {@link AssertionConfig} instance from the given NiFi {@link ProcessContext} and {@link FlowFile},
-     * using the provided flowFile attribute name to retrieve relevant data. This method deserializes an assertion
-     * JSON string from the flowFile attribute, populates the {@link AssertionConfig}, and performs necessary validations.
+     * Builds an {@link AssertionConfig} instance from an assertion JSON string, the value of a
+     * {@code tdf_assertion_} FlowFile attribute. This method deserializes the assertion JSON string, populates the
+     * {@link AssertionConfig}, and performs necessary validations.
+     * Parsed assertions are cached by their JSON content for the current schedule, and a new assertion config is
+     * built from the parsed assertion and the signing key of this schedule on every call.
      *
-     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services
-     * @param flowFile the NiFi FlowFile containing the assertion JSON string in its attributes
-     * @param flowFileAttributeName the name of the attribute in the flowFile which contains the assertion JSON string
-     * @return an {@link AssertionConfig} instance populated with values from the assertion JSON string in the flowFile attribute
+     * @param assertionJson the assertion JSON string
+     * @return a new {@link AssertionConfig} instance populated with values from the assertion JSON string
      * @throws Exception if any essential assertion information is missing or invalid 
      */
-    AssertionConfig buildAssertion(ProcessContext processContext, FlowFile flowFile, String flowFileAttributeName) throws Exception{
-        String assertionJson = flowFile.getAttribute(flowFileAttributeName);
+    AssertionConfig buildAssertion(String assertionJson) throws Exception{
+        ExpiringLRUCache<String, ParsedAssertion> cache = assertionCache;
+        ParsedAssertion parsed = cache.get(assertionJson);
+        if (parsed == null) {
+            parsed = parseAssertion(assertionJson);
+            cache.put(assertionJson, parsed);
+        }
+        return parsed.toAssertionConfig(assertionSigningKey);
+    }
+
+    /**
+     * Parses and validates an assertion JSON string.
+     *
+     * @param assertionJson the assertion JSON string
+     * @return the parsed assertion
+     * @throws Exception if any essential assertion information is missing or invalid
+     */
+    private ParsedAssertion parseAssertion(String assertionJson) throws Exception {
         Map<?,?> assertionMap = gson.fromJson(assertionJson, Map.class);
         AssertionConfig assertionConfig = new AssertionConfig();
         assertionConfig.id = assertionMap.containsKey("id") ? (String)assertionMap.get("id") : null;
@@ -158,7 +373,6 @@ public class ConvertToZTDF extends AbstractToProcessor {
             assertionConfig.statement.format = statementMap.containsKey("format") ? (String)statementMap.get("format") : null;
             assertionConfig.statement.value = (String)statementMap.get("value");
         }
-        addSigningInfoToAssertionConfig(processContext, assertionConfig);
         if(assertionConfig.scope == null){
             throw new Exception("assertion scope is required");
         }
@@ -174,7 +388,8 @@ public class ConvertToZTDF extends AbstractToProcessor {
         if(assertionConfig.type == null){
             throw new Exception("assertion type is required");
         }
-        return assertionConfig;
+        return new ParsedAssertion(assertionConfig.id, assertionConfig.type, assertionConfig.scope,
+                assertionConfig.appliesToState, assertionConfig.statement.format, assertionConfig.statement.value);
     }
 
     private void populateFieldFromMap(Map<?, ?> sourceMap, String key, Map<?, ?> destinationMap, Consumer<Object> setter) {
@@ -186,7 +401,10 @@ public class ConvertToZTDF extends AbstractToProcessor {
     }
 
     /**
-     * Processes a list of FlowFiles to convert them into TDF (Trusted Data Format) files.
+     * Processes a list of FlowFiles to convert them into TDF (Trusted Data Format) files. FlowFiles are grouped by
+     * policy and the inputs of the TDF config, including its assertions, are resolved once per group; each FlowFile
+     * is then encrypted with its own config, since the SDK updates the config while creating a TDF. With pipelined encryption,
+     * content larger than the concurrent staging limit is encrypted through the segment pipeline.
      *
      * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
      * @param processSession the NiFi ProcessSession used to interact with the FlowFiles.
@@ -196,67 +414,155 @@ public class ConvertToZTDF extends AbstractToProcessor {
     @Override
     void processFlowFiles(ProcessContext processContext, ProcessSession processSession, List<FlowFile> flowFiles) throws ProcessException {
         SDK sdk = getTDFSDK(processContext);
-        for (final FlowFile flowFile : flowFiles) {
+        SDK.KAS kas = getKAS(processContext, sdk);
+        AttributesServiceGrpc.AttributesServiceFutureStub attributesService = getAttributesService(processContext, sdk);
+        SegmentPipeline pipeline = segmentPipeline;
+        BiConsumer<FlowFile, Exception> onFailure = (flowFile, e) -> {
+            getLogger().error(flowFile.getId() + ": error converting plain text to ZTDF", e);
+            getMetrics().recordFailure(e);
+            processSession.transfer(flowFile, REL_FAILURE);
+        };
+        TransformBatch batch = newTransformBatch(processSession, updatedFlowFile ->
+                processSession.transfer(processSession.putAttribute(updatedFlowFile, "mime.type", "application/ztdf+zip"), REL_SUCCESS), onFailure);
+        for (List<FlowFile> group : groupByPolicy(flowFiles)) {
+            ConfigInputs inputs;
             try {
-                var kasInfoList = getKASInfoFromKASURLs(getKasUrl(flowFile, processContext));
-                Set<String> dataAttributes = getDataAttributes(flowFile);
-                //build baseline TDF Config options
-                List<Consumer<TDFConfig>> configurationOptions = new ArrayList<>(Arrays.asList(Config.withKasInformation(kasInfoList.toArray(new Config.KASInfo[0])),
-                        Config.withDataAttributes(dataAttributes.toArray(new String[0]))));
-                List<String> nifiAssertionAttributeKeys = flowFile.getAttributes().keySet().stream().filter(x->x.startsWith(TDF_ASSERTION_PREFIX)).toList();
-                for(String nifiAssertionAttributeKey: nifiAssertionAttributeKeys) {
-                    getLogger().debug(String.format("Adding assertion for NiFi attribute = %s", nifiAssertionAttributeKey));
-                    configurationOptions.add(Config.withAssertionConfig(buildAssertion(processContext, flowFile, nifiAssertionAttributeKey)));
+                inputs = resolveConfigInputs(processContext, group.get(0));
+            } catch (Exception e) {
+                group.forEach(flowFile -> onFailure.accept(flowFile, e));
+                continue;
+            }
+            for (final FlowFile flowFile : group) {
+                TDFConfig config;
+                try {
+                    config = newConfig(inputs);
+                } catch (Exception e) {
+                    onFailure.accept(flowFile, e);
+                    continue;
                 }
-                // Config.newTDFConfig is correctly handling the varargs
-                @SuppressWarnings("unchecked")
-                TDFConfig config = Config.newTDFConfig(configurationOptions.toArray(new Consumer[0]));
-
+                StreamCallback encrypt = (inputStream, outputStream) -> {
+                    try {
+                        getTDF().createTDF(inputStream, outputStream, config, kas, attributesService);
+                    } catch (InterruptedException e) {
+                        getLogger().error("Interrupted inner", e);
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        getLogger().error("error creating ZTDF", e);
+                        throw new IOException(e);
+                    }
+                };
                 //write ZTDF to FlowFile
-                FlowFile updatedFlowFile = processSession.write(flowFile, (inputStream, outputStream) -> {
-                            try {
-                                getTDF().createTDF(inputStream, outputStream, config, sdk.getServices().kas(), sdk.getServices().attributes());
-                            } catch (InterruptedException e) {
-                                getLogger().error("Interrupted inner", e);
-                                Thread.currentThread().interrupt();
-                            } catch (Exception e) {
-                                getLogger().error("error creating ZTDF", e);
-                                throw new IOException(e);
-                            }
-                        }
-                );
-                updatedFlowFile = processSession.putAttribute(updatedFlowFile, "mime.type", "application/ztdf+zip");
-                processSession.transfer(updatedFlowFile, REL_SUCCESS);
-            } catch (InterruptedException e) {
-                getLogger().error("Interrupted outer", e);
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                getLogger().error(flowFile.getId() + ": error converting plain text to ZTDF", e);
-                processSession.transfer(flowFile, REL_FAILURE);
+                batch.add(flowFile, pipeline != null && flowFile.getSize() > CONCURRENT_STAGING_LIMIT ?
+                        (inputStream, outputStream) -> pipeline.run(inputStream, outputStream, encrypt) : encrypt);
             }
         }
+        batch.complete();
+        adjustAttributeParseCounters(processSession);
+        assertionCache.adjustCounters(processSession, ASSERTION_CACHE_COUNTER);
     }
 
     /**
-     * Adds signing information to the given AssertionConfig if the signing property is enabled 
-     * in the ProcessContext and the private key service is available.
+     * Returns the attributes service stub the SDK resolves data attributes and KAS grants with, answering repeated
+     * lookups from the cache shared through the OpenTDF Config Service.
      *
-     * @param processContext the NiFi ProcessContext providing necessary configuration 
-     *                       and controller services.
-     * @param assertionConfig the AssertionConfig to which the signing information will be added.
+     * @param processContext the NiFi ProcessContext providing the OpenTDF Config Service
+     * @param sdk the SDK used by this processor
+     * @return the attributes service stub
      */
-    private void addSigningInfoToAssertionConfig(ProcessContext processContext, AssertionConfig assertionConfig) {
-        Optional<PropertyValue> signAssertions = getPropertyValue(processContext);
-        //populate assertion signing config only when sign assertions property is true and assertions exist
-        if (signAssertions.isPresent() && Boolean.TRUE.equals(signAssertions.get().asBoolean())) {
-            getLogger().debug("signed assertions is active");
-            PrivateKeyService privateKeyService = getPrivateKeyService(processContext);
-            if (privateKeyService != null) {
-                getLogger().debug("adding signing configuration for assertion");
-                //TODO assumes RSA256 signing key
-                PrivateKey privateKey = privateKeyService.getPrivateKey();
-                assertionConfig.signingKey = new AssertionConfig.AssertionKey(AssertionConfig.AssertionKeyAlg.RS256, privateKey);
-            }
+    AttributesServiceGrpc.AttributesServiceFutureStub getAttributesService(ProcessContext processContext, SDK sdk) {
+        AttributesServiceGrpc.AttributesServiceFutureStub attributesService = sdk.getServices().attributes();
+        if (attributesService == null) {
+            return null;
+        }
+        AttributeLookupCache cache = processContext.getProperty(OPENTDF_CONFIG_SERVICE)
+                .asControllerService(OpenTDFControllerService.class).getAttributeLookupCache();
+        return attributesService.withInterceptors(new AttributeLookupCacheInterceptor(cache));
+    }
+
+    /**
+     * The inputs of the TDF config of a policy group: the KAS URLs, data attributes and assertion JSON values of its
+     * FlowFiles and the segment properties of this processor. These are immutable and resolved once per group, while
+     * the config itself is built per FlowFile, as the SDK fills in the KAS public keys and split plan of a config
+     * while creating a TDF.
+     */
+    record ConfigInputs(List<String> kasUrls, Set<String> dataAttributes, List<String> assertionJsons, int segmentSize,
+                        Config.IntegrityAlgorithm integrityAlgorithm, Config.IntegrityAlgorithm segmentIntegrityAlgorithm) {
+    }
+
+    /**
+     * Resolves the TDF config inputs of a FlowFile from its KAS URL, data attribute and assertion attributes, and
+     * the segment properties of this processor.
+     *
+     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
+     * @param flowFile the FlowFile, or any FlowFile with the same policy fingerprint
+     * @return the TDF config inputs
+     * @throws Exception if the KAS URL or data attributes are missing or invalid
+     */
+    ConfigInputs resolveConfigInputs(ProcessContext processContext, FlowFile flowFile) throws Exception {
+        List<String> kasUrls = getKasUrl(flowFile, processContext);
+        Set<String> dataAttributes = getDataAttributes(flowFile);
+        List<String> assertionJsons = new TreeMap<>(flowFile.getAttributes()).entrySet().stream()
+                .filter(x -> x.getKey().startsWith(TDF_ASSERTION_PREFIX)).map(Map.Entry::getValue).toList();
+        return new ConfigInputs(kasUrls, dataAttributes, assertionJsons,
+                processContext.getProperty(SEGMENT_SIZE).asDataSize(DataUnit.B).intValue(),
+                Config.IntegrityAlgorithm.valueOf(processContext.getProperty(INTEGRITY_ALGORITHM).getValue()),
+                Config.IntegrityAlgorithm.valueOf(processContext.getProperty(SEGMENT_INTEGRITY_ALGORITHM).getValue()));
+    }
+
+    /**
+     * Builds a new TDF config, with new KAS infos, from resolved config inputs. KAS public keys are served from the
+     * public key cache shared through the OpenTDF Config Service, so they are not fetched per config.
+     *
+     * @param inputs the TDF config inputs
+     * @return a TDF config not shared with any other FlowFile
+     * @throws Exception if an assertion is missing or invalid
+     */
+    TDFConfig newConfig(ConfigInputs inputs) throws Exception {
+        //build baseline TDF Config options
+        List<Consumer<TDFConfig>> configurationOptions = new ArrayList<>(Arrays.asList(
+                Config.withKasInformation(getKASInfoFromKASURLs(inputs.kasUrls()).toArray(new Config.KASInfo[0])),
+                Config.withDataAttributes(inputs.dataAttributes().toArray(new String[0])),
+                Config.withSegmentSize(inputs.segmentSize())));
+        configurationOptions.add(tdfConfig -> {
+            tdfConfig.integrityAlgorithm = inputs.integrityAlgorithm();
+            tdfConfig.segmentIntegrityAlgorithm = inputs.segmentIntegrityAlgorithm();
+        });
+        for (String assertionJson : inputs.assertionJsons()) {
+            configurationOptions.add(Config.withAssertionConfig(buildAssertion(assertionJson)));
         }
+        // Config.newTDFConfig is correctly handling the varargs
+        @SuppressWarnings("unchecked")
+        TDFConfig config = Config.newTDFConfig(configurationOptions.toArray(new Consumer[0]));
+        return config;
+    }
+
+    /**
+     * Builds the TDF config for a FlowFile from its KAS URL, data attribute and assertion attributes, and the
+     * segment properties of this processor.
+     *
+     * @param processContext the NiFi ProcessContext providing necessary configuration and controller services.
+     * @param flowFile the FlowFile
+     * @return the TDF config
+     * @throws Exception if the KAS URL, data attributes or an assertion are missing or invalid
+     */
+    TDFConfig createConfig(ProcessContext processContext, FlowFile flowFile) throws Exception {
+        return newConfig(resolveConfigInputs(processContext, flowFile));
+    }
+
+    /**
+     * Extends the policy fingerprint with the assertion attributes, which are part of the TDF config.
+     *
+     * @param flowFile the FlowFile
+     * @return the KAS URL, data attribute and assertion attribute values of the FlowFile
+     */
+    @Override
+    String policyFingerprint(FlowFile flowFile) {
+        StringBuilder fingerprint = new StringBuilder(super.policyFingerprint(flowFile));
+        new TreeMap<>(flowFile.getAttributes()).forEach((key, value) -> {
+            if (key.startsWith(TDF_ASSERTION_PREFIX)) {
+                fingerprint.append('\u0000').append(key).append('=').append(value);
+            }
+        });
+        return fingerprint.toString();
     }
 }
@@ -0,0 +1,63 @@
+package io.opentdf.nifi;
+
+/**
+ * Attribute lookup cache keeping successful responses for a TTL and rejections for a shorter TTL, each in a size
+ * bounded {@link ExpiringLRUCache}.
+ */
+class ExpiringAttributeLookupCache implements AttributeLookupCache {
+
+    private final ExpiringLRUCache<Object, Object> responses;
+    private final ExpiringLRUCache<Object, Object> rejections;
+
+    /**
+     * @param maxEntries number of requests cached, for each of the responses and rejections
+     * @param ttlNanos time a successful response is cached
+     * @param rejectionTTLNanos time a rejection is cached
+     */
+    ExpiringAttributeLookupCache(int maxEntries, long ttlNanos, long rejectionTTLNanos) {
+        this.responses = new ExpiringLRUCache<>(maxEntries, ttlNanos);
+        this.rejections = new ExpiringLRUCache<>(maxEntries, rejectionTTLNanos);
+    }
+
+    @Override
+    public Object getResponse(Object request) {
+        return responses.get(request);
+    }
+
+    @Override
+    public void putResponse(Object request, Object response) {
+        responses.put(request, response);
+    }
+
+    @Override
+    public Object getRejection(Object request) {
+        return rejections.get(request);
+    }
+
+    @Override
+    public void putRejection(Object request, Object rejection) {
+        rejections.put(request, rejection);
+    }
+
+    /**
+     * @return cache of successful responses
+     */
+    ExpiringLRUCache<Object, Object> getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return cache of rejections
+     */
+    ExpiringLRUCache<Object, Object> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Drops every cached response and rejection.
+     */
+    void clear() {
+        responses.clear();
+        rejections.clear();
+    }
+}
@@ -0,0 +1,147 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A size bounded, least recently used cache whose entries expire a fixed time after they are added, or never when
+ * the TTL is {@link Long#MAX_VALUE}.
+ * <p>
+ * Hits, misses and evictions are counted and can be published as session counters with
+ * {@link #adjustCounters(ProcessSession, String)}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class ExpiringLRUCache<K, V> {
+
+    private final long ttlNanos;
+    private final boolean expiring;
+    private final LongSupplier nanoClock;
+    private final Map<K, Entry<V>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong reportedHits = new AtomicLong();
+    private final AtomicLong reportedMisses = new AtomicLong();
+    private final AtomicLong reportedEvictions = new AtomicLong();
+
+    private record Entry<V>(V value, long expiresNanos) {
+    }
+
+    /**
+     * @param maxEntries number of entries retained; the least recently used entry is evicted beyond this
+     * @param ttlNanos time after which an entry expires; {@link Long#MAX_VALUE} for entries that never expire
+     */
+    ExpiringLRUCache(int maxEntries, long ttlNanos) {
+        this(maxEntries, ttlNanos, System::nanoTime);
+    }
+
+    ExpiringLRUCache(int maxEntries, long ttlNanos, LongSupplier nanoClock) {
+        this.ttlNanos = ttlNanos;
+        this.expiring = ttlNanos != Long.MAX_VALUE;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the cached value, or null if there is no entry or it has expired
+     */
+    V get(K key) {
+        V value;
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && expiring && nanoClock.getAsLong() - entry.expiresNanos() >= 0) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+            value = entry == null ? null : entry.value();
+        }
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Adds or replaces an entry, expiring it one TTL from now.
+     *
+     * @param key the key
+     * @param value the value; must not be null
+     */
+    void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiring ? nanoClock.getAsLong() + ttlNanos : 0));
+        }
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key the key
+     */
+    void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return number of entries, including expired entries not yet removed
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Publishes the hits, misses and evictions accumulated since the previous call as session counters named
+     * {@code <name> Hits}, {@code <name> Misses} and {@code <name> Evictions}.
+     *
+     * @param processSession session used to adjust the counters
+     * @param name counter name prefix
+     */
+    void adjustCounters(ProcessSession processSession, String name) {
+        long currentHits = hits.get();
+        long currentMisses = misses.get();
+        long currentEvictions = evictions.get();
+        processSession.adjustCounter(name + " Hits", currentHits - reportedHits.getAndSet(currentHits), false);
+        processSession.adjustCounter(name + " Misses", currentMisses - reportedMisses.getAndSet(currentMisses), false);
+        processSession.adjustCounter(name + " Evictions", currentEvictions - reportedEvictions.getAndSet(currentEvictions), false);
+    }
+}
@@ -0,0 +1,134 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processor exposing the header of NanoTDF FlowFile content as FlowFile attributes, so NanoTDFs can be routed by KAS
+ * or policy without being decrypted.
+ * <p>
+ * Only the leading header bytes are read, up to and including the policy; no KAS or platform call is made and the
+ * content is left unchanged. For a chunked NanoTDF the header of the first chunk is read, as all chunks share it.
+ */
+@CapabilityDescription("Writes the KAS URL, curve, cipher and policy of a NanoTDF header to FlowFile attributes " +
+        "without decrypting the NanoTDF")
+@Tags({"NanoTDF", "OpenTDF", "Inspect", "Data Centric Security"})
+@WritesAttributes(value = {
+        @WritesAttribute(attribute = "tdf.kas.urls", description = "The URL of the KAS holding the key"),
+        @WritesAttribute(attribute = "nanotdf.kas.kid", description = "The id of the KAS key, when recorded"),
+        @WritesAttribute(attribute = "nanotdf.curve", description = "The curve of the ephemeral key, e.g. secp256r1"),
+        @WritesAttribute(attribute = "nanotdf.policy.binding", description = "The policy binding, ecdsa or gmac"),
+        @WritesAttribute(attribute = "nanotdf.cipher", description = "The payload cipher, e.g. AES-256-GCM-96bit"),
+        @WritesAttribute(attribute = "nanotdf.policy.mode", description = "How the policy is carried: REMOTE, " +
+                "EMBEDDED_PLAINTEXT, EMBEDDED_ENCRYPTED or EMBEDDED_ENCRYPTED_POLICY_KEY_ACCESS"),
+        @WritesAttribute(attribute = "nanotdf.policy.url", description = "The URL of a remote policy"),
+        @WritesAttribute(attribute = "tdf.data.attributes", description = "A comma separated list of the data " +
+                "attributes of an embedded plaintext policy"),
+        @WritesAttribute(attribute = "nanotdf.chunked", description = "Whether the content is a chunked NanoTDF")
+})
+public class InspectNanoTDF extends AbstractProcessor {
+
+    static final String KAS_KID_ATTRIBUTE = "nanotdf.kas.kid";
+    static final String CURVE_ATTRIBUTE = "nanotdf.curve";
+    static final String POLICY_BINDING_ATTRIBUTE = "nanotdf.policy.binding";
+    static final String CIPHER_ATTRIBUTE = "nanotdf.cipher";
+    static final String POLICY_MODE_ATTRIBUTE = "nanotdf.policy.mode";
+    static final String POLICY_URL_ATTRIBUTE = "nanotdf.policy.url";
+    static final String CHUNKED_ATTRIBUTE = "nanotdf.chunked";
+
+    /**
+     * Default constructor for InspectNanoTDF.
+     */
+    public InspectNanoTDF() {
+        super();
+    }
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return List.of(AbstractTDFProcessor.FLOWFILE_PULL_SIZE);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return new HashSet<>(Arrays.asList(AbstractTDFProcessor.REL_SUCCESS, AbstractTDFProcessor.REL_FAILURE));
+    }
+
+    /**
+     * Reads the header of each pulled FlowFile and adds its description as attributes. FlowFiles whose content is
+     * not a NanoTDF are routed to failure.
+     *
+     * @param processContext the NiFi ProcessContext providing the pull size
+     * @param processSession the NiFi ProcessSession used to read and transfer the FlowFiles
+     * @throws ProcessException if the session fails
+     */
+    @Override
+    public void onTrigger(ProcessContext processContext, ProcessSession processSession) throws ProcessException {
+        List<FlowFile> flowFiles = processSession.get(processContext.getProperty(AbstractTDFProcessor.FLOWFILE_PULL_SIZE)
+                .evaluateAttributeExpressions().asInteger());
+        for (FlowFile flowFile : flowFiles) {
+            Map<String, String> attributes;
+            try (InputStream inputStream = processSession.read(flowFile)) {
+                attributes = describe(inputStream);
+            } catch (IOException e) {
+                getLogger().error(flowFile.getId() + ": error reading NanoTDF header", e);
+                processSession.transfer(flowFile, AbstractTDFProcessor.REL_FAILURE);
+                continue;
+            }
+            processSession.transfer(processSession.putAllAttributes(flowFile, attributes), AbstractTDFProcessor.REL_SUCCESS);
+        }
+    }
+
+    /**
+     * Reads the header of a NanoTDF or chunked NanoTDF and describes it as FlowFile attributes.
+     *
+     * @param inputStream the content, at its start; only the header bytes are read
+     * @return the attributes
+     * @throws IOException if the content is not a NanoTDF or its plaintext policy cannot be decoded
+     */
+    static Map<String, String> describe(InputStream inputStream) throws IOException {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, ChunkedNanoTDF.MAGIC.length);
+        boolean chunked = ChunkedNanoTDF.readMagic(pushbackInputStream);
+        if (chunked && new DataInputStream(pushbackInputStream).readInt() == 0) {
+            throw new IOException("chunked NanoTDF has no chunks");
+        }
+        NanoTDFHeader header = NanoTDFHeader.read(pushbackInputStream);
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(InspectZTDF.KAS_URLS_ATTRIBUTE, header.getKasUrl());
+        if (header.getKasIdentifier() != null) {
+            attributes.put(KAS_KID_ATTRIBUTE, header.getKasIdentifier());
+        }
+        attributes.put(CURVE_ATTRIBUTE, header.getCurve());
+        attributes.put(POLICY_BINDING_ATTRIBUTE, header.isEcdsaBinding() ? "ecdsa" : "gmac");
+        attributes.put(CIPHER_ATTRIBUTE, header.getCipher());
+        attributes.put(POLICY_MODE_ATTRIBUTE, header.getPolicyMode().name());
+        if (header.getPolicyUrl() != null) {
+            attributes.put(POLICY_URL_ATTRIBUTE, header.getPolicyUrl());
+        }
+        if (header.getPlaintextPolicy() != null) {
+            attributes.put(InspectZTDF.DATA_ATTRIBUTES_ATTRIBUTE,
+                    String.join(",", ZTDFManifest.dataAttributes(header.getPlaintextPolicy())));
+        }
+        attributes.put(CHUNKED_ATTRIBUTE, String.valueOf(chunked));
+        return attributes;
+    }
+}
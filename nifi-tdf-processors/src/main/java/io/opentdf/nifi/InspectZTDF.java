@@ -0,0 +1,130 @@
+package io.opentdf.nifi;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processor exposing the manifest of ZTDF FlowFile content as FlowFile attributes, so ZTDFs can be routed by policy or
+ * KAS without being decrypted.
+ * <p>
+ * Only the ZIP central directory and the manifest entry are read, by seeking within the content; the payload is never
+ * read, and no KAS or platform call is made. The content is left unchanged.
+ */
+@CapabilityDescription("Writes the data attributes, KAS URLs and payload description of a ZTDF manifest to FlowFile " +
+        "attributes without decrypting the ZTDF")
+@Tags({"ZTDF", "OpenTDF", "Zero Trust Data Format", "Inspect", "Data Centric Security"})
+@WritesAttributes(value = {
+        @WritesAttribute(attribute = "tdf.data.attributes", description = "A comma separated list of the data attributes of the policy"),
+        @WritesAttribute(attribute = "tdf.kas.urls", description = "A comma separated list of the distinct KAS URLs of the key access objects"),
+        @WritesAttribute(attribute = "tdf.segment.count", description = "The number of payload segments"),
+        @WritesAttribute(attribute = "tdf.payload.size", description = "The plaintext size of the payload"),
+        @WritesAttribute(attribute = "tdf.assertion.ids", description = "A comma separated list of the assertion ids"),
+        @WritesAttribute(attribute = "tdf.payload.mime.type", description = "The MIME type of the plaintext, when recorded"),
+        @WritesAttribute(attribute = "tdf.schema.version", description = "The manifest schema version, when recorded")
+})
+public class InspectZTDF extends AbstractProcessor {
+
+    static final String DATA_ATTRIBUTES_ATTRIBUTE = "tdf.data.attributes";
+    static final String KAS_URLS_ATTRIBUTE = "tdf.kas.urls";
+    static final String SEGMENT_COUNT_ATTRIBUTE = "tdf.segment.count";
+    static final String PAYLOAD_SIZE_ATTRIBUTE = "tdf.payload.size";
+    static final String ASSERTION_IDS_ATTRIBUTE = "tdf.assertion.ids";
+    static final String PAYLOAD_MIME_TYPE_ATTRIBUTE = "tdf.payload.mime.type";
+    static final String SCHEMA_VERSION_ATTRIBUTE = "tdf.schema.version";
+
+    /**
+     * Default constructor for InspectZTDF.
+     */
+    public InspectZTDF() {
+        super();
+    }
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return List.of(AbstractTDFProcessor.FLOWFILE_PULL_SIZE);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return new HashSet<>(Arrays.asList(AbstractTDFProcessor.REL_SUCCESS, AbstractTDFProcessor.REL_FAILURE));
+    }
+
+    /**
+     * Reads the manifest of each pulled FlowFile and adds its description as attributes. FlowFiles whose content is
+     * not a ZTDF are routed to failure.
+     *
+     * @param processContext the NiFi ProcessContext providing the pull size
+     * @param processSession the NiFi ProcessSession used to read and transfer the FlowFiles
+     * @throws ProcessException if the session fails
+     */
+    @Override
+    public void onTrigger(ProcessContext processContext, ProcessSession processSession) throws ProcessException {
+        List<FlowFile> flowFiles = processSession.get(processContext.getProperty(AbstractTDFProcessor.FLOWFILE_PULL_SIZE)
+                .evaluateAttributeExpressions().asInteger());
+        for (FlowFile flowFile : flowFiles) {
+            Map<String, String> attributes;
+            try {
+                attributes = describe(readManifest(new StreamSeekableChannel(flowFile.getSize(), () -> processSession.read(flowFile))));
+            } catch (Exception e) {
+                getLogger().error(flowFile.getId() + ": error reading ZTDF manifest", e);
+                processSession.transfer(flowFile, AbstractTDFProcessor.REL_FAILURE);
+                continue;
+            }
+            processSession.transfer(processSession.putAllAttributes(flowFile, attributes), AbstractTDFProcessor.REL_SUCCESS);
+        }
+    }
+
+    /**
+     * Reads the manifest of a ZTDF from its ZIP central directory and manifest entry.
+     *
+     * @param channel channel over the ZTDF content; closed when the manifest is read
+     * @return the manifest
+     * @throws IOException if the content is not a ZTDF
+     */
+    static ZTDFManifest readManifest(StreamSeekableChannel channel) throws IOException {
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(channel).get()) {
+            return ZTDFPayloadReader.readManifest(zipFile);
+        }
+    }
+
+    /**
+     * Describes a manifest as FlowFile attributes.
+     *
+     * @param manifest the manifest
+     * @return the attributes
+     * @throws IOException if the policy cannot be decoded
+     */
+    static Map<String, String> describe(ZTDFManifest manifest) throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(DATA_ATTRIBUTES_ATTRIBUTE, String.join(",", manifest.getDataAttributes()));
+        attributes.put(KAS_URLS_ATTRIBUTE, String.join(",", manifest.getKasUrls()));
+        attributes.put(SEGMENT_COUNT_ATTRIBUTE, String.valueOf(manifest.getSegments().size()));
+        attributes.put(PAYLOAD_SIZE_ATTRIBUTE, String.valueOf(manifest.getPayloadSize()));
+        attributes.put(ASSERTION_IDS_ATTRIBUTE, String.join(",", manifest.getAssertionIds()));
+        if (manifest.getMimeType() != null) {
+            attributes.put(PAYLOAD_MIME_TYPE_ATTRIBUTE, manifest.getMimeType());
+        }
+        if (manifest.getSchemaVersion() != null) {
+            attributes.put(SCHEMA_VERSION_ATTRIBUTE, manifest.getSchemaVersion());
+        }
+        return attributes;
+    }
+}
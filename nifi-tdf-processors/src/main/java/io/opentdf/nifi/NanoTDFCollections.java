@@ -0,0 +1,87 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Tracks the open NanoTDF collections of a processor, one per policy.
+ * <p>
+ * A collection is a single collection-enabled {@link Config.NanoTDFConfig}. Every NanoTDF created from the same config
+ * shares its header and derived key and only advances the per-item IV, so the KAS public key lookup and ephemeral key
+ * agreement happen once per collection rather than once per FlowFile. A collection is closed, and a new one started on
+ * the next request, after a maximum number of items or a maximum age, whichever comes first.
+ */
+class NanoTDFCollections {
+
+    /**
+     * Upper bound on items in one collection, the largest value of the 3 byte NanoTDF collection IV counter.
+     */
+    static final int MAX_COLLECTION_ITEMS = (1 << 24) - 1;
+
+    private final int maxItems;
+    private final long maxAgeNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, Collection> collections;
+
+    private static final class Collection {
+        private final Config.NanoTDFConfig config;
+        private final long startNanos;
+        private int items;
+
+        private Collection(Config.NanoTDFConfig config, long startNanos) {
+            this.config = config;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * @param maxItems number of NanoTDFs sharing one header before a new collection is started
+     * @param maxAgeNanos age after which a new collection is started
+     * @param maxPolicies number of policies with an open collection; the least recently used is dropped beyond this
+     */
+    NanoTDFCollections(int maxItems, long maxAgeNanos, int maxPolicies) {
+        this(maxItems, maxAgeNanos, maxPolicies, System::nanoTime);
+    }
+
+    NanoTDFCollections(int maxItems, long maxAgeNanos, int maxPolicies, LongSupplier nanoClock) {
+        this.maxItems = Math.min(Math.max(1, maxItems), MAX_COLLECTION_ITEMS);
+        this.maxAgeNanos = maxAgeNanos;
+        this.nanoClock = nanoClock;
+        this.collections = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Collection> eldest) {
+                return size() > maxPolicies;
+            }
+        };
+    }
+
+    /**
+     * Returns the config of the open collection for a policy, starting a new collection when there is none or the
+     * current one is full or expired. Each call counts as one item of the returned collection.
+     *
+     * @param policyKey key identifying the policy and KAS of the NanoTDF
+     * @param newConfig creates a collection-enabled config for a new collection
+     * @return the config to create the next NanoTDF of the policy with
+     */
+    synchronized Config.NanoTDFConfig next(String policyKey, Supplier<Config.NanoTDFConfig> newConfig) {
+        long now = nanoClock.getAsLong();
+        Collection collection = collections.get(policyKey);
+        if (collection == null || collection.items >= maxItems || now - collection.startNanos >= maxAgeNanos) {
+            collection = new Collection(newConfig.get(), now);
+            collections.put(policyKey, collection);
+        }
+        collection.items++;
+        return collection.config;
+    }
+
+    /**
+     * @return number of policies with an open collection
+     */
+    synchronized int size() {
+        return collections.size();
+    }
+}
@@ -0,0 +1,199 @@
+package io.opentdf.nifi;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * The leading part of a NanoTDF header, up to and including the policy: the KAS resource locator, the curve and
+ * binding mode, the cipher and the policy.
+ * <p>
+ * The header is parsed from the stream as it is read, so only the header bytes are consumed; the policy binding,
+ * ephemeral key and payload are never read. Encrypted policies are left undecoded, as decoding them needs the KAS.
+ */
+final class NanoTDFHeader {
+
+    /**
+     * Magic number and version with which every NanoTDF starts.
+     */
+    static final byte[] MAGIC = {'L', '1', 'L'};
+
+    /**
+     * Curve names by the low three bits of the ECC and binding mode.
+     */
+    private static final String[] CURVES = {"secp256r1", "secp384r1", "secp521r1", "secp256k1"};
+
+    /**
+     * Authentication tag sizes in bits of AES-256-GCM by the low four bits of the symmetric and payload config.
+     */
+    private static final int[] TAG_BITS = {64, 96, 104, 112, 120, 128};
+
+    /**
+     * Identifier sizes of a resource locator by the high four bits of its protocol byte.
+     */
+    private static final int[] IDENTIFIER_SIZES = {0, 2, 8, 32};
+
+    /**
+     * How the policy is carried in the header.
+     */
+    enum PolicyMode {
+        REMOTE, EMBEDDED_PLAINTEXT, EMBEDDED_ENCRYPTED, EMBEDDED_ENCRYPTED_POLICY_KEY_ACCESS
+    }
+
+    private final String kasUrl;
+    private final String kasIdentifier;
+    private final String curve;
+    private final boolean ecdsaBinding;
+    private final String cipher;
+    private final PolicyMode policyMode;
+    private final String policyUrl;
+    private final String plaintextPolicy;
+
+    private NanoTDFHeader(String kasUrl, String kasIdentifier, String curve, boolean ecdsaBinding, String cipher,
+                          PolicyMode policyMode, String policyUrl, String plaintextPolicy) {
+        this.kasUrl = kasUrl;
+        this.kasIdentifier = kasIdentifier;
+        this.curve = curve;
+        this.ecdsaBinding = ecdsaBinding;
+        this.cipher = cipher;
+        this.policyMode = policyMode;
+        this.policyUrl = policyUrl;
+        this.plaintextPolicy = plaintextPolicy;
+    }
+
+    /**
+     * Reads the header of a NanoTDF up to and including the policy.
+     *
+     * @param inputStream the NanoTDF, at its start; left positioned after the policy
+     * @return the header
+     * @throws IOException if the stream is not a NanoTDF or ends within the header
+     */
+    static NanoTDFHeader read(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        dataInputStream.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a NanoTDF: unexpected magic " + HexFormat.of().formatHex(magic));
+        }
+        String[] kas = readResourceLocator(dataInputStream);
+        int eccMode = dataInputStream.readUnsignedByte();
+        int curveIndex = eccMode & 0x07;
+        if (curveIndex >= CURVES.length) {
+            throw new IOException("unsupported NanoTDF curve " + curveIndex);
+        }
+        int cipherIndex = dataInputStream.readUnsignedByte() & 0x0F;
+        if (cipherIndex >= TAG_BITS.length) {
+            throw new IOException("unsupported NanoTDF cipher " + cipherIndex);
+        }
+        int policyModeIndex = dataInputStream.readUnsignedByte();
+        if (policyModeIndex >= PolicyMode.values().length) {
+            throw new IOException("unsupported NanoTDF policy mode " + policyModeIndex);
+        }
+        PolicyMode policyMode = PolicyMode.values()[policyModeIndex];
+        String policyUrl = null;
+        String plaintextPolicy = null;
+        if (policyMode == PolicyMode.REMOTE) {
+            policyUrl = readResourceLocator(dataInputStream)[0];
+        } else {
+            byte[] policy = new byte[dataInputStream.readUnsignedShort()];
+            dataInputStream.readFully(policy);
+            if (policyMode == PolicyMode.EMBEDDED_PLAINTEXT) {
+                plaintextPolicy = new String(policy, StandardCharsets.UTF_8);
+            }
+        }
+        return new NanoTDFHeader(kas[0], kas[1], CURVES[curveIndex], (eccMode & 0x80) != 0,
+                "AES-256-GCM-" + TAG_BITS[cipherIndex] + "bit", policyMode, policyUrl, plaintextPolicy);
+    }
+
+    /**
+     * Reads a resource locator: a protocol byte whose high four bits give the identifier size, a length prefixed
+     * body and the identifier.
+     *
+     * @return the URL and the identifier, or null if the locator has none
+     */
+    private static String[] readResourceLocator(DataInputStream dataInputStream) throws IOException {
+        int protocol = dataInputStream.readUnsignedByte();
+        String scheme = switch (protocol & 0x0F) {
+            case 0x0 -> "http://";
+            case 0x1 -> "https://";
+            case 0xF -> "";
+            default -> throw new IOException("unsupported NanoTDF resource locator protocol " + (protocol & 0x0F));
+        };
+        int identifierType = (protocol >> 4) & 0x0F;
+        if (identifierType >= IDENTIFIER_SIZES.length) {
+            throw new IOException("unsupported NanoTDF resource locator identifier type " + identifierType);
+        }
+        byte[] body = new byte[dataInputStream.readUnsignedByte()];
+        dataInputStream.readFully(body);
+        byte[] identifier = new byte[IDENTIFIER_SIZES[identifierType]];
+        dataInputStream.readFully(identifier);
+        String id = null;
+        if (identifier.length > 0) {
+            int end = identifier.length;
+            while (end > 0 && identifier[end - 1] == 0) {
+                end--;
+            }
+            id = new String(identifier, 0, end, StandardCharsets.UTF_8);
+        }
+        return new String[]{scheme + new String(body, StandardCharsets.UTF_8), id};
+    }
+
+    /**
+     * @return the URL of the KAS holding the key
+     */
+    String getKasUrl() {
+        return kasUrl;
+    }
+
+    /**
+     * @return the id of the KAS key, or null if the locator has none
+     */
+    String getKasIdentifier() {
+        return kasIdentifier;
+    }
+
+    /**
+     * @return the name of the curve of the ephemeral key, e.g. secp256r1
+     */
+    String getCurve() {
+        return curve;
+    }
+
+    /**
+     * @return whether the policy binding is an ECDSA signature rather than a GMAC
+     */
+    boolean isEcdsaBinding() {
+        return ecdsaBinding;
+    }
+
+    /**
+     * @return the payload cipher, e.g. AES-256-GCM-96bit
+     */
+    String getCipher() {
+        return cipher;
+    }
+
+    /**
+     * @return how the policy is carried
+     */
+    PolicyMode getPolicyMode() {
+        return policyMode;
+    }
+
+    /**
+     * @return the URL of a remote policy, or null if the policy is embedded
+     */
+    String getPolicyUrl() {
+        return policyUrl;
+    }
+
+    /**
+     * @return the policy object JSON of an embedded plaintext policy, or null for other policy modes
+     */
+    String getPlaintextPolicy() {
+        return plaintextPolicy;
+    }
+}
@@ -0,0 +1,254 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Throughput, latency, cache and failure metrics of a TDF processor.
+ * <p>
+ * Totals are published as session counters by {@link #adjustCounters(ProcessSession)}, each call adding what was
+ * recorded since the previous one. Latencies and batch sizes additionally keep a window of recent samples from which
+ * {@link #snapshot()} reports percentiles, so the processor can tell whether the platform, the KAS or local
+ * cryptography dominates.
+ */
+class ProcessorMetrics {
+
+    static final String BYTES_IN_COUNTER = "Bytes In";
+    static final String BYTES_OUT_COUNTER = "Bytes Out";
+    static final String TRANSFORMS_COUNTER = "FlowFiles Transformed";
+    static final String TRANSFORM_TIME_COUNTER = "Transform Time (ms)";
+    static final String KAS_REWRAP_COUNTER = "KAS Rewrap Calls";
+    static final String KAS_REWRAP_TIME_COUNTER = "KAS Rewrap Time (ms)";
+    static final String KAS_PUBLIC_KEY_COUNTER = "KAS Public Key Calls";
+    static final String KAS_PUBLIC_KEY_TIME_COUNTER = "KAS Public Key Time (ms)";
+    static final String BATCHES_COUNTER = "Batches";
+    static final String FAILURES_COUNTER_PREFIX = "FlowFiles Failed - ";
+
+    /**
+     * Number of recent samples percentiles are computed from.
+     */
+    static final int SAMPLE_WINDOW = 1024;
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Samples transformNanos = new Samples();
+    private final Samples kasRewrapNanos = new Samples();
+    private final Samples kasPublicKeyNanos = new Samples();
+    private final Samples batchSizes = new Samples();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier[]> caches = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> reported = new ConcurrentHashMap<>();
+
+    /**
+     * A running count and total with a ring buffer of the most recent samples.
+     */
+    static class Samples {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final long[] window = new long[SAMPLE_WINDOW];
+        private int next;
+        private int size;
+
+        void record(long value) {
+            count.increment();
+            total.add(value);
+            synchronized (window) {
+                window[next] = value;
+                next = (next + 1) % window.length;
+                size = Math.min(size + 1, window.length);
+            }
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotal() {
+            return total.sum();
+        }
+
+        /**
+         * @param percentile percentile between 0 and 100
+         * @return the nearest-rank percentile of the recent samples, or 0 when nothing was recorded
+         */
+        long percentile(double percentile) {
+            long[] sorted;
+            synchronized (window) {
+                sorted = Arrays.copyOf(window, size);
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+    }
+
+    /**
+     * Records a successful content transform.
+     *
+     * @param inputBytes size of the content read
+     * @param outputBytes size of the content written
+     * @param nanos time taken by the encryption or decryption
+     */
+    void recordTransform(long inputBytes, long outputBytes, long nanos) {
+        bytesIn.add(inputBytes);
+        bytesOut.add(outputBytes);
+        transformNanos.record(nanos);
+    }
+
+    /**
+     * Records a KAS rewrap, the unwrap of a key by the KAS.
+     *
+     * @param nanos time taken by the call
+     */
+    void recordKASRewrap(long nanos) {
+        kasRewrapNanos.record(nanos);
+    }
+
+    /**
+     * Records a KAS public key request.
+     *
+     * @param nanos time taken by the call
+     */
+    void recordKASPublicKey(long nanos) {
+        kasPublicKeyNanos.record(nanos);
+    }
+
+    /**
+     * @param flowFiles number of FlowFiles in a pulled batch
+     */
+    void recordBatch(int flowFiles) {
+        batchSizes.record(flowFiles);
+    }
+
+    /**
+     * Counts a FlowFile routed to failure by the innermost cause of the error.
+     *
+     * @param e the error; null when the FlowFile was rejected without one
+     */
+    void recordFailure(Throwable e) {
+        recordFailure(failureCause(e));
+    }
+
+    /**
+     * Counts a FlowFile routed to failure.
+     *
+     * @param cause name of the cause
+     */
+    void recordFailure(String cause) {
+        failures.computeIfAbsent(cause, k -> new LongAdder()).increment();
+    }
+
+    static String failureCause(Throwable e) {
+        if (e == null) {
+            return "Unknown";
+        }
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Includes the hit rate of a cache in the snapshot, replacing a cache registered under the same name.
+     *
+     * @param name cache name
+     * @param hits hit count supplier
+     * @param misses miss count supplier
+     */
+    void registerCache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new LongSupplier[]{hits, misses});
+    }
+
+    Samples getTransformNanos() {
+        return transformNanos;
+    }
+
+    Samples getKASRewrapNanos() {
+        return kasRewrapNanos;
+    }
+
+    Samples getKASPublicKeyNanos() {
+        return kasPublicKeyNanos;
+    }
+
+    Samples getBatchSizes() {
+        return batchSizes;
+    }
+
+    long getFailures(String cause) {
+        LongAdder count = failures.get(cause);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Publishes the totals accumulated since the previous call as session counters.
+     *
+     * @param processSession session used to adjust the counters
+     */
+    void adjustCounters(ProcessSession processSession) {
+        adjust(processSession, BYTES_IN_COUNTER, bytesIn.sum());
+        adjust(processSession, BYTES_OUT_COUNTER, bytesOut.sum());
+        adjust(processSession, TRANSFORMS_COUNTER, transformNanos.getCount());
+        adjust(processSession, TRANSFORM_TIME_COUNTER, TimeUnit.NANOSECONDS.toMillis(transformNanos.getTotal()));
+        adjust(processSession, KAS_REWRAP_COUNTER, kasRewrapNanos.getCount());
+        adjust(processSession, KAS_REWRAP_TIME_COUNTER, TimeUnit.NANOSECONDS.toMillis(kasRewrapNanos.getTotal()));
+        adjust(processSession, KAS_PUBLIC_KEY_COUNTER, kasPublicKeyNanos.getCount());
+        adjust(processSession, KAS_PUBLIC_KEY_TIME_COUNTER, TimeUnit.NANOSECONDS.toMillis(kasPublicKeyNanos.getTotal()));
+        adjust(processSession, BATCHES_COUNTER, batchSizes.getCount());
+        failures.forEach((cause, count) -> adjust(processSession, FAILURES_COUNTER_PREFIX + cause, count.sum()));
+    }
+
+    private void adjust(ProcessSession processSession, String name, long current) {
+        long delta = current - reported.computeIfAbsent(name, k -> new AtomicLong()).getAndSet(current);
+        if (delta != 0) {
+            processSession.adjustCounter(name, delta, false);
+        }
+    }
+
+    /**
+     * Returns the current metrics by name: totals, latency percentiles in milliseconds of the recent window, batch
+     * size percentiles, cache hit rates and failures by cause.
+     *
+     * @return metric values sorted by name
+     */
+    Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        values.put(BYTES_IN_COUNTER, bytesIn.sum());
+        values.put(BYTES_OUT_COUNTER, bytesOut.sum());
+        values.put(TRANSFORMS_COUNTER, transformNanos.getCount());
+        putLatency(values, "Transform Time", transformNanos);
+        values.put(KAS_REWRAP_COUNTER, kasRewrapNanos.getCount());
+        putLatency(values, "KAS Rewrap Time", kasRewrapNanos);
+        values.put(KAS_PUBLIC_KEY_COUNTER, kasPublicKeyNanos.getCount());
+        putLatency(values, "KAS Public Key Time", kasPublicKeyNanos);
+        values.put(BATCHES_COUNTER, batchSizes.getCount());
+        values.put("Batch Size p50", batchSizes.percentile(50));
+        values.put("Batch Size p99", batchSizes.percentile(99));
+        caches.forEach((name, counts) -> {
+            long hits = counts[0].getAsLong();
+            long lookups = hits + counts[1].getAsLong();
+            values.put(name + " Hit Rate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        });
+        failures.forEach((cause, count) -> values.put(FAILURES_COUNTER_PREFIX + cause, count.sum()));
+        return values;
+    }
+
+    private static void putLatency(Map<String, Number> values, String name, Samples samples) {
+        values.put(name + " p50 (ms)", samples.percentile(50) / 1e6);
+        values.put(name + " p90 (ms)", samples.percentile(90) / 1e6);
+        values.put(name + " p99 (ms)", samples.percentile(99) / 1e6);
+        values.put(name + " Max (ms)", samples.percentile(100) / 1e6);
+    }
+}
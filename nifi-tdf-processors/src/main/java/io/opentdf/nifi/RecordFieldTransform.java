@@ -0,0 +1,178 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.schema.access.SchemaNotFoundException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams the records of FlowFile content from a {@link RecordReader} to a {@link RecordSetWriter}, replacing the
+ * values of selected top-level fields, so record-oriented processors protect individual values without splitting
+ * records into FlowFiles.
+ * <p>
+ * Records are read and written one at a time, so memory does not grow with the number of records. Null values and
+ * fields absent from the schema are left as they are.
+ */
+class RecordFieldTransform {
+
+    /**
+     * Property descriptor for the Record Reader used to read incoming records.
+     */
+    static final PropertyDescriptor RECORD_READER = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Record Reader")
+            .description("Specifies the Controller Service to use for reading incoming records")
+            .identifiesControllerService(RecordReaderFactory.class)
+            .required(true)
+            .build();
+
+    /**
+     * Property descriptor for the Record Writer used to write outgoing records.
+     */
+    static final PropertyDescriptor RECORD_WRITER = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Record Writer")
+            .description("Specifies the Controller Service to use for writing outgoing records")
+            .identifiesControllerService(RecordSetWriterFactory.class)
+            .required(true)
+            .build();
+
+    /**
+     * Property descriptor for the record fields whose values are transformed.
+     */
+    static final PropertyDescriptor RECORD_FIELDS = new org.apache.nifi.components.PropertyDescriptor.Builder()
+            .name("Record Fields")
+            .description("A comma separated list of the top-level record fields whose values are encrypted or decrypted")
+            .required(true)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .build();
+
+    /**
+     * Attribute holding the number of records written.
+     */
+    static final String RECORD_COUNT_ATTRIBUTE = "record.count";
+
+    /**
+     * Transform of a single non-null field value.
+     */
+    @FunctionalInterface
+    interface FieldTransform {
+        Object apply(Object value) throws IOException;
+    }
+
+    private final RecordReaderFactory readerFactory;
+    private final RecordSetWriterFactory writerFactory;
+    private final ComponentLog logger;
+
+    /**
+     * @param readerFactory factory of the readers of incoming content
+     * @param writerFactory factory of the writers of outgoing content
+     * @param logger logger passed to the readers and writers
+     */
+    RecordFieldTransform(RecordReaderFactory readerFactory, RecordSetWriterFactory writerFactory, ComponentLog logger) {
+        this.readerFactory = readerFactory;
+        this.writerFactory = writerFactory;
+        this.logger = logger;
+    }
+
+    /**
+     * Splits a comma separated list of field names into its non-empty names.
+     *
+     * @param fieldNames the raw comma separated value
+     * @return the field names in order
+     */
+    static Set<String> parseFields(String fieldNames) {
+        Set<String> fields = new LinkedHashSet<>();
+        Arrays.stream(fieldNames.split(",")).map(String::trim).filter(x -> !x.isEmpty()).forEach(fields::add);
+        return fields;
+    }
+
+    /**
+     * Returns a schema in which the given fields are nullable strings, as the fields hold after encryption.
+     *
+     * @param schema schema of the records read
+     * @param fields names of the transformed fields
+     * @return the schema of the records written
+     */
+    static RecordSchema withStringFields(RecordSchema schema, Set<String> fields) {
+        List<RecordField> recordFields = new ArrayList<>(schema.getFieldCount());
+        for (RecordField field : schema.getFields()) {
+            recordFields.add(fields.contains(field.getFieldName()) ?
+                    new RecordField(field.getFieldName(), RecordFieldType.STRING.getDataType(), null, field.getAliases(), true) :
+                    field);
+        }
+        return new SimpleRecordSchema(recordFields);
+    }
+
+    /**
+     * Reads every record of the content, applies the transform to the non-null values of the given fields and writes
+     * the records.
+     *
+     * @param attributes attributes of the FlowFile, used by the reader and writer to resolve schemas
+     * @param inputStream content read
+     * @param outputStream content written
+     * @param contentSize size of the content read
+     * @param fields names of the fields to transform
+     * @param stringFields whether the transformed fields are written as strings regardless of their read type
+     * @param transform transform of each field value
+     * @return attributes to add to the FlowFile: the record count and the MIME type of the writer
+     * @throws IOException if the records cannot be read, transformed or written
+     */
+    Map<String, String> transform(Map<String, String> attributes, InputStream inputStream, OutputStream outputStream,
+                                  long contentSize, Set<String> fields, boolean stringFields, FieldTransform transform) throws IOException {
+        try (RecordReader reader = readerFactory.createRecordReader(attributes, inputStream, contentSize, logger)) {
+            RecordSchema readSchema = reader.getSchema();
+            RecordSchema writeSchema = writerFactory.getSchema(attributes,
+                    stringFields ? withStringFields(readSchema, fields) : readSchema);
+            WriteResult writeResult;
+            String mimeType;
+            try (RecordSetWriter writer = writerFactory.createWriter(logger, writeSchema, outputStream, attributes)) {
+                writer.beginRecordSet();
+                Record record;
+                while ((record = reader.nextRecord()) != null) {
+                    Map<String, Object> values = new LinkedHashMap<>(record.toMap());
+                    for (String field : fields) {
+                        Object value = values.get(field);
+                        if (value != null) {
+                            values.put(field, transform.apply(value));
+                        }
+                    }
+                    writer.write(new MapRecord(writeSchema, values));
+                }
+                writeResult = writer.finishRecordSet();
+                mimeType = writer.getMimeType();
+            }
+            Map<String, String> writtenAttributes = new HashMap<>(writeResult.getAttributes());
+            writtenAttributes.put(RECORD_COUNT_ATTRIBUTE, String.valueOf(writeResult.getRecordCount()));
+            writtenAttributes.put(CoreAttributes.MIME_TYPE.key(), mimeType);
+            return writtenAttributes;
+        } catch (MalformedRecordException | SchemaNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.logging.ComponentLog;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * {@link KASPublicKeyCache} that refreshes keys in the background before they expire.
+ * <p>
+ * Entries are keyed by KAS URL, algorithm and requested key id. A background task refreshes entries that are within
+ * the last fifth of their TTL, so callers are served from the cache in steady state. A miss is fetched with the
+ * caller's KAS, but refreshes use the KAS owned by the cache's owner, since a caller's KAS may since have been closed.
+ * Fetches are built from the URL and key id copied into the cache key, never from a caller's mutable KAS info. When a
+ * refresh returns a key id different from the cached one the KAS has rotated its key, and the other entries of that KAS
+ * not pinned to a key id are refreshed right away. Entries not requested for two TTLs are dropped rather than refreshed.
+ * <p>
+ * Each entry is fetched by one thread at a time: concurrent misses wait for the first caller's fetch, and callers of an
+ * expired entry are served the previous key for up to one more TTL while a single background refresh runs.
+ */
+class RefreshingKASPublicKeyCache implements KASPublicKeyCache, AutoCloseable {
+
+    static final String RSA_ALGORITHM = "rsa:2048";
+
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final ComponentLog logger;
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<SDK.KAS> refreshKas;
+    private final ConcurrentMap<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+
+    record CacheKey(String url, String algorithm, String kid) {
+    }
+
+    private static final class Entry {
+        private final Function<SDK.KAS, io.opentdf.platform.sdk.Config.KASInfo> fetch;
+        private volatile io.opentdf.platform.sdk.Config.KASInfo kasInfo;
+        private volatile long fetchedNanos;
+        private volatile long lastAccessNanos;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Function<SDK.KAS, io.opentdf.platform.sdk.Config.KASInfo> fetch) {
+            this.fetch = fetch;
+        }
+    }
+
+    /**
+     * Creates a cache refreshing its entries on a daemon thread.
+     *
+     * @param ttlNanos time a fetched key is served from the cache
+     * @param logger logger for background refresh failures
+     * @param refreshKas supplies the KAS background refreshes fetch keys with
+     */
+    RefreshingKASPublicKeyCache(long ttlNanos, ComponentLog logger, Supplier<SDK.KAS> refreshKas) {
+        this(ttlNanos, logger, refreshKas, System::nanoTime, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "KAS public key refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    RefreshingKASPublicKeyCache(long ttlNanos, ComponentLog logger, Supplier<SDK.KAS> refreshKas, LongSupplier nanoClock,
+                                ScheduledExecutorService scheduler) {
+        this.ttlNanos = ttlNanos;
+        this.logger = logger;
+        this.refreshKas = refreshKas;
+        this.nanoClock = nanoClock;
+        this.scheduler = scheduler;
+        if (scheduler != null) {
+            long checkNanos = Math.max(TimeUnit.SECONDS.toNanos(1), ttlNanos / 10);
+            scheduler.scheduleWithFixedDelay(this::refreshExpiring, checkNanos, checkNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public io.opentdf.platform.sdk.Config.KASInfo getPublicKey(SDK.KAS kas, io.opentdf.platform.sdk.Config.KASInfo kasInfo) {
+        CacheKey key = new CacheKey(kasInfo.URL, RSA_ALGORITHM, Objects.toString(kasInfo.KID, ""));
+        return get(key, kas, fetchingKas -> fetchingKas.getPublicKey(newKasInfo(key)));
+    }
+
+    @Override
+    public io.opentdf.platform.sdk.Config.KASInfo getECPublicKey(SDK.KAS kas, io.opentdf.platform.sdk.Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+        CacheKey key = new CacheKey(kasInfo.URL, "ec:" + curve, Objects.toString(kasInfo.KID, ""));
+        return get(key, kas, fetchingKas -> fetchingKas.getECPublicKey(newKasInfo(key), curve));
+    }
+
+    /**
+     * @return a new KAS info requesting the key of a cache key
+     */
+    private static io.opentdf.platform.sdk.Config.KASInfo newKasInfo(CacheKey key) {
+        io.opentdf.platform.sdk.Config.KASInfo kasInfo = new io.opentdf.platform.sdk.Config.KASInfo();
+        kasInfo.URL = key.url();
+        kasInfo.KID = key.kid().isEmpty() ? null : key.kid();
+        return kasInfo;
+    }
+
+    private io.opentdf.platform.sdk.Config.KASInfo get(CacheKey key, SDK.KAS kas,
+                                                        Function<SDK.KAS, io.opentdf.platform.sdk.Config.KASInfo> fetch) {
+        long now = nanoClock.getAsLong();
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(fetch));
+        entry.lastAccessNanos = now;
+        io.opentdf.platform.sdk.Config.KASInfo cached = entry.kasInfo;
+        if (cached != null) {
+            long age = now - entry.fetchedNanos;
+            if (age < ttlNanos || (age < 2 * ttlNanos && refreshInBackground(key, entry))) {
+                return cached;
+            }
+        }
+        synchronized (entry) {
+            cached = entry.kasInfo;
+            if (cached != null && nanoClock.getAsLong() - entry.fetchedNanos < ttlNanos) {
+                return cached;
+            }
+            return refresh(key, entry, kas);
+        }
+    }
+
+    /**
+     * Starts a background refresh of an entry unless one is already running.
+     *
+     * @return whether a background refresh is running, so the caller can be served the previous key
+     */
+    private boolean refreshInBackground(CacheKey key, Entry entry) {
+        if (scheduler == null) {
+            return false;
+        }
+        if (entry.refreshing.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> refreshWithOwnedKas(key, entry, ttlNanos));
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refreshes an entry with the owned KAS if it is older than the given age once its lock is held, logging failures.
+     * The caller must have set the entry's refreshing flag, which is cleared when done.
+     */
+    private void refreshWithOwnedKas(CacheKey key, Entry entry, long maxAgeNanos) {
+        try {
+            synchronized (entry) {
+                if (entry.kasInfo == null || nanoClock.getAsLong() - entry.fetchedNanos >= maxAgeNanos) {
+                    refresh(key, entry, refreshKas.get());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn(String.format("failed to refresh public key of KAS %s", key.url()), e);
+        } finally {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Fetches the key of an entry; called with the entry's lock held.
+     */
+    private io.opentdf.platform.sdk.Config.KASInfo refresh(CacheKey key, Entry entry, SDK.KAS kas) {
+        io.opentdf.platform.sdk.Config.KASInfo previous = entry.kasInfo;
+        io.opentdf.platform.sdk.Config.KASInfo fetched = entry.fetch.apply(kas);
+        entry.kasInfo = fetched;
+        entry.fetchedNanos = nanoClock.getAsLong();
+        if (previous != null && fetched != null && !Objects.equals(previous.KID, fetched.KID)) {
+            logger.info(String.format("KAS %s rotated key %s to %s", key.url(), previous.KID, fetched.KID));
+            entries.forEach((otherKey, other) -> {
+                if (!otherKey.equals(key) && otherKey.url().equals(key.url()) && otherKey.kid().isEmpty()) {
+                    other.fetchedNanos = entry.fetchedNanos - ttlNanos;
+                }
+            });
+            if (scheduler != null) {
+                scheduler.execute(this::refreshExpiring);
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Refreshes every entry within the last fifth of its TTL and drops entries not requested for two TTLs.
+     */
+    void refreshExpiring() {
+        long now = nanoClock.getAsLong();
+        entries.forEach((key, entry) -> {
+            if (now - entry.lastAccessNanos >= 2 * ttlNanos) {
+                entries.remove(key, entry);
+            } else if ((entry.kasInfo == null || now - entry.fetchedNanos >= ttlNanos - ttlNanos / 5)
+                    && entry.refreshing.compareAndSet(false, true)) {
+                refreshWithOwnedKas(key, entry, ttlNanos - ttlNanos / 5);
+            }
+        });
+    }
+
+    /**
+     * @return number of cached keys
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops the background refresh and drops the cached keys.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        entries.clear();
+    }
+}
@@ -0,0 +1,311 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.processor.io.StreamCallback;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a content transform with read-ahead and write-behind, so reading the content, transforming it and writing the
+ * result overlap on three threads instead of taking turns on one.
+ * <p>
+ * A read-ahead task reads the content in segment sized buffers and a write-behind task writes the transformed
+ * content in segment sized buffers, each through a queue of at most {@code segmentsInFlight} buffers. Consumed buffers
+ * go back to the side they came from, so each side allocates at most {@code segmentsInFlight + 2} buffers. Output is
+ * written in the order the transform produces it. Each pipeline holds two executor threads for its duration, and
+ * both tasks have finished when {@link #run} returns, since the streams they use are only valid until then.
+ * <p>
+ * The transform itself runs on one thread: the SDK's ZTDF writer generates the payload key, wraps its splits and
+ * signs the manifest internally, and has no hook to hand segments to other threads.
+ */
+final class SegmentPipeline {
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final Segment END = new Segment(new byte[0], 0);
+
+    private record Segment(byte[] data, int length) {
+    }
+
+    /**
+     * A task run on the executor that can be cancelled and then waited for, including before it starts.
+     */
+    private static final class Stage {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Future<?> future;
+
+        Stage(ExecutorService executor, Callable<Void> task) {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return task.call();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        /**
+         * Cancels the task and waits for it to stop if it already started.
+         */
+        void cancelAndJoin() {
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int segmentSize;
+    private final int segmentsInFlight;
+
+    /**
+     * @param executor executor running the read-ahead and write-behind tasks; needs two free threads per pipeline
+     *                 running at the same time
+     * @param segmentSize size of the buffers read and written
+     * @param segmentsInFlight maximum number of buffers queued on each side of the transform
+     */
+    SegmentPipeline(ExecutorService executor, int segmentSize, int segmentsInFlight) {
+        this.executor = executor;
+        this.segmentSize = segmentSize;
+        this.segmentsInFlight = segmentsInFlight;
+    }
+
+    /**
+     * Applies the transform to the content on the calling thread, reading ahead of it and writing behind it.
+     *
+     * @param inputStream content read
+     * @param outputStream content written
+     * @param transform transform from the read-ahead stream to the write-behind stream
+     * @throws IOException if the content cannot be read, transformed or written
+     */
+    void run(InputStream inputStream, OutputStream outputStream, StreamCallback transform) throws IOException {
+        BlockingQueue<Segment> readQueue = new ArrayBlockingQueue<>(segmentsInFlight);
+        BlockingQueue<Segment> writeQueue = new ArrayBlockingQueue<>(segmentsInFlight);
+        BlockingQueue<byte[]> readBuffers = new ArrayBlockingQueue<>(segmentsInFlight + 2);
+        BlockingQueue<byte[]> writeBuffers = new ArrayBlockingQueue<>(segmentsInFlight + 2);
+        Stage reader = new Stage(executor, () -> {
+            readAhead(inputStream, readQueue, readBuffers);
+            return null;
+        });
+        Stage writer;
+        try {
+            writer = new Stage(executor, () -> {
+                writeBehind(writeQueue, writeBuffers, outputStream);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            reader.cancelAndJoin();
+            throw e;
+        }
+        try {
+            WriteBehindOutputStream writeBehind = new WriteBehindOutputStream(writeQueue, writeBuffers, writer.future);
+            transform.process(new ReadAheadInputStream(readQueue, readBuffers, reader.future), writeBehind);
+            writeBehind.close();
+            writer.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for segment writes");
+        } catch (ExecutionException e) {
+            throw asIOException(e);
+        } finally {
+            reader.cancelAndJoin();
+            writer.cancelAndJoin();
+        }
+    }
+
+    private byte[] buffer(BlockingQueue<byte[]> buffers) {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[segmentSize];
+    }
+
+    private void readAhead(InputStream inputStream, BlockingQueue<Segment> readQueue, BlockingQueue<byte[]> readBuffers)
+            throws IOException, InterruptedException {
+        while (true) {
+            byte[] data = buffer(readBuffers);
+            int length = inputStream.readNBytes(data, 0, segmentSize);
+            if (length > 0) {
+                readQueue.put(new Segment(data, length));
+            }
+            if (length < segmentSize) {
+                readQueue.put(END);
+                return;
+            }
+        }
+    }
+
+    private static void writeBehind(BlockingQueue<Segment> writeQueue, BlockingQueue<byte[]> writeBuffers,
+                                    OutputStream outputStream) throws IOException, InterruptedException {
+        Segment segment;
+        while ((segment = writeQueue.take()) != END) {
+            outputStream.write(segment.data(), 0, segment.length());
+            writeBuffers.offer(segment.data());
+        }
+        outputStream.flush();
+    }
+
+    private static IOException asIOException(ExecutionException e) {
+        return e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+    }
+
+    /**
+     * Consumes the segments queued by the read-ahead task.
+     */
+    private static final class ReadAheadInputStream extends InputStream {
+        private final BlockingQueue<Segment> readQueue;
+        private final BlockingQueue<byte[]> readBuffers;
+        private final Future<?> reader;
+        private Segment current;
+        private int position;
+
+        ReadAheadInputStream(BlockingQueue<Segment> readQueue, BlockingQueue<byte[]> readBuffers, Future<?> reader) {
+            this.readQueue = readQueue;
+            this.readBuffers = readBuffers;
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || position == current.length()) {
+                if (current == END) {
+                    return -1;
+                }
+                if (current != null) {
+                    readBuffers.offer(current.data());
+                }
+                current = take();
+                position = 0;
+            }
+            int read = Math.min(len, current.length() - position);
+            System.arraycopy(current.data(), position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        private Segment take() throws IOException {
+            try {
+                Segment segment;
+                while ((segment = readQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (reader.isDone() && (segment = readQueue.poll()) == null) {
+                        // the reader failed, since it queues END before it completes
+                        reader.get();
+                        throw new IOException("read-ahead stopped before the end of the content");
+                    }
+                    if (segment != null) {
+                        break;
+                    }
+                }
+                return segment;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for segment reads");
+            } catch (ExecutionException e) {
+                throw asIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Collects the transformed content into segments queued for the write-behind task.
+     */
+    private final class WriteBehindOutputStream extends OutputStream {
+        private final BlockingQueue<Segment> writeQueue;
+        private final BlockingQueue<byte[]> writeBuffers;
+        private final Future<?> writer;
+        private byte[] current;
+        private int position;
+        private boolean closed;
+
+        WriteBehindOutputStream(BlockingQueue<Segment> writeQueue, BlockingQueue<byte[]> writeBuffers, Future<?> writer) {
+            this.writeQueue = writeQueue;
+            this.writeBuffers = writeBuffers;
+            this.writer = writer;
+            this.current = buffer(writeBuffers);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int written = Math.min(len, segmentSize - position);
+                System.arraycopy(b, off, current, position, written);
+                position += written;
+                off += written;
+                len -= written;
+                if (position == segmentSize) {
+                    put(new Segment(current, position));
+                    current = buffer(writeBuffers);
+                    position = 0;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (position > 0) {
+                put(new Segment(current, position));
+            }
+            put(END);
+        }
+
+        private void put(Segment segment) throws IOException {
+            try {
+                while (!writeQueue.offer(segment, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (writer.isDone()) {
+                        writer.get();
+                        throw new IOException("write-behind stopped before the end of the content");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for segment writes");
+            } catch (ExecutionException e) {
+                throw asIOException(e);
+            }
+        }
+    }
+}
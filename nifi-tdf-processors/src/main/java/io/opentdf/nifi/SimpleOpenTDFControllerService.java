@@ -1,7 +1,11 @@
 package io.opentdf.nifi;
 
+import io.opentdf.platform.policy.namespaces.ListNamespacesRequest;
+import io.opentdf.platform.sdk.SDK;
+import io.opentdf.platform.sdk.SDKBuilder;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
 import org.apache.nifi.annotation.lifecycle.OnEnabled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
@@ -11,9 +15,14 @@ import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.ssl.SSLContextService;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides an implementation of the OpenTDFControllerService API for OpenTDF SDK Configuration Parameters.
@@ -94,8 +103,107 @@ public class SimpleOpenTDFControllerService extends AbstractControllerService im
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    /**
+     * Optional SSL Context Service whose truststore is used by the shared SDK when communicating with the
+     * OpenTDF Platform over TLS.
+     */
+    public static final PropertyDescriptor SSL_CONTEXT_SERVICE = new PropertyDescriptor.Builder()
+            .name("SSL Context Service")
+            .description("Optional SSL Context Service used by the shared SDK")
+            .required(false)
+            .identifiesControllerService(SSLContextService.class)
+            .build();
+
+    /**
+     * Time a KAS public key is served from the shared public key cache before it must be fetched again. Keys are
+     * refreshed in the background shortly before this expires.
+     */
+    public static final PropertyDescriptor KAS_PUBLIC_KEY_CACHE_TTL = new PropertyDescriptor.Builder()
+            .name("KAS Public Key Cache TTL")
+            .displayName("KAS Public Key Cache TTL")
+            .required(true)
+            .defaultValue("10 min")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .sensitive(false)
+            .description("Time a KAS public key is cached for all processors using this service; keys are refreshed " +
+                    "in the background before they expire")
+            .build();
+
+    /**
+     * Time a successful attribute definition and KAS grant lookup is served from the shared attribute lookup cache.
+     */
+    public static final PropertyDescriptor ATTRIBUTE_LOOKUP_CACHE_TTL = new PropertyDescriptor.Builder()
+            .name("Attribute Lookup Cache TTL")
+            .displayName("Attribute Lookup Cache TTL")
+            .required(true)
+            .defaultValue("1 min")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .sensitive(false)
+            .description("Time attribute definitions and KAS grants resolved during ZTDF creation are cached for all " +
+                    "processors using this service; policy changes are picked up within this time")
+            .build();
+
+    /**
+     * Time a lookup the platform rejected, such as an unknown attribute, is served from the attribute lookup cache.
+     */
+    public static final PropertyDescriptor ATTRIBUTE_LOOKUP_NEGATIVE_CACHE_TTL = new PropertyDescriptor.Builder()
+            .name("Attribute Lookup Negative Cache TTL")
+            .displayName("Attribute Lookup Negative Cache TTL")
+            .required(true)
+            .defaultValue("10 sec")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .sensitive(false)
+            .description("Time an attribute lookup rejected by the platform, for example because an attribute does not " +
+                    "exist, is cached before it is retried")
+            .build();
+
+    /**
+     * Number of distinct attribute lookups cached.
+     */
+    static final int ATTRIBUTE_LOOKUP_CACHE_SIZE = 1024;
+
+    /**
+     * Optional interval of a background keep-alive call made with the shared SDK. The call is a lightweight
+     * authenticated platform request, so an access token close to expiry is renewed by the SDK on this background
+     * thread rather than by a processor request. It does not manage the token itself: the SDK still acquires and
+     * renews its own token, and SDKs owned by processors with their own SSL Context Service are not kept alive.
+     * Disabled unless set.
+     */
+    public static final PropertyDescriptor TOKEN_REFRESH_INTERVAL = new PropertyDescriptor.Builder()
+            .name("Token Refresh Interval")
+            .displayName("Token Keep-Alive Interval")
+            .required(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .sensitive(false)
+            .description("When set, the shared SDK makes a lightweight authenticated platform call (list namespaces) at " +
+                    "this interval so the SDK renews its access token on a background thread rather than during a " +
+                    "processor request; should be shorter than the token lifetime. This is a keep-alive, not a token " +
+                    "source: each call adds one platform request, the client credentials need namespace read " +
+                    "permission, and SDKs built by processors with their own SSL Context Service are not covered. " +
+                    "Disabled when not set")
+            .build();
+
+    /**
+     * Time allowed for a background keep-alive call.
+     */
+    static final long TOKEN_REFRESH_TIMEOUT_SECONDS = 30;
+
     Config config = null;
 
+    private volatile ScheduledExecutorService tokenRefreshExecutor;
+
+    private final AtomicBoolean keepAliveFailing = new AtomicBoolean();
+
+    private volatile RefreshingKASPublicKeyCache kasPublicKeyCache;
+
+    private volatile ExpiringAttributeLookupCache attributeLookupCache;
+
+    private SSLContextService sslContextService;
+
+    private volatile SDK sdk;
+
+    private final Object sdkLock = new Object();
+
     /**
      * Returns a list of property descriptors that are supported by this controller service.
      *
@@ -103,7 +211,8 @@ public class SimpleOpenTDFControllerService extends AbstractControllerService im
      */
     @Override
     protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return Arrays.asList(PLATFORM_ENDPOINT, CLIENT_ID, CLIENT_SECRET, USE_PLAINTEXT);
+        return Arrays.asList(PLATFORM_ENDPOINT, CLIENT_ID, CLIENT_SECRET, USE_PLAINTEXT, SSL_CONTEXT_SERVICE, KAS_PUBLIC_KEY_CACHE_TTL,
+                ATTRIBUTE_LOOKUP_CACHE_TTL, ATTRIBUTE_LOOKUP_NEGATIVE_CACHE_TTL, TOKEN_REFRESH_INTERVAL);
     }
 
     /**
@@ -138,6 +247,95 @@ public class SimpleOpenTDFControllerService extends AbstractControllerService im
             throw new InitializationException("The 'usePlaintext' property must be either 'true' or 'false'.");
         }
         config.setUsePlainText(usePlainText);
+
+        PropertyValue sslContextServiceValue = configurationContext.getProperty(SSL_CONTEXT_SERVICE);
+        sslContextService = sslContextServiceValue != null && sslContextServiceValue.isSet() ?
+                sslContextServiceValue.asControllerService(SSLContextService.class) : null;
+
+        long cacheTTLNanos = getTimePeriodNanos(configurationContext.getProperty(KAS_PUBLIC_KEY_CACHE_TTL), TimeUnit.MINUTES.toNanos(10));
+        // background refreshes use the KAS of the shared SDK, which lives as long as the cache
+        kasPublicKeyCache = new RefreshingKASPublicKeyCache(cacheTTLNanos, getLogger(), () -> getSDK().getServices().kas());
+        attributeLookupCache = new ExpiringAttributeLookupCache(ATTRIBUTE_LOOKUP_CACHE_SIZE,
+                getTimePeriodNanos(configurationContext.getProperty(ATTRIBUTE_LOOKUP_CACHE_TTL), TimeUnit.MINUTES.toNanos(1)),
+                getTimePeriodNanos(configurationContext.getProperty(ATTRIBUTE_LOOKUP_NEGATIVE_CACHE_TTL), TimeUnit.SECONDS.toNanos(10)));
+
+        PropertyValue tokenRefreshValue = configurationContext.getProperty(TOKEN_REFRESH_INTERVAL);
+        if (tokenRefreshValue != null && tokenRefreshValue.getValue() != null) {
+            long intervalMillis = tokenRefreshValue.asTimePeriod(TimeUnit.MILLISECONDS);
+            tokenRefreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "OpenTDF token keep-alive");
+                thread.setDaemon(true);
+                return thread;
+            });
+            tokenRefreshExecutor.scheduleWithFixedDelay(this::refreshToken, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long getTimePeriodNanos(PropertyValue propertyValue, long defaultNanos) {
+        return propertyValue != null && propertyValue.getValue() != null ?
+                propertyValue.asTimePeriod(TimeUnit.NANOSECONDS) : defaultNanos;
+    }
+
+    /**
+     * Makes an authenticated keep-alive call with the shared SDK, if it has been built, so an access token that is
+     * about to expire is renewed on this background thread. Failures are retried at the next interval; only the
+     * first failure of a run of failures is logged as a warning.
+     */
+    void refreshToken() {
+        SDK current = sdk;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.getServices().namespaces().listNamespaces(ListNamespacesRequest.newBuilder().build())
+                    .get(TOKEN_REFRESH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            getLogger().debug("SDK - keep-alive call complete");
+            if (keepAliveFailing.getAndSet(false)) {
+                getLogger().info("SDK - keep-alive call succeeded again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (keepAliveFailing.getAndSet(true)) {
+                getLogger().debug("SDK - keep-alive call failed", e);
+            } else {
+                getLogger().warn("SDK - keep-alive call failed; further failures are logged at debug level", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the token refresh and closes the shared SDK, if one was built, and the public key and attribute lookup
+     * caches when the controller service is disabled.
+     */
+    @OnDisabled
+    public void disabled() {
+        ScheduledExecutorService executor = tokenRefreshExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            tokenRefreshExecutor = null;
+        }
+        ExpiringAttributeLookupCache lookupCache = attributeLookupCache;
+        if (lookupCache != null) {
+            lookupCache.clear();
+            attributeLookupCache = null;
+        }
+        RefreshingKASPublicKeyCache cache = kasPublicKeyCache;
+        if (cache != null) {
+            cache.close();
+            kasPublicKeyCache = null;
+        }
+        synchronized (sdkLock) {
+            if (sdk != null) {
+                getLogger().info("SDK - close shared");
+                try {
+                    sdk.close();
+                } catch (Exception e) {
+                    getLogger().warn("error closing shared SDK", e);
+                }
+                sdk = null;
+            }
+        }
     }
 
     /**
@@ -161,4 +359,80 @@ public class SimpleOpenTDFControllerService extends AbstractControllerService im
     public Config getConfig() throws ProcessException {
         return config;
     }
+
+    /**
+     * Retrieves the SDK shared by every processor referencing this controller service, building it on first use.
+     * A single SDK multiplexes all processor traffic over one set of platform channels and one client credentials
+     * token instead of one per processor instance.
+     *
+     * @return the shared SDK
+     * @throws ProcessException if the service is not enabled or the SDK cannot be built
+     */
+    @Override
+    public SDK getSDK() throws ProcessException {
+        SDK current = sdk;
+        if (current == null) {
+            synchronized (sdkLock) {
+                current = sdk;
+                if (current == null) {
+                    if (config == null) {
+                        throw new ProcessException("OpenTDF controller service is not enabled");
+                    }
+                    current = buildSDK();
+                    sdk = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves the KAS public key cache shared by every processor referencing this controller service.
+     *
+     * @return the shared KAS public key cache
+     * @throws ProcessException if the service is not enabled
+     */
+    @Override
+    public KASPublicKeyCache getKASPublicKeyCache() throws ProcessException {
+        KASPublicKeyCache cache = kasPublicKeyCache;
+        if (cache == null) {
+            throw new ProcessException("OpenTDF controller service is not enabled");
+        }
+        return cache;
+    }
+
+    /**
+     * Retrieves the attribute lookup cache shared by every processor referencing this controller service.
+     *
+     * @return the shared attribute lookup cache
+     * @throws ProcessException if the service is not enabled
+     */
+    @Override
+    public AttributeLookupCache getAttributeLookupCache() throws ProcessException {
+        AttributeLookupCache lookupCache = attributeLookupCache;
+        if (lookupCache == null) {
+            throw new ProcessException("OpenTDF controller service is not enabled");
+        }
+        return lookupCache;
+    }
+
+    private SDK buildSDK() {
+        getLogger().info("SDK - create shared");
+        SDKBuilder sdkBuilder = createSDKBuilder().platformEndpoint(config.getPlatformEndpoint())
+                .clientSecret(config.getClientId(), config.getClientSecret());
+        if (sslContextService != null) {
+            getLogger().info("SDK - use SSLFactory from SSL Context Service truststore");
+            sdkBuilder = sdkBuilder.sslFactoryFromKeyStore(sslContextService.getTrustStoreFile(), sslContextService.getTrustStorePassword());
+        }
+        if (config.isUsePlainText()) {
+            getLogger().info("SDK - use plaintext connection");
+            sdkBuilder = sdkBuilder.useInsecurePlaintextConnection(true);
+        }
+        return sdkBuilder.build();
+    }
+
+    //this is really here to allow for easier mocking for testing
+    SDKBuilder createSDKBuilder() {
+        return SDKBuilder.newBuilder();
+    }
 }
@@ -0,0 +1,156 @@
+package io.opentdf.nifi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over content available as input streams, such as FlowFile content.
+ * <p>
+ * Seeking forward skips bytes of the current stream and seeking backward opens a new stream and skips to the
+ * position, so a reader that reads a few regions of large content, like the ZIP central directory and one entry,
+ * reads only those regions instead of staging the content.
+ */
+final class StreamSeekableChannel implements SeekableByteChannel {
+
+    /**
+     * Opens a new stream at the start of the content.
+     */
+    @FunctionalInterface
+    interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private final long size;
+    private final StreamOpener opener;
+    private InputStream stream;
+    private long streamPosition;
+    private long position;
+    private boolean open = true;
+
+    /**
+     * @param size size of the content
+     * @param opener opens a stream at the start of the content; called again for every backward seek
+     */
+    StreamSeekableChannel(long size, StreamOpener opener) {
+        this.size = size;
+        this.opener = opener;
+    }
+
+    /**
+     * Creates a channel over a single stream that can only seek forward. The stream is not closed with the channel.
+     *
+     * @param inputStream the content, at its start
+     * @param size size of the content
+     * @return the channel
+     */
+    static StreamSeekableChannel forward(InputStream inputStream, long size) {
+        InputStream[] remaining = {inputStream};
+        return new StreamSeekableChannel(size, () -> {
+            InputStream next = remaining[0];
+            if (next == null) {
+                throw new IOException("content can only be read forward");
+            }
+            remaining[0] = null;
+            return new FilterInputStream(next) {
+                @Override
+                public void close() {
+                }
+            };
+        });
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (stream == null || streamPosition > position) {
+            if (stream != null) {
+                stream.close();
+            }
+            stream = opener.open();
+            streamPosition = 0;
+        }
+        if (streamPosition < position) {
+            stream.skipNBytes(position - streamPosition);
+            streamPosition = position;
+        }
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int read;
+        if (dst.hasArray()) {
+            read = stream.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+            if (read > 0) {
+                dst.position(dst.position() + read);
+            }
+        } else {
+            byte[] buffer = new byte[length];
+            read = stream.read(buffer, 0, length);
+            if (read > 0) {
+                dst.put(buffer, 0, read);
+            }
+        }
+        if (read > 0) {
+            position += read;
+            streamPosition += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
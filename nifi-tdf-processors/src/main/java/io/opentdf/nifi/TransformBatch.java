@@ -0,0 +1,205 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.StreamCallback;
+import org.apache.nifi.stream.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Applies a content transform to each FlowFile of a pulled batch.
+ * <p>
+ * Without an executor each transform runs immediately through {@link ProcessSession#write(FlowFile, StreamCallback)}
+ * on the calling thread. With an executor, content up to the staging limit is read into memory on the calling
+ * thread, transformed on the executor so that blocking KAS calls overlap, and written back on the calling thread by
+ * {@link #complete()}. The session is only ever touched by the thread that owns it. Transforms of buffered content
+ * are staged straight into a buffer borrowed from the processor's pool, so the content is copied only once.
+ * <p>
+ * The sizes and transform time of successful transforms are recorded in the processor metrics, if given.
+ */
+class TransformBatch {
+
+    private final ProcessSession processSession;
+    private final ExecutorService executor;
+    private final long stagingLimit;
+    private final ProcessorMetrics metrics;
+    private final Consumer<FlowFile> onSuccess;
+    private final BiConsumer<FlowFile, Exception> onFailure;
+    private final List<Pending> pending = new ArrayList<>();
+
+    private record Pending(FlowFile flowFile, Future<byte[]> result, long[] transformNanos) {
+    }
+
+    /**
+     * Transforms content held in a buffer.
+     */
+    @FunctionalInterface
+    interface BufferTransform {
+        /**
+         * @param content the content, positioned at its start with its limit at its end
+         * @param outputStream destination of the new content
+         * @throws IOException if the content cannot be transformed
+         */
+        void process(ByteBuffer content, OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * @param processSession session owning the FlowFiles
+     * @param executor executor for concurrent transforms; null to transform sequentially
+     * @param stagingLimit largest content size staged in memory for a concurrent transform
+     * @param metrics metrics recording transform sizes and times; null to record nothing
+     * @param onSuccess invoked on the owning thread with the updated FlowFile after a successful transform
+     * @param onFailure invoked on the owning thread with the original FlowFile when the transform fails
+     */
+    TransformBatch(ProcessSession processSession, ExecutorService executor, long stagingLimit, ProcessorMetrics metrics,
+                   Consumer<FlowFile> onSuccess, BiConsumer<FlowFile, Exception> onFailure) {
+        this.processSession = processSession;
+        this.executor = executor;
+        this.stagingLimit = stagingLimit;
+        this.metrics = metrics;
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Adds a FlowFile to the batch. Sequential and oversized transforms complete before this method returns.
+     *
+     * @param flowFile the FlowFile to transform
+     * @param transform transform from the current content to the new content
+     */
+    void add(FlowFile flowFile, StreamCallback transform) {
+        add(flowFile, transform, null, null);
+    }
+
+    /**
+     * Adds a FlowFile whose transform reads its whole content into a buffer borrowed from a pool.
+     *
+     * @param flowFile the FlowFile to transform
+     * @param pool pool the content buffer is borrowed from
+     * @param transform transform from the buffered content to the new content
+     */
+    void add(FlowFile flowFile, ByteBufferPool pool, BufferTransform transform) {
+        add(flowFile, (inputStream, outputStream) -> {
+            ByteBuffer content = pool.acquire((int) flowFile.getSize());
+            try {
+                ByteBufferPool.fill(inputStream, content);
+                transform.process(content, outputStream);
+            } finally {
+                pool.release(content);
+            }
+        }, pool, transform);
+    }
+
+    /**
+     * Adds a FlowFile with separate transforms for streamed and staged content. Sequential and oversized transforms
+     * use the stream transform; content staged for a concurrent transform is read into a buffer borrowed from the
+     * pool, handed to the staged transform, and released when the transform completes.
+     *
+     * @param flowFile the FlowFile to transform
+     * @param transform transform from the current content to the new content
+     * @param pool pool staging buffers are borrowed from; null to stage into a new array
+     * @param stagedTransform transform of staged content; used only with a pool
+     */
+    void add(FlowFile flowFile, StreamCallback transform, ByteBufferPool pool, BufferTransform stagedTransform) {
+        if (executor == null || flowFile.getSize() > stagingLimit) {
+            FlowFile updatedFlowFile;
+            long start = System.nanoTime();
+            try {
+                updatedFlowFile = processSession.write(flowFile, transform);
+            } catch (Exception e) {
+                onFailure.accept(flowFile, e);
+                return;
+            }
+            if (metrics != null) {
+                metrics.recordTransform(flowFile.getSize(), updatedFlowFile.getSize(), System.nanoTime() - start);
+            }
+            onSuccess.accept(updatedFlowFile);
+            return;
+        }
+        final long[] transformNanos = new long[1];
+        if (pool != null) {
+            final ByteBuffer content = pool.acquire((int) flowFile.getSize());
+            try {
+                processSession.read(flowFile, in -> ByteBufferPool.fill(in, content));
+            } catch (Exception e) {
+                pool.release(content);
+                onFailure.accept(flowFile, e);
+                return;
+            }
+            pending.add(new Pending(flowFile, executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.remaining());
+                    stagedTransform.process(content, outputStream);
+                    transformNanos[0] = System.nanoTime() - start;
+                    return outputStream.toByteArray();
+                } finally {
+                    pool.release(content);
+                }
+            }), transformNanos));
+            return;
+        }
+        final byte[] content = new byte[(int) flowFile.getSize()];
+        try {
+            processSession.read(flowFile, in -> StreamUtils.fillBuffer(in, content));
+        } catch (Exception e) {
+            onFailure.accept(flowFile, e);
+            return;
+        }
+        pending.add(new Pending(flowFile, executor.submit(() -> {
+            long start = System.nanoTime();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length);
+            transform.process(new ByteArrayInputStream(content), outputStream);
+            transformNanos[0] = System.nanoTime() - start;
+            return outputStream.toByteArray();
+        }), transformNanos));
+    }
+
+    /**
+     * Waits for the concurrent transforms, in the order they were added, and writes their results back to the
+     * session on the calling thread.
+     *
+     * @throws ProcessException if the calling thread is interrupted while waiting
+     */
+    void complete() throws ProcessException {
+        for (int i = 0; i < pending.size(); i++) {
+            Pending item = pending.get(i);
+            byte[] result;
+            try {
+                result = item.result().get();
+            } catch (InterruptedException e) {
+                pending.subList(i, pending.size()).forEach(x -> x.result().cancel(true));
+                Thread.currentThread().interrupt();
+                throw new ProcessException("interrupted waiting for concurrent transforms", e);
+            } catch (ExecutionException e) {
+                onFailure.accept(item.flowFile(), e.getCause() instanceof Exception cause ? cause : new ProcessException(e.getCause()));
+                continue;
+            }
+            FlowFile updatedFlowFile;
+            try {
+                updatedFlowFile = processSession.write(item.flowFile(), outputStream -> outputStream.write(result));
+            } catch (Exception e) {
+                onFailure.accept(item.flowFile(), e);
+                continue;
+            }
+            if (metrics != null) {
+                metrics.recordTransform(item.flowFile().getSize(), result.length, item.transformNanos()[0]);
+            }
+            onSuccess.accept(updatedFlowFile);
+        }
+        pending.clear();
+    }
+}
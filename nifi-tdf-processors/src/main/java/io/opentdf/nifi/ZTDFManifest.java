@@ -0,0 +1,340 @@
+package io.opentdf.nifi;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.opentdf.platform.sdk.Manifest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The parts of a ZTDF manifest needed to locate, decrypt and describe the payload without the SDK reader: the key
+ * access objects, the policy, the segment table and its integrity information, and the assertion ids.
+ */
+final class ZTDFManifest {
+
+    /**
+     * Name of the manifest entry of a ZTDF archive.
+     */
+    static final String MANIFEST_ENTRY = "0.manifest.json";
+
+    /**
+     * A payload segment as recorded in the manifest.
+     *
+     * @param plaintextSize size of the decrypted segment
+     * @param encryptedSize size of the IV, ciphertext and authentication tag of the segment
+     * @param hash the recorded segment hash, Base64 decoded
+     */
+    record Segment(long plaintextSize, long encryptedSize, byte[] hash) {
+    }
+
+    private static final Gson GSON = new Gson();
+
+    private final JsonArray keyAccess;
+    private final String policy;
+    private final String algorithm;
+    private final String rootSignatureAlgorithm;
+    private final byte[] rootSignature;
+    private final String segmentHashAlgorithm;
+    private final List<Segment> segments;
+    private final String payloadEntry;
+    private final String mimeType;
+    private final String schemaVersion;
+    private final List<String> assertionIds;
+
+    private ZTDFManifest(JsonObject manifest) throws IOException {
+        JsonObject encryptionInformation = object(manifest, "encryptionInformation", "");
+        JsonObject integrityInformation = object(encryptionInformation, "integrityInformation", "encryptionInformation.");
+        JsonObject rootSignatureObject = object(integrityInformation, "rootSignature", "encryptionInformation.integrityInformation.");
+        JsonObject payload = object(manifest, "payload", "");
+        keyAccess = array(encryptionInformation, "keyAccess", "encryptionInformation.");
+        for (JsonElement element : keyAccess) {
+            if (!element.isJsonObject()) {
+                throw invalid("encryptionInformation.keyAccess holds a " + element + " rather than a key access object");
+            }
+        }
+        policy = requiredString(encryptionInformation, "policy", "encryptionInformation.");
+        algorithm = requiredString(object(encryptionInformation, "method", "encryptionInformation."), "algorithm",
+                "encryptionInformation.method.");
+        rootSignatureAlgorithm = requiredString(rootSignatureObject, "alg", "encryptionInformation.integrityInformation.rootSignature.");
+        rootSignature = base64(rootSignatureObject, "sig", "encryptionInformation.integrityInformation.rootSignature.");
+        segmentHashAlgorithm = requiredString(integrityInformation, "segmentHashAlg", "encryptionInformation.integrityInformation.");
+        long segmentSizeDefault = number(integrityInformation, "segmentSizeDefault", "encryptionInformation.integrityInformation.");
+        long encryptedSegmentSizeDefault = number(integrityInformation, "encryptedSegmentSizeDefault",
+                "encryptionInformation.integrityInformation.");
+        List<Segment> segmentList = new ArrayList<>();
+        JsonArray segmentArray = array(integrityInformation, "segments", "encryptionInformation.integrityInformation.");
+        for (int i = 0; i < segmentArray.size(); i++) {
+            String path = "encryptionInformation.integrityInformation.segments[" + i + "]";
+            if (!segmentArray.get(i).isJsonObject()) {
+                throw invalid(path + " is not a segment object");
+            }
+            path += ".";
+            JsonObject segment = segmentArray.get(i).getAsJsonObject();
+            long plaintextSize = number(segment, "segmentSize", path);
+            long encryptedSize = number(segment, "encryptedSegmentSize", path);
+            segmentList.add(new Segment(plaintextSize > 0 ? plaintextSize : segmentSizeDefault,
+                    encryptedSize > 0 ? encryptedSize : encryptedSegmentSizeDefault, base64(segment, "hash", path)));
+        }
+        segments = Collections.unmodifiableList(segmentList);
+        payloadEntry = requiredString(payload, "url", "payload.");
+        mimeType = string(payload, "mimeType");
+        schemaVersion = string(manifest, "schemaVersion");
+        List<String> ids = new ArrayList<>();
+        if (manifest.has("assertions") && manifest.get("assertions").isJsonArray()) {
+            for (JsonElement assertion : manifest.getAsJsonArray("assertions")) {
+                String id = assertion.isJsonObject() ? string(assertion.getAsJsonObject(), "id") : null;
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        assertionIds = Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Parses a ZTDF manifest.
+     *
+     * @param json the manifest JSON
+     * @return the manifest
+     * @throws IOException if the JSON is malformed or lacks a required part of the manifest
+     */
+    static ZTDFManifest parse(String json) throws IOException {
+        JsonElement manifest;
+        try {
+            manifest = JsonParser.parseString(json);
+        } catch (JsonParseException e) {
+            throw new IOException("invalid ZTDF manifest: malformed JSON", e);
+        }
+        if (!manifest.isJsonObject()) {
+            throw invalid("not a JSON object");
+        }
+        return new ZTDFManifest(manifest.getAsJsonObject());
+    }
+
+    private static IOException invalid(String reason) {
+        return new IOException("invalid ZTDF manifest: " + reason);
+    }
+
+    private static JsonObject object(JsonObject parent, String member, String path) throws IOException {
+        JsonElement element = parent.get(member);
+        if (element == null || !element.isJsonObject()) {
+            throw invalid(path + member + (element == null || element.isJsonNull() ? " is missing" : " is not an object"));
+        }
+        return element.getAsJsonObject();
+    }
+
+    private static JsonArray array(JsonObject parent, String member, String path) throws IOException {
+        JsonElement element = parent.get(member);
+        if (element == null || !element.isJsonArray()) {
+            throw invalid(path + member + (element == null || element.isJsonNull() ? " is missing" : " is not an array"));
+        }
+        return element.getAsJsonArray();
+    }
+
+    private static String requiredString(JsonObject object, String member, String path) throws IOException {
+        JsonElement element = object.get(member);
+        if (element == null || element.isJsonNull()) {
+            throw invalid(path + member + " is missing");
+        }
+        if (!element.isJsonPrimitive()) {
+            throw invalid(path + member + " is not a string");
+        }
+        return element.getAsString();
+    }
+
+    private static byte[] base64(JsonObject object, String member, String path) throws IOException {
+        try {
+            return Base64.getDecoder().decode(requiredString(object, member, path));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid ZTDF manifest: " + path + member + " is not Base64", e);
+        }
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element == null || !element.isJsonPrimitive() ? null : element.getAsString();
+    }
+
+    private static long number(JsonObject object, String member, String path) throws IOException {
+        JsonElement element = object.get(member);
+        if (element == null || element.isJsonNull()) {
+            return 0;
+        }
+        if (!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) {
+            throw invalid(path + member + " is not a number");
+        }
+        try {
+            return element.getAsJsonPrimitive().getAsBigDecimal().longValueExact();
+        } catch (ArithmeticException e) {
+            throw invalid(path + member + " is not a whole number");
+        }
+    }
+
+    /**
+     * @return the number of key access objects
+     */
+    int getKeyAccessCount() {
+        return keyAccess.size();
+    }
+
+    /**
+     * @param index index of the key access object
+     * @return the key access object as the SDK models it
+     */
+    Manifest.KeyAccess getKeyAccess(int index) {
+        return GSON.fromJson(keyAccess.get(index), Manifest.KeyAccess.class);
+    }
+
+    /**
+     * @param index index of the key access object
+     * @return the id of the key split the key access object holds; empty when the key is not split
+     */
+    String getSplitId(int index) {
+        String sid = string(keyAccess.get(index).getAsJsonObject(), "sid");
+        return sid == null ? "" : sid;
+    }
+
+    /**
+     * @return the distinct KAS URLs of the key access objects, in manifest order
+     */
+    List<String> getKasUrls() {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        for (JsonElement element : keyAccess) {
+            String url = string(element.getAsJsonObject(), "url");
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * @return the Base64 encoded policy
+     */
+    String getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Decodes the data attribute FQNs from the policy.
+     *
+     * @return the data attributes of the policy, in policy order
+     * @throws IOException if the policy is not a Base64 encoded policy object
+     */
+    List<String> getDataAttributes() throws IOException {
+        try {
+            return dataAttributes(new String(Base64.getDecoder().decode(policy), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid ZTDF policy", e);
+        }
+    }
+
+    /**
+     * Reads the data attribute FQNs of a policy object, as embedded in ZTDF manifests and plaintext NanoTDF policies.
+     *
+     * @param policyJson the policy object JSON
+     * @return the data attributes of the policy, in policy order
+     * @throws IOException if the JSON is not a policy object
+     */
+    static List<String> dataAttributes(String policyJson) throws IOException {
+        List<String> attributes = new ArrayList<>();
+        try {
+            JsonObject body = JsonParser.parseString(policyJson).getAsJsonObject().getAsJsonObject("body");
+            if (body != null && body.has("dataAttributes") && body.get("dataAttributes").isJsonArray()) {
+                for (JsonElement attribute : body.getAsJsonArray("dataAttributes")) {
+                    attributes.add(string(attribute.getAsJsonObject(), "attribute"));
+                }
+            }
+        } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            throw new IOException("invalid policy", e);
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the payload encryption algorithm, e.g. AES-256-GCM
+     */
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the algorithm of the root signature over the segment hashes
+     */
+    String getRootSignatureAlgorithm() {
+        return rootSignatureAlgorithm;
+    }
+
+    /**
+     * @return the root signature, Base64 decoded
+     */
+    byte[] getRootSignature() {
+        return rootSignature.clone();
+    }
+
+    /**
+     * @return the algorithm of the segment hashes
+     */
+    String getSegmentHashAlgorithm() {
+        return segmentHashAlgorithm;
+    }
+
+    /**
+     * @return the payload segments in order
+     */
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the plaintext size of the payload
+     */
+    long getPayloadSize() {
+        return segments.stream().mapToLong(Segment::plaintextSize).sum();
+    }
+
+    /**
+     * @return the encrypted size of the payload
+     */
+    long getEncryptedPayloadSize() {
+        return segments.stream().mapToLong(Segment::encryptedSize).sum();
+    }
+
+    /**
+     * @return the name of the archive entry holding the payload
+     */
+    String getPayloadEntry() {
+        return payloadEntry;
+    }
+
+    /**
+     * @return the MIME type of the plaintext, or null if not recorded
+     */
+    String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return the manifest schema version, or null for manifests written before it was recorded
+     */
+    String getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * @return the ids of the assertions, in manifest order
+     */
+    List<String> getAssertionIds() {
+        return assertionIds;
+    }
+}
@@ -0,0 +1,468 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.KASKeyCache;
+import io.opentdf.platform.sdk.KeyType;
+import io.opentdf.platform.sdk.Manifest;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the payload of a ZTDF by segment from a seekable channel, so segments can be decrypted concurrently and only
+ * the segments that are needed are read.
+ * <p>
+ * The manifest and the location of the payload are read from the ZIP central directory. The payload key comes from
+ * loading the ZTDF with the SDK reader, which checks the key access URLs against the KAS allowlist, unwraps the key
+ * splits and verifies the root signature; the unwrapped splits are captured from its KAS calls and XOR-combined. Only
+ * the segment scheduling is done here: each segment is checked against its recorded hash and decrypted with
+ * AES-256-GCM. Hashes are accepted both as raw bytes and as the hex encoding written by earlier SDKs.
+ */
+final class ZTDFPayloadReader implements Closeable {
+
+    static final int GCM_IV_LENGTH = 12;
+    static final int GCM_TAG_LENGTH = 16;
+    static final String PAYLOAD_ALGORITHM = "AES-256-GCM";
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    /**
+     * Loads the ZTDF with the SDK reader through the given KAS.
+     */
+    @FunctionalInterface
+    interface SDKLoader {
+        void load(SDK.KAS kas) throws Exception;
+    }
+
+    /**
+     * Receives decrypted segments in payload order.
+     */
+    @FunctionalInterface
+    interface SegmentConsumer {
+        void accept(int index, byte[] plaintext) throws IOException;
+    }
+
+    private final ZipFile zipFile;
+    private final SeekableByteChannel channel;
+    private final ZTDFManifest manifest;
+    private final long payloadOffset;
+    private final long[] segmentOffsets;
+    private final long[] plaintextOffsets;
+
+    private ZTDFPayloadReader(ZipFile zipFile, SeekableByteChannel channel, ZTDFManifest manifest, long payloadOffset) {
+        this.zipFile = zipFile;
+        this.channel = channel;
+        this.manifest = manifest;
+        this.payloadOffset = payloadOffset;
+        List<ZTDFManifest.Segment> segments = manifest.getSegments();
+        segmentOffsets = new long[segments.size()];
+        plaintextOffsets = new long[segments.size()];
+        for (int i = 1; i < segments.size(); i++) {
+            segmentOffsets[i] = segmentOffsets[i - 1] + segments.get(i - 1).encryptedSize();
+            plaintextOffsets[i] = plaintextOffsets[i - 1] + segments.get(i - 1).plaintextSize();
+        }
+    }
+
+    /**
+     * Reads the manifest of a ZTDF and locates its payload. Closing the reader closes the channel.
+     *
+     * @param channel the ZTDF archive
+     * @return the reader
+     * @throws IOException if the archive is not a ZTDF, or its manifest does not describe a stored AES-256-GCM payload
+     */
+    static ZTDFPayloadReader open(SeekableByteChannel channel) throws IOException {
+        ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(channel).get();
+        try {
+            ZTDFManifest manifest = readManifest(zipFile);
+            if (!PAYLOAD_ALGORITHM.equals(manifest.getAlgorithm())) {
+                throw new IOException("unsupported ZTDF payload algorithm " + manifest.getAlgorithm());
+            }
+            ZipArchiveEntry payloadEntry = zipFile.getEntry(manifest.getPayloadEntry());
+            if (payloadEntry == null) {
+                throw new IOException("ZTDF payload entry " + manifest.getPayloadEntry() + " not found");
+            }
+            if (payloadEntry.getMethod() != ZipEntry.STORED) {
+                throw new IOException("ZTDF payload is not stored uncompressed");
+            }
+            if (payloadEntry.getCompressedSize() != manifest.getEncryptedPayloadSize()) {
+                throw new IOException(String.format("ZTDF payload size %d does not match the %d bytes of its segments",
+                        payloadEntry.getCompressedSize(), manifest.getEncryptedPayloadSize()));
+            }
+            return new ZTDFPayloadReader(zipFile, channel, manifest, dataOffset(channel, payloadEntry.getLocalHeaderOffset()));
+        } catch (IOException | RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the manifest entry of a ZTDF archive.
+     *
+     * @param zipFile the ZTDF archive
+     * @return the manifest
+     * @throws IOException if the archive has no valid manifest
+     */
+    static ZTDFManifest readManifest(ZipFile zipFile) throws IOException {
+        ZipArchiveEntry manifestEntry = zipFile.getEntry(ZTDFManifest.MANIFEST_ENTRY);
+        if (manifestEntry == null) {
+            throw new IOException("not a ZTDF: " + ZTDFManifest.MANIFEST_ENTRY + " not found");
+        }
+        try (InputStream inputStream = zipFile.getInputStream(manifestEntry)) {
+            return ZTDFManifest.parse(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static long dataOffset(SeekableByteChannel channel, long localHeaderOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, localHeaderOffset, header);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("invalid ZIP local file header at " + localHeaderOffset);
+        }
+        return localHeaderOffset + LOCAL_HEADER_LENGTH + Short.toUnsignedInt(header.getShort(26)) +
+                Short.toUnsignedInt(header.getShort(28));
+    }
+
+    private static void readFully(SeekableByteChannel channel, long position, ByteBuffer buffer) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("ZTDF ended before the end of a segment");
+            }
+        }
+    }
+
+    /**
+     * Creates a reader of the same ZTDF over another channel, without reading the manifest again. A reader over a
+     * forward-only channel can decrypt any run of segments, since segments are read in payload order.
+     *
+     * @param other channel over the same ZTDF content
+     * @return the reader; closing it closes the channel
+     */
+    ZTDFPayloadReader withChannel(SeekableByteChannel other) {
+        return new ZTDFPayloadReader(null, other, manifest, payloadOffset);
+    }
+
+    /**
+     * @return the manifest of the ZTDF
+     */
+    ZTDFManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Unwraps the payload key by loading the ZTDF with the SDK reader, so the KAS allowlist, the choice of key type
+     * and the root signature check are the SDK's. The keys the SDK unwraps are captured by split id and XOR-combined.
+     *
+     * @param kas the KAS client
+     * @param loader loads the ZTDF with the SDK reader through the KAS it is given
+     * @return the payload key
+     * @throws IOException if the SDK reader rejects the ZTDF, or does not unwrap every key split
+     */
+    byte[] unwrapPayloadKey(SDK.KAS kas, SDKLoader loader) throws IOException {
+        KeyCapturingKAS capturingKAS = new KeyCapturingKAS(kas);
+        try {
+            loader.load(capturingKAS);
+        } catch (IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted loading ZTDF");
+        } catch (Exception e) {
+            throw new IOException("unable to load ZTDF", e);
+        }
+        Set<String> splitIds = new HashSet<>();
+        for (int i = 0; i < manifest.getKeyAccessCount(); i++) {
+            splitIds.add(manifest.getSplitId(i));
+        }
+        if (splitIds.isEmpty() || !capturingKAS.splitKeys.keySet().equals(splitIds)) {
+            throw new IOException("ZTDF key splits " + splitIds + " not all unwrapped: " + capturingKAS.splitKeys.keySet());
+        }
+        byte[] payloadKey = null;
+        for (byte[] splitKey : capturingKAS.splitKeys.values()) {
+            if (payloadKey == null) {
+                payloadKey = splitKey.clone();
+            } else if (payloadKey.length != splitKey.length) {
+                throw new IOException("ZTDF key splits differ in length");
+            } else {
+                for (int i = 0; i < payloadKey.length; i++) {
+                    payloadKey[i] ^= splitKey[i];
+                }
+            }
+        }
+        return payloadKey;
+    }
+
+    /**
+     * Decrypts the whole payload.
+     *
+     * @param payloadKey the payload key
+     * @param outputStream destination of the plaintext
+     * @param executor executor decrypting segments concurrently; null to decrypt on the calling thread
+     * @param segmentsInFlight maximum number of segments read ahead of the output
+     * @throws IOException if a segment cannot be read, fails its integrity check or cannot be decrypted
+     */
+    void readPayload(byte[] payloadKey, OutputStream outputStream, ExecutorService executor, int segmentsInFlight) throws IOException {
+        decryptSegments(payloadKey, 0, manifest.getSegments().size(), executor, segmentsInFlight,
+                (index, plaintext) -> outputStream.write(plaintext));
+    }
+
+    /**
+     * Decrypts a byte range of the payload, reading and decrypting only the segments covering it.
+     *
+     * @param payloadKey the payload key
+     * @param offset plaintext offset of the range
+     * @param length length of the range; the range ends at the end of the payload if it extends past it
+     * @param outputStream destination of the plaintext range
+     * @param executor executor decrypting segments concurrently; null to decrypt on the calling thread
+     * @param segmentsInFlight maximum number of segments read ahead of the output
+     * @throws IOException if the offset is past the end of the payload, or a covering segment cannot be read, fails
+     *                     its integrity check or cannot be decrypted
+     */
+    void readRange(byte[] payloadKey, long offset, long length, OutputStream outputStream, ExecutorService executor,
+                   int segmentsInFlight) throws IOException {
+        long payloadSize = manifest.getPayloadSize();
+        if (offset < 0 || length < 0 || offset > payloadSize) {
+            throw new IOException(String.format("range at %d of length %d is outside the %d byte payload", offset, length, payloadSize));
+        }
+        long end = Math.min(payloadSize, offset + Math.min(length, Long.MAX_VALUE - offset));
+        if (end == offset) {
+            return;
+        }
+        int first = segmentAt(offset);
+        int last = segmentAt(end - 1);
+        decryptSegments(payloadKey, first, last + 1, executor, segmentsInFlight, (index, plaintext) -> {
+            long segmentStart = plaintextOffsets[index];
+            int from = (int) (Math.max(offset, segmentStart) - segmentStart);
+            int to = (int) (Math.min(end, segmentStart + plaintext.length) - segmentStart);
+            outputStream.write(plaintext, from, to - from);
+        });
+    }
+
+    private int segmentAt(long plaintextOffset) {
+        int index = Arrays.binarySearch(plaintextOffsets, plaintextOffset);
+        // segments of zero length share an offset with the next; skip to the last segment starting at the offset
+        if (index >= 0) {
+            while (index + 1 < plaintextOffsets.length && plaintextOffsets[index + 1] == plaintextOffset) {
+                index++;
+            }
+            return index;
+        }
+        return -index - 2;
+    }
+
+    /**
+     * Decrypts a run of segments, passing them to the consumer in order. Segments are read on the calling thread,
+     * since the channel is not safe for concurrent use, and decrypted on the executor; a bounded queue of pending
+     * results in segment order acts as the reorder buffer.
+     *
+     * @param payloadKey the payload key
+     * @param first index of the first segment
+     * @param end index after the last segment
+     * @param executor executor decrypting segments concurrently; null to decrypt on the calling thread
+     * @param segmentsInFlight maximum number of segments read ahead of the consumer
+     * @param consumer receives each decrypted segment
+     * @throws IOException if a segment cannot be read, fails its integrity check or cannot be decrypted
+     */
+    void decryptSegments(byte[] payloadKey, int first, int end, ExecutorService executor, int segmentsInFlight,
+                         SegmentConsumer consumer) throws IOException {
+        if (executor == null) {
+            for (int index = first; index < end; index++) {
+                consumer.accept(index, decryptSegment(payloadKey, index, readSegment(index)));
+            }
+            return;
+        }
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            int next = first;
+            for (int index = first; index < end; index++) {
+                int segmentIndex = index;
+                byte[] encrypted = readSegment(index);
+                pending.add(executor.submit(() -> decryptSegment(payloadKey, segmentIndex, encrypted)));
+                if (pending.size() >= segmentsInFlight) {
+                    consumer.accept(next++, await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(next++, await(pending.poll()));
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for segment decryption");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+    }
+
+    private byte[] readSegment(int index) throws IOException {
+        long encryptedSize = manifest.getSegments().get(index).encryptedSize();
+        if (encryptedSize < GCM_IV_LENGTH + GCM_TAG_LENGTH || encryptedSize > Integer.MAX_VALUE) {
+            throw new IOException("invalid ZTDF segment " + index + " size " + encryptedSize);
+        }
+        ByteBuffer segment = ByteBuffer.allocate((int) encryptedSize);
+        readFully(channel, payloadOffset + segmentOffsets[index], segment);
+        return segment.array();
+    }
+
+    /**
+     * Checks a segment against its recorded hash and decrypts it.
+     *
+     * @param payloadKey the payload key
+     * @param index index of the segment
+     * @param encrypted IV, ciphertext and authentication tag of the segment
+     * @return the plaintext of the segment
+     * @throws IOException if the segment fails its integrity check or cannot be decrypted
+     */
+    byte[] decryptSegment(byte[] payloadKey, int index, byte[] encrypted) throws IOException {
+        ZTDFManifest.Segment segment = manifest.getSegments().get(index);
+        if (!matches(signature(manifest.getSegmentHashAlgorithm(), payloadKey, encrypted), segment.hash())) {
+            throw new IOException("ZTDF segment " + index + " hash mismatch");
+        }
+        byte[] plaintext;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(payloadKey, "AES"),
+                    new GCMParameterSpec(GCM_TAG_LENGTH * 8, encrypted, 0, GCM_IV_LENGTH));
+            plaintext = cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("unable to decrypt ZTDF segment " + index, e);
+        }
+        if (plaintext.length != segment.plaintextSize()) {
+            throw new IOException(String.format("ZTDF segment %d decrypted to %d bytes, expected %d", index,
+                    plaintext.length, segment.plaintextSize()));
+        }
+        return plaintext;
+    }
+
+    /**
+     * Computes a segment hash.
+     *
+     * @param algorithm GMAC, the authentication tag ending the data, or HS256, an HMAC-SHA256 keyed with the payload key
+     * @param payloadKey the payload key
+     * @param data the encrypted segment
+     * @return the signature
+     * @throws IOException if the algorithm is not supported
+     */
+    static byte[] signature(String algorithm, byte[] payloadKey, byte[] data) throws IOException {
+        if ("GMAC".equals(algorithm)) {
+            if (data.length < GCM_TAG_LENGTH) {
+                throw new IOException("data too short for a GMAC signature");
+            }
+            return Arrays.copyOfRange(data, data.length - GCM_TAG_LENGTH, data.length);
+        }
+        if ("HS256".equals(algorithm)) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(payloadKey, "HmacSHA256"));
+                return mac.doFinal(data);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+        throw new IOException("unsupported ZTDF integrity algorithm " + algorithm);
+    }
+
+    /**
+     * @param computed the computed signature
+     * @param recorded the signature recorded in the manifest, Base64 decoded
+     * @return whether the recorded signature is the computed one, raw or hex encoded
+     */
+    static boolean matches(byte[] computed, byte[] recorded) {
+        return MessageDigest.isEqual(computed, recorded) ||
+                MessageDigest.isEqual(HexFormat.of().formatHex(computed).getBytes(StandardCharsets.US_ASCII), recorded);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+        } else {
+            channel.close();
+        }
+    }
+
+    /**
+     * Passes every call to a KAS, keeping the first key unwrapped for each split id.
+     */
+    private static class KeyCapturingKAS implements SDK.KAS {
+        private final SDK.KAS delegate;
+        private final Map<String, byte[]> splitKeys = new ConcurrentHashMap<>();
+
+        private KeyCapturingKAS(SDK.KAS delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Config.KASInfo getPublicKey(Config.KASInfo kasInfo) {
+            return delegate.getPublicKey(kasInfo);
+        }
+
+        @Override
+        public Config.KASInfo getECPublicKey(Config.KASInfo kasInfo, NanoTDFType.ECCurve curve) {
+            return delegate.getECPublicKey(kasInfo, curve);
+        }
+
+        @Override
+        public byte[] unwrap(Manifest.KeyAccess keyAccess, String policy, KeyType sessionKeyType) {
+            byte[] splitKey = delegate.unwrap(keyAccess, policy, sessionKeyType);
+            splitKeys.putIfAbsent(keyAccess.sid == null ? "" : keyAccess.sid, splitKey.clone());
+            return splitKey;
+        }
+
+        @Override
+        public byte[] unwrapNanoTDF(NanoTDFType.ECCurve curve, String header, String kasURL) {
+            return delegate.unwrapNanoTDF(curve, header, kasURL);
+        }
+
+        @Override
+        public KASKeyCache getKeyCache() {
+            return delegate.getKeyCache();
+        }
+
+        /**
+         * The wrapped KAS is owned by the caller.
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
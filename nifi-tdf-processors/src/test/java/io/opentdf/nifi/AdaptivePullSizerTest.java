@@ -0,0 +1,72 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.FlowFileFilter;
+import org.apache.nifi.processor.FlowFileFilter.FlowFileFilterResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdaptivePullSizerTest {
+
+    static FlowFile flowFile(long size) {
+        FlowFile flowFile = mock(FlowFile.class);
+        when(flowFile.getSize()).thenReturn(size);
+        return flowFile;
+    }
+
+    @Test
+    void testFilterBoundedByCount() {
+        FlowFileFilter filter = new AdaptivePullSizer(2, 10, 1000, TimeUnit.SECONDS.toNanos(1)).newFilter();
+        assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(flowFile(10)));
+        assertEquals(FlowFileFilterResult.ACCEPT_AND_TERMINATE, filter.filter(flowFile(10)));
+    }
+
+    @Test
+    void testFilterBoundedByBytes() {
+        FlowFileFilter filter = new AdaptivePullSizer(10, 10, 1000, TimeUnit.SECONDS.toNanos(1)).newFilter();
+        assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(flowFile(600)));
+        assertEquals(FlowFileFilterResult.REJECT_AND_TERMINATE, filter.filter(flowFile(600)));
+
+        filter = new AdaptivePullSizer(10, 10, 1000, TimeUnit.SECONDS.toNanos(1)).newFilter();
+        assertEquals(FlowFileFilterResult.ACCEPT_AND_TERMINATE, filter.filter(flowFile(5000)),
+                "content larger than the budget is pulled on its own");
+    }
+
+    @Test
+    void testCountFollowsLatency() {
+        AdaptivePullSizer sizer = new AdaptivePullSizer(4, 100, Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(100));
+        // 1 ms per FlowFile with a backlog grows the count, at most twofold per batch
+        sizer.record(4, TimeUnit.MILLISECONDS.toNanos(4), 1000);
+        assertEquals(8, sizer.getCount());
+        sizer.record(8, TimeUnit.MILLISECONDS.toNanos(8), 1000);
+        assertEquals(16, sizer.getCount());
+
+        // no growth without a backlog
+        sizer.record(16, TimeUnit.MILLISECONDS.toNanos(16), 0);
+        assertEquals(16, sizer.getCount());
+
+        // slow batches shrink the count immediately
+        sizer.record(16, TimeUnit.MILLISECONDS.toNanos(16 * 50), 1000);
+        assertTrue(sizer.getCount() < 16);
+        for (int i = 0; i < 20; i++) {
+            sizer.record(sizer.getCount(), TimeUnit.MILLISECONDS.toNanos(sizer.getCount() * 50L), 1000);
+        }
+        assertEquals(2, sizer.getCount());
+    }
+
+    @Test
+    void testCountCappedByMaximum() {
+        AdaptivePullSizer sizer = new AdaptivePullSizer(50, 10, Long.MAX_VALUE, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(10, sizer.getCount());
+        for (int i = 0; i < 10; i++) {
+            sizer.record(10, 10, 1000);
+        }
+        assertEquals(10, sizer.getCount());
+        sizer.record(1, TimeUnit.SECONDS.toNanos(10), 1000);
+        assertEquals(1, sizer.getCount());
+    }
+}
@@ -0,0 +1,121 @@
+package io.opentdf.nifi;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.opentdf.platform.policy.attributes.AttributesServiceGrpc;
+import io.opentdf.platform.policy.attributes.GetAttributeValuesByFqnsRequest;
+import io.opentdf.platform.policy.attributes.GetAttributeValuesByFqnsResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AttributeLookupCacheInterceptorTest {
+
+    static final String FQN = "https://example.org/attr/one/value/a";
+
+    Channel mockChannel;
+    ClientCall<GetAttributeValuesByFqnsRequest, GetAttributeValuesByFqnsResponse> mockCall;
+    ExpiringAttributeLookupCache cache;
+    AttributeLookupCacheInterceptor interceptor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        mockChannel = mock(Channel.class);
+        mockCall = mock(ClientCall.class);
+        when(mockChannel.newCall(any(), any())).thenAnswer(invocation -> mockCall);
+        cache = new ExpiringAttributeLookupCache(16, Long.MAX_VALUE, Long.MAX_VALUE);
+        interceptor = new AttributeLookupCacheInterceptor(cache);
+    }
+
+    static GetAttributeValuesByFqnsRequest request(String fqn) {
+        return GetAttributeValuesByFqnsRequest.newBuilder().addFqns(fqn).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    ClientCall.Listener<GetAttributeValuesByFqnsResponse> call(GetAttributeValuesByFqnsRequest request) {
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> listener = mock(ClientCall.Listener.class);
+        ClientCall<GetAttributeValuesByFqnsRequest, GetAttributeValuesByFqnsResponse> call =
+                interceptor.interceptCall(AttributesServiceGrpc.getGetAttributeValuesByFqnsMethod(), CallOptions.DEFAULT, mockChannel);
+        call.start(listener, new Metadata());
+        call.request(1);
+        call.sendMessage(request);
+        call.halfClose();
+        return listener;
+    }
+
+    @SuppressWarnings("unchecked")
+    ClientCall.Listener<GetAttributeValuesByFqnsResponse> platformListener() {
+        ArgumentCaptor<ClientCall.Listener<GetAttributeValuesByFqnsResponse>> captor = ArgumentCaptor.forClass(ClientCall.Listener.class);
+        verify(mockCall, atLeastOnce()).start(captor.capture(), any());
+        return captor.getValue();
+    }
+
+    @Test
+    void testResponseCachedByRequest() {
+        GetAttributeValuesByFqnsResponse response = GetAttributeValuesByFqnsResponse.getDefaultInstance();
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> first = call(request(FQN));
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> platform = platformListener();
+        platform.onMessage(response);
+        platform.onClose(Status.OK, new Metadata());
+        verify(first).onMessage(response);
+        verify(first).onClose(eq(Status.OK), any());
+
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> second = call(request(FQN));
+        verify(second).onMessage(response);
+        verify(second).onClose(eq(Status.OK), any());
+        verify(mockChannel, times(1)).newCall(any(), any());
+        assertEquals(1, cache.getResponses().getHits());
+
+        call(request("https://example.org/attr/one/value/b"));
+        verify(mockChannel, times(2)).newCall(any(), any());
+    }
+
+    @Test
+    void testNotFoundNegativelyCached() {
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> first = call(request(FQN));
+        platformListener().onClose(Status.NOT_FOUND, new Metadata());
+        verify(first).onClose(eq(Status.NOT_FOUND), any());
+
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> second = call(request(FQN));
+        verify(second).onClose(eq(Status.NOT_FOUND), any());
+        verify(second, never()).onMessage(any());
+        verify(mockChannel, times(1)).newCall(any(), any());
+    }
+
+    @Test
+    void testTransientFailureNotCached() {
+        call(request(FQN));
+        platformListener().onClose(Status.UNAVAILABLE, new Metadata());
+        call(request(FQN));
+        verify(mockChannel, times(2)).newCall(any(), any());
+        assertEquals(0, cache.getResponses().size());
+        assertEquals(0, cache.getRejections().size());
+    }
+
+    @Test
+    void testCacheSharedAcrossInterceptors() {
+        GetAttributeValuesByFqnsResponse response = GetAttributeValuesByFqnsResponse.getDefaultInstance();
+        call(request(FQN));
+        platformListener().onMessage(response);
+        platformListener().onClose(Status.OK, new Metadata());
+
+        interceptor = new AttributeLookupCacheInterceptor(cache);
+        ClientCall.Listener<GetAttributeValuesByFqnsResponse> second = call(request(FQN));
+        verify(second).onMessage(response);
+        verify(mockChannel, times(1)).newCall(any(), any());
+    }
+
+    @Test
+    void testOtherMethodsPassThrough() {
+        interceptor.interceptCall(AttributesServiceGrpc.getListAttributesMethod(), CallOptions.DEFAULT, mockChannel);
+        verify(mockChannel).newCall(eq(AttributesServiceGrpc.getListAttributesMethod()), any());
+    }
+}
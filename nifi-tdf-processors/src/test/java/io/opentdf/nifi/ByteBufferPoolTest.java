@@ -0,0 +1,85 @@
+package io.opentdf.nifi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteBufferPoolTest {
+
+    @Test
+    void testBuffersReusedWithinSizeClass() {
+        ByteBufferPool pool = new ByteBufferPool(1 << 20, 2, false);
+        ByteBuffer first = pool.acquire(100);
+        assertEquals(1024, first.capacity());
+        assertEquals(100, first.limit());
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(1000);
+        assertSame(first, second, "buffer reused from the 1 KiB class");
+        assertEquals(1000, second.limit());
+        assertEquals(0, second.position());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    void testOversizedBuffersAreNotPooled() {
+        ByteBufferPool pool = new ByteBufferPool(4096, 2, false);
+        ByteBuffer large = pool.acquire(5000);
+        assertEquals(5000, large.capacity());
+        pool.release(large);
+        assertNotSame(large, pool.acquire(5000));
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void testPoolBoundedPerSizeClass() {
+        ByteBufferPool pool = new ByteBufferPool(4096, 1, true);
+        ByteBuffer a = pool.acquire(2000);
+        ByteBuffer b = pool.acquire(2000);
+        assertTrue(a.isDirect());
+        pool.release(a);
+        pool.release(b);
+        assertSame(a, pool.acquire(2000));
+        assertNotSame(b, pool.acquire(2000), "second idle buffer was dropped");
+    }
+
+    @Test
+    void testPoolBoundedByRetainedBytes() {
+        ByteBufferPool pool = new ByteBufferPool(1 << 20, 16, 3 * 1024 * 1024, true);
+        ByteBuffer[] large = new ByteBuffer[4];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = pool.acquire(1 << 20);
+        }
+        ByteBuffer small = pool.acquire(1000);
+        for (ByteBuffer buffer : large) {
+            pool.release(buffer);
+        }
+        assertEquals(3 * 1024 * 1024, pool.getRetainedBytes(), "fourth 1 MiB buffer dropped");
+        pool.release(small);
+        assertEquals(3 * 1024 * 1024, pool.getRetainedBytes(), "no room left for a 1 KiB buffer");
+
+        assertSame(large[0], pool.acquire(1 << 20));
+        assertEquals(2 * 1024 * 1024, pool.getRetainedBytes());
+        pool.release(small);
+        assertEquals(2 * 1024 * 1024 + 1024, pool.getRetainedBytes(), "room freed by the acquisition");
+        assertSame(small, pool.acquire(10));
+    }
+
+    @Test
+    void testFill() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(4096, 1, false);
+        ByteBuffer buffer = pool.acquire(5);
+        ByteBufferPool.fill(new ByteArrayInputStream("hello world".getBytes()), buffer);
+        byte[] read = new byte[buffer.remaining()];
+        buffer.get(read);
+        assertEquals("hello", new String(read));
+
+        ByteBuffer direct = new ByteBufferPool(4096, 1, true).acquire(20);
+        assertThrows(EOFException.class, () -> ByteBufferPool.fill(new ByteArrayInputStream("short".getBytes()), direct));
+    }
+}
@@ -0,0 +1,108 @@
+package io.opentdf.nifi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedNanoTDFTest {
+
+    final ByteBufferPool pool = new ByteBufferPool(1 << 20, 2, false);
+
+    static final ChunkedNanoTDF.ChunkTransform ENCRYPT = (chunk, outputStream) -> {
+        outputStream.write("TDF:".getBytes());
+        byte[] b = new byte[chunk.remaining()];
+        chunk.get(b);
+        outputStream.write(b);
+    };
+
+    static final ChunkedNanoTDF.ChunkTransform DECRYPT = (chunk, outputStream) -> {
+        byte[] b = new byte[chunk.remaining()];
+        chunk.get(b);
+        assertEquals("TDF:", new String(b, 0, 4));
+        outputStream.write(b, 4, b.length - 4);
+    };
+
+    byte[] write(byte[] plaintext, int chunkSize) throws IOException {
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        ChunkedNanoTDF.write(new ByteArrayInputStream(plaintext), plaintext.length, chunked, chunkSize, pool, ENCRYPT);
+        return chunked.toByteArray();
+    }
+
+    byte[] read(byte[] chunked) throws IOException {
+        PushbackInputStream inputStream = new PushbackInputStream(new ByteArrayInputStream(chunked), ChunkedNanoTDF.MAGIC.length);
+        assertTrue(ChunkedNanoTDF.readMagic(inputStream));
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        ChunkedNanoTDF.read(inputStream, plaintext, pool, DECRYPT);
+        return plaintext.toByteArray();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        byte[] plaintext = "abcdefghij".getBytes();
+        byte[] chunked = write(plaintext, 4);
+        // magic, three chunks of 4 + 4, 4 + 4 and 4 + 2 bytes with their lengths, and the final zero length
+        assertEquals(ChunkedNanoTDF.MAGIC.length + 3 * 4 + 8 + 8 + 6 + 4, chunked.length);
+        assertArrayEquals(ChunkedNanoTDF.MAGIC, Arrays.copyOf(chunked, ChunkedNanoTDF.MAGIC.length));
+        assertArrayEquals(plaintext, read(chunked));
+        assertArrayEquals(new byte[0], read(write(new byte[0], 4)));
+    }
+
+    @Test
+    void testBufferedRoundTrip() throws IOException {
+        byte[] plaintext = "abcdefghij".getBytes();
+        ByteBuffer content = ByteBuffer.allocateDirect(64);
+        content.put(write(plaintext, 4)).flip();
+        assertTrue(ChunkedNanoTDF.readMagic(content));
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        ChunkedNanoTDF.read(content, decrypted, DECRYPT);
+        assertArrayEquals(plaintext, decrypted.toByteArray());
+        assertFalse(content.hasRemaining());
+
+        ByteBuffer nanoTDF = ByteBuffer.wrap("L1Lpayload".getBytes());
+        assertFalse(ChunkedNanoTDF.readMagic(nanoTDF));
+        assertEquals(0, nanoTDF.position());
+
+        byte[] chunked = write(plaintext, 4);
+        ByteBuffer truncated = ByteBuffer.wrap(chunked, 0, chunked.length - 6);
+        assertTrue(ChunkedNanoTDF.readMagic(truncated));
+        assertThrows(EOFException.class, () -> ChunkedNanoTDF.read(truncated, new ByteArrayOutputStream(), DECRYPT));
+    }
+
+    @Test
+    void testNanoTDFIsNotChunked() throws IOException {
+        byte[] nanoTDF = "L1Lpayload".getBytes();
+        PushbackInputStream inputStream = new PushbackInputStream(new ByteArrayInputStream(nanoTDF), ChunkedNanoTDF.MAGIC.length);
+        assertFalse(ChunkedNanoTDF.readMagic(inputStream));
+        assertArrayEquals(nanoTDF, inputStream.readAllBytes(), "leading bytes pushed back");
+
+        inputStream = new PushbackInputStream(new ByteArrayInputStream("L1".getBytes()), ChunkedNanoTDF.MAGIC.length);
+        assertFalse(ChunkedNanoTDF.readMagic(inputStream));
+        assertArrayEquals("L1".getBytes(), inputStream.readAllBytes());
+    }
+
+    @Test
+    void testTruncatedChunkedNanoTDF() throws IOException {
+        byte[] chunked = write("abcdefghij".getBytes(), 4);
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(chunked, chunked.length - 4)), "missing final chunk");
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(chunked, chunked.length - 6)), "partial chunk");
+    }
+
+    @Test
+    void testInvalidChunkLength() throws IOException {
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(chunked);
+        dataOutputStream.write(ChunkedNanoTDF.MAGIC);
+        dataOutputStream.writeInt(-1);
+        IOException e = assertThrows(IOException.class, () -> read(chunked.toByteArray()));
+        assertTrue(e.getMessage().contains("chunk length"));
+    }
+}
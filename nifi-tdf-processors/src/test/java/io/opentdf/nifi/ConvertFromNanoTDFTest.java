@@ -1,9 +1,11 @@
 package io.opentdf.nifi;
 
 import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.NanoTDFType;
 import io.opentdf.platform.sdk.SDK;
 import io.opentdf.platform.sdk.SDKBuilder;
 import nl.altindag.ssl.util.KeyStoreUtils;
+import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.ssl.SSLContextService;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
@@ -12,17 +14,23 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class ConvertFromNanoTDFTest {
@@ -72,6 +80,8 @@ class ConvertFromNanoTDFTest {
         when(mockSDKBuilder.clientSecret("my-client", "123-456")).thenReturn(mockSDKBuilder);
         when(mockSDKBuilder.sslFactoryFromKeyStore(TRUST_STORE_PATH, TRUST_STORE_PASSWORD)).thenReturn(mockSDKBuilder);
         when(mockSDKBuilder.build()).thenReturn(mockSDK);
+        when(mockKAS.unwrapNanoTDF(any(), anyString(), anyString()))
+                .thenAnswer(invocationOnMock -> ((String) invocationOnMock.getArgument(1)).getBytes());
 
         ArgumentCaptor<ByteBuffer> byteBufferCapture = ArgumentCaptor.forClass(ByteBuffer.class);
         ArgumentCaptor<OutputStream> outputStreamArgumentCaptor = ArgumentCaptor.forClass(OutputStream.class);
@@ -81,9 +91,12 @@ class ConvertFromNanoTDFTest {
             ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
             OutputStream outputStream = invocationOnMock.getArgument(1);
             SDK.KAS kas = invocationOnMock.getArgument(2);
-            outputStream.write(("Decrypted:" + new String(byteBuffer.array())).getBytes());
+            byte[] nanoTDFBytes = new byte[byteBuffer.remaining()];
+            byteBuffer.get(nanoTDFBytes);
+            outputStream.write(("Decrypted:" + new String(nanoTDFBytes)).getBytes());
             assertNotNull(kas, "KAS is not null");
-            assertSame(mockKAS, kas, "Expected KAS passed in");
+            // the processor KAS wraps the SDK KAS
+            assertArrayEquals(nanoTDFBytes, kas.unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, new String(nanoTDFBytes), "https://kas1"));
             return null;
         }).when(mockNanoTDF).readNanoTDF(byteBufferCapture.capture(),
                 outputStreamArgumentCaptor.capture(),
@@ -99,11 +112,184 @@ class ConvertFromNanoTDFTest {
         assertEquals(1, flowFileList.stream().filter(x -> x.getAttribute("filename").equals(messageTwo.getAttribute("filename")))
                 .filter(x -> x.getContent().equals("Decrypted:message two")).count());
 
+        // both reads borrowed from the pool; the second reused the buffer released by the first
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ByteBufferPool.HITS_COUNTER));
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ByteBufferPool.MISSES_COUNTER));
+
+        // processor owned SDK is built once at schedule time and closed when the processor stops
+        verify(mockSDKBuilder, times(1)).build();
+        verify(mockSDK, times(1)).close();
+    }
+
+    @Test
+    void testUnwrappedKeyCachedByHeader() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        SDK.KAS mockKAS = mock(SDK.KAS.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+        when(mockKAS.unwrapNanoTDF(eq(NanoTDFType.ECCurve.SECP256R1), anyString(), eq("https://kas1")))
+                .thenAnswer(invocationOnMock -> ("key:" + invocationOnMock.getArgument(1)).getBytes());
+
+        // the NanoTDF content stands in for its header
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            SDK.KAS kas = invocationOnMock.getArgument(2);
+            byte[] header = new byte[byteBuffer.remaining()];
+            byteBuffer.get(header);
+            outputStream.write(kas.unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, new String(header), "https://kas1"));
+            return null;
+        }).when(mockNanoTDF).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+
+        runner.enqueue("header a".getBytes());
+        runner.enqueue("header a".getBytes());
+        runner.enqueue("header b".getBytes());
+        runner.enqueue("header a".getBytes());
+        runner.run(1);
+
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertFromNanoTDF.REL_SUCCESS);
+        assertEquals(4, flowFileList.size());
+        flowFileList.get(0).assertContentEquals("key:header a");
+        flowFileList.get(2).assertContentEquals("key:header b");
+        flowFileList.get(3).assertContentEquals("key:header a");
+        verify(mockKAS, times(1)).unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, "header a", "https://kas1");
+        verify(mockKAS, times(1)).unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, "header b", "https://kas1");
+        assertEquals(Long.valueOf(2), runner.getCounterValue(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER + " Hits"));
+        assertEquals(Long.valueOf(2), runner.getCounterValue(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER + " Misses"));
+    }
+
+    @Test
+    void testUnwrappedKeyCacheDisabled() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        runner.setProperty(ConvertFromNanoTDF.UNWRAP_CACHE_ENABLED, "false");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        SDK.KAS mockKAS = mock(SDK.KAS.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+        when(mockKAS.unwrapNanoTDF(any(), anyString(), anyString())).thenReturn("key".getBytes());
+
+        doAnswer(invocationOnMock -> {
+            SDK.KAS kas = invocationOnMock.getArgument(2);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            outputStream.write(kas.unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, "header", "https://kas1"));
+            return null;
+        }).when(mockNanoTDF).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+
+        runner.enqueue("one".getBytes());
+        runner.enqueue("two".getBytes());
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertFromNanoTDF.REL_SUCCESS, 2);
+        verify(mockKAS, times(2)).unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, "header", "https://kas1");
+        assertNull(runner.getCounterValue(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER + " Hits"));
+    }
+
+    @Test
+    void testMetrics() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        SDK.KAS mockKAS = mock(SDK.KAS.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+        when(mockKAS.unwrapNanoTDF(any(), anyString(), anyString())).thenReturn("plaintext".getBytes());
+
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            SDK.KAS kas = invocationOnMock.getArgument(2);
+            byte[] header = new byte[byteBuffer.remaining()];
+            byteBuffer.get(header);
+            if (new String(header).equals("bad")) {
+                throw new IllegalStateException("bad header");
+            }
+            outputStream.write(kas.unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, new String(header), "https://kas1"));
+            return null;
+        }).when(mockNanoTDF).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+
+        runner.enqueue("header a".getBytes());
+        runner.enqueue("header a".getBytes());
+        runner.enqueue("bad".getBytes());
+        runner.run(1);
+
+        runner.assertTransferCount(ConvertFromNanoTDF.REL_SUCCESS, 2);
+        runner.assertTransferCount(ConvertFromNanoTDF.REL_FAILURE, 1);
+        assertEquals(Long.valueOf(16), runner.getCounterValue(ProcessorMetrics.BYTES_IN_COUNTER));
+        assertEquals(Long.valueOf(18), runner.getCounterValue(ProcessorMetrics.BYTES_OUT_COUNTER));
+        assertEquals(Long.valueOf(2), runner.getCounterValue(ProcessorMetrics.TRANSFORMS_COUNTER));
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ProcessorMetrics.KAS_REWRAP_COUNTER), "second unwrap served from cache");
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ProcessorMetrics.BATCHES_COUNTER));
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ProcessorMetrics.FAILURES_COUNTER_PREFIX + "IllegalStateException"));
+
+        Map<String, Number> metrics = ((MockRunner) runner.getProcessor()).getMetricsSnapshot();
+        assertEquals(0.5, metrics.get(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER + " Hit Rate").doubleValue());
+        assertEquals(3L, metrics.get("Batch Size p50"));
+        assertTrue(metrics.containsKey("KAS Rewrap Time p99 (ms)"));
+    }
+
+    @Test
+    void testChunkedNanoTDF() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        Utils.setupTDFControllerService(runner);
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            byte[] nanoTDF = new byte[byteBuffer.remaining()];
+            byteBuffer.get(nanoTDF);
+            outputStream.write(new String(nanoTDF).replace("TDF:", "").getBytes());
+            return null;
+        }).when(mockNanoTDF).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        byte[] plaintext = "a chunked message".getBytes();
+        ChunkedNanoTDF.write(new ByteArrayInputStream(plaintext), plaintext.length, chunked, 5,
+                new ByteBufferPool(1024, 0, false), (chunk, outputStream) -> {
+                    byte[] b = new byte[chunk.remaining()];
+                    chunk.get(b);
+                    outputStream.write(("TDF:" + new String(b)).getBytes());
+                });
+        byte[] content = chunked.toByteArray();
+        runner.enqueue(content);
+        // truncated before the final chunk
+        runner.enqueue(Arrays.copyOf(content, content.length - 4));
+        runner.run(1);
+
+        runner.assertTransferCount(ConvertFromNanoTDF.REL_SUCCESS, 1);
+        runner.assertTransferCount(ConvertFromNanoTDF.REL_FAILURE, 1);
+        runner.getFlowFilesForRelationship(ConvertFromNanoTDF.REL_SUCCESS).get(0).assertContentEquals("a chunked message");
+        verify(mockNanoTDF, times(8)).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
     }
 
     public static class MockRunner extends ConvertFromNanoTDF {
         NanoTDF mockNanoTDF;
         SDKBuilder mockSDKBuilder;
+        SDK mockSDK;
+
+        @Override
+        SDK getTDFSDK(ProcessContext processContext) {
+            return mockSDK != null ? mockSDK : super.getTDFSDK(processContext);
+        }
 
         @Override
         SDKBuilder createSDKBuilder() {
@@ -1,13 +1,18 @@
 package io.opentdf.nifi;
 
+import com.google.common.util.concurrent.Futures;
 import com.nimbusds.jose.JOSEException;
+import io.grpc.Status;
 import io.opentdf.platform.policy.kasregistry.KeyAccessServerRegistryServiceGrpc;
+import io.opentdf.platform.policy.kasregistry.ListKeyAccessServersRequest;
+import io.opentdf.platform.policy.kasregistry.ListKeyAccessServersResponse;
 import io.opentdf.platform.sdk.*;
 import io.opentdf.platform.sdk.Config;
 import io.opentdf.platform.sdk.TDF.Reader;
 import nl.altindag.ssl.util.KeyStoreUtils;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.ssl.SSLContextService;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
@@ -23,6 +28,7 @@ import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
@@ -109,7 +115,7 @@ class ConvertFromZTDFTest {
             messages.add(new String(bb.array()));
             SDK.KAS kas = invocationOnMock.getArgument(1);
             assertNotNull(kas, "KAS is not null");
-            assertSame(mockKAS, kas, "Expected KAS passed in");
+            assertSame(mockKAS, ((CachingKAS) kas).getDelegate(), "Expected KAS passed in");
             return mockReader;
         }).when(mockTDF).loadTDF(seekableByteChannelArgumentCaptor.capture(),
                 kasArgumentCaptor.capture(),
@@ -140,9 +146,237 @@ class ConvertFromZTDFTest {
         assertTrue(disableAssertionVerification);
     }
 
+    @Test
+    void testConvertFromTDF_SpillsLargeContentToDisk() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockTDF = mockTDF;
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        Utils.setupTDFControllerService(runner);
+        runner.setProperty(ConvertFromZTDF.SPILL_THRESHOLD, "4 B");
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+
+        Reader mockReader = mock(Reader.class);
+        List<String> messages = new ArrayList<>();
+        List<SeekableByteChannel> channels = new ArrayList<>();
+        doAnswer(invocationOnMock -> {
+            OutputStream outputStream = invocationOnMock.getArgument(0);
+            outputStream.write("Decrypted".getBytes());
+            return null;
+        }).when(mockReader).readPayload(any(OutputStream.class));
+        doAnswer(invocationOnMock -> {
+            SeekableByteChannel seekableByteChannel = invocationOnMock.getArgument(0);
+            channels.add(seekableByteChannel);
+            ByteBuffer bb = ByteBuffer.allocate((int) seekableByteChannel.size());
+            seekableByteChannel.position(0);
+            seekableByteChannel.read(bb);
+            messages.add(new String(bb.array()));
+            return mockReader;
+        }).when(mockTDF).loadTDF(any(SeekableByteChannel.class), any(SDK.KAS.class), any(Config.TDFReaderConfig.class),
+                nullable(KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub.class), nullable(String.class));
+
+        runner.enqueue("abc".getBytes());
+        runner.enqueue("message spilled to disk".getBytes());
+        runner.run(1);
+
+        assertEquals(2, runner.getFlowFilesForRelationship(ConvertFromZTDF.REL_SUCCESS).size());
+        assertEquals(List.of("abc", "message spilled to disk"), messages);
+        assertInstanceOf(SeekableInMemoryByteChannel.class, channels.get(0), "small content stays in memory");
+        assertInstanceOf(FileChannel.class, channels.get(1), "large content is read from a spill file");
+        assertFalse(channels.get(1).isOpen(), "spill channel closed after decrypt");
+    }
+
+    /**
+     * Sets up a runner decrypting with a real TDF reader, whose KAS allowlist is built from a registry listing the
+     * given KAS URLs and the platform URL.
+     */
+    TestRunner sdkReaderRunner(SDK.KAS kas, String... allowedKasUrls) throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockTDF = new TDF();
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        Utils.setupTDFControllerService(runner);
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockSDK.getPlatformUrl()).thenReturn(ZTDFPayloadReaderTest.PLATFORM_URL);
+        when(mockServices.kas()).thenReturn(kas);
+        when(mockServices.kasRegistry()).thenReturn(ZTDFPayloadReaderTest.kasRegistry(allowedKasUrls));
+        return runner;
+    }
+
+    @Test
+    void testConvertFromTDF_ParallelDecryption() throws Exception {
+        TestRunner runner = sdkReaderRunner(ZTDFPayloadReaderTest.kas(), ZTDFPayloadReaderTest.KAS_URL);
+        runner.setProperty(ConvertFromZTDF.PARALLEL_DECRYPTION, "true");
+        runner.setProperty(ConvertFromZTDF.SEGMENTS_IN_FLIGHT, "2");
+        runner.assertValid();
+
+        byte[] payload = ZTDFPayloadReaderTest.payload(200_000);
+        byte[] tdf = ZTDFPayloadReaderTest.createTDF(payload, 16 * 1024, Config.IntegrityAlgorithm.HS256);
+        byte[] tampered = tdf.clone();
+        tampered[16 * 1024 + 300] ^= 1;
+        runner.enqueue(tdf);
+        runner.enqueue(tampered);
+        runner.run(1);
+
+        runner.assertTransferCount(ConvertFromZTDF.REL_SUCCESS, 1);
+        runner.assertTransferCount(ConvertFromZTDF.REL_FAILURE, 1);
+        assertArrayEquals(payload, runner.getFlowFilesForRelationship(ConvertFromZTDF.REL_SUCCESS).get(0).toByteArray());
+    }
+
+    @Test
+    void testConvertFromTDF_ParallelDecryptionUnlistedKAS() throws Exception {
+        SDK.KAS kas = ZTDFPayloadReaderTest.kas();
+        TestRunner runner = sdkReaderRunner(kas, "https://other.kas");
+        runner.setProperty(ConvertFromZTDF.PARALLEL_DECRYPTION, "true");
+        runner.assertValid();
+
+        runner.enqueue(ZTDFPayloadReaderTest.createTDF(ZTDFPayloadReaderTest.payload(40_000), 16 * 1024, Config.IntegrityAlgorithm.GMAC));
+        runner.run(1);
+
+        runner.assertTransferCount(ConvertFromZTDF.REL_FAILURE, 1);
+        verify(kas, never()).unwrap(any(), any(), any());
+    }
+
+    @Test
+    void testConvertFromTDF_ByteRange() throws Exception {
+        TestRunner runner = sdkReaderRunner(ZTDFPayloadReaderTest.kas(), ZTDFPayloadReaderTest.KAS_URL);
+        runner.assertValid();
+
+        byte[] payload = ZTDFPayloadReaderTest.payload(200_000);
+        byte[] tdf = ZTDFPayloadReaderTest.createTDF(payload, 16 * 1024, Config.IntegrityAlgorithm.GMAC);
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_OFFSET_ATTRIBUTE, "20000", ConvertFromZTDF.RANGE_LENGTH_ATTRIBUTE, "4096"));
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_OFFSET_ATTRIBUTE, "190000"));
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_LENGTH_ATTRIBUTE, "100"));
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_OFFSET_ATTRIBUTE, "200001"));
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_OFFSET_ATTRIBUTE, "abc"));
+        runner.run(1);
+
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertFromZTDF.REL_SUCCESS);
+        assertEquals(3, flowFileList.size());
+        assertArrayEquals(Arrays.copyOfRange(payload, 20000, 24096), flowFileList.get(0).toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(payload, 190000, 200000), flowFileList.get(1).toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(payload, 0, 100), flowFileList.get(2).toByteArray());
+        runner.assertTransferCount(ConvertFromZTDF.REL_FAILURE, 2);
+    }
+
+    @Test
+    void testConvertFromTDF_ByteRangeUnlistedKAS() throws Exception {
+        SDK.KAS kas = ZTDFPayloadReaderTest.kas();
+        TestRunner runner = sdkReaderRunner(kas, "https://other.kas");
+        runner.assertValid();
+
+        byte[] tdf = ZTDFPayloadReaderTest.createTDF(ZTDFPayloadReaderTest.payload(40_000), 16 * 1024, Config.IntegrityAlgorithm.GMAC);
+        runner.enqueue(tdf, Map.of(ConvertFromZTDF.RANGE_OFFSET_ATTRIBUTE, "100", ConvertFromZTDF.RANGE_LENGTH_ATTRIBUTE, "10"));
+        runner.run(1);
+
+        runner.assertTransferCount(ConvertFromZTDF.REL_FAILURE, 1);
+        runner.getFlowFilesForRelationship(ConvertFromZTDF.REL_FAILURE).get(0).assertContentEquals(tdf);
+        verify(kas, never()).unwrap(any(), any(), any());
+    }
+
+    @Test
+    void testConvertFromTDF_SDKBuildFailureAtScheduleTolerated() throws Exception {
+        SDKBuilder mockSDKBuilder = mock(SDKBuilder.class);
+        TestRunner runner = ownedSDKRunner(mockSDKBuilder);
+        runner.setProperty(AbstractTDFProcessor.CONCURRENT_TRANSFORMS, "2");
+        when(mockSDKBuilder.build()).thenThrow(new IllegalStateException("platform unavailable")).thenReturn(mockSDK);
+
+        // the failed SDK build is logged rather than failing the schedule
+        runner.run(1);
+        verify(mockSDKBuilder, times(1)).build();
+        assertTrue(runner.getLogger().getWarnMessages().stream().anyMatch(x -> x.getMsg().contains("warm up failed")),
+                "warm up failure logged");
+
+        runner.run(1);
+        verify(mockSDKBuilder, times(2)).build();
+        verify(mockSDK, times(1)).close();
+    }
+
+    @Test
+    void testConvertFromTDF_WarmUpCallsPlatform() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockTDF = mockTDF;
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+        SDK.Services mockServices = mock(SDK.Services.class);
+        KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub mockKasRegistry =
+                mock(KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kasRegistry()).thenReturn(mockKasRegistry);
+        when(mockKasRegistry.listKeyAccessServers(any(ListKeyAccessServersRequest.class)))
+                .thenReturn(Futures.immediateFuture(ListKeyAccessServersResponse.getDefaultInstance()));
+
+        // scheduling makes an authenticated call before any FlowFile arrives
+        runner.run(1);
+        verify(mockKasRegistry, times(1)).listKeyAccessServers(any(ListKeyAccessServersRequest.class));
+        assertTrue(runner.getLogger().getWarnMessages().isEmpty(), "warm up succeeded");
+
+        // a credential without registry permission has still connected and acquired its token
+        when(mockKasRegistry.listKeyAccessServers(any(ListKeyAccessServersRequest.class)))
+                .thenReturn(Futures.immediateFailedFuture(Status.PERMISSION_DENIED.asRuntimeException()));
+        runner.run(1);
+        verify(mockKasRegistry, times(2)).listKeyAccessServers(any(ListKeyAccessServersRequest.class));
+        assertTrue(runner.getLogger().getWarnMessages().isEmpty(), "permission denied warm up not logged as a failure");
+
+        when(mockKasRegistry.listKeyAccessServers(any(ListKeyAccessServersRequest.class)))
+                .thenReturn(Futures.immediateFailedFuture(Status.UNAUTHENTICATED.asRuntimeException()));
+        runner.run(1);
+        assertTrue(runner.getLogger().getWarnMessages().stream().anyMatch(x -> x.getMsg().contains("warm up failed")),
+                "warm up failure logged");
+    }
+
+    @Test
+    void testConvertFromTDF_PropertyChangeClosesOwnedSDK() throws Exception {
+        SDKBuilder mockSDKBuilder = mock(SDKBuilder.class);
+        TestRunner runner = ownedSDKRunner(mockSDKBuilder);
+        when(mockSDKBuilder.build()).thenReturn(mockSDK);
+
+        runner.run(1, false);
+        verify(mockSDKBuilder, times(1)).build();
+        verify(mockSDK, never()).close();
+
+        runner.setProperty(AbstractTDFProcessor.FLOWFILE_PULL_SIZE, "5");
+        verify(mockSDK, times(1)).close();
+        runner.run(1);
+        verify(mockSDKBuilder, times(2)).build();
+    }
+
+    /**
+     * @return a runner whose processor builds its own SDK with the given builder, through an SSL Context Service
+     */
+    private TestRunner ownedSDKRunner(SDKBuilder mockSDKBuilder) throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockTDF = mockTDF;
+        ((MockRunner) runner.getProcessor()).mockSDKBuilder = mockSDKBuilder;
+        Utils.setupTDFControllerService(runner);
+        SSLContextService sslContextService = mock(SSLContextService.class);
+        when(sslContextService.validate(any())).thenReturn(Collections.emptyList());
+        when(sslContextService.getIdentifier()).thenReturn(AbstractTDFProcessor.SSL_CONTEXT_SERVICE.getName());
+        when(sslContextService.getTrustStoreFile()).thenReturn("truststore.jks");
+        when(sslContextService.getTrustStorePassword()).thenReturn("foo");
+        runner.addControllerService(AbstractTDFProcessor.SSL_CONTEXT_SERVICE.getName(), sslContextService, new HashMap<>());
+        runner.enableControllerService(sslContextService);
+        runner.setProperty(AbstractTDFProcessor.SSL_CONTEXT_SERVICE, AbstractTDFProcessor.SSL_CONTEXT_SERVICE.getName());
+        runner.assertValid();
+        when(mockSDKBuilder.platformEndpoint(any())).thenReturn(mockSDKBuilder);
+        when(mockSDKBuilder.clientSecret(any(), any())).thenReturn(mockSDKBuilder);
+        when(mockSDKBuilder.sslFactoryFromKeyStore(any(), any())).thenReturn(mockSDKBuilder);
+        return runner;
+    }
+
     public static class MockRunner extends ConvertFromZTDF {
         TDF mockTDF;
         SDKBuilder mockSDKBuilder;
+        SDK mockSDK;
+
+        @Override
+        SDK getTDFSDK(ProcessContext processContext) {
+            return mockSDK != null ? mockSDK : super.getTDFSDK(processContext);
+        }
 
         @Override
         SDKBuilder createSDKBuilder() {
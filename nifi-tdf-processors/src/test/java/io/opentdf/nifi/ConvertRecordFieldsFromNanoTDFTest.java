@@ -0,0 +1,118 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.MockRecordWriter;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ConvertRecordFieldsFromNanoTDFTest {
+    SDK mockSDK;
+    SDK.KAS mockKAS;
+    NanoTDF mockNanoTDF;
+    TestRunner runner;
+
+    @BeforeEach
+    void setup() throws Exception {
+        mockSDK = mock(SDK.class);
+        mockKAS = mock(SDK.KAS.class);
+        mockNanoTDF = mock(NanoTDF.class);
+        runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        Utils.setupTDFControllerService(runner);
+
+        MockRecordParser readerService = new MockRecordParser();
+        readerService.addSchemaField("name", RecordFieldType.STRING);
+        readerService.addSchemaField("ssn", RecordFieldType.STRING);
+        readerService.addRecord("alice", ConvertRecordFieldsToNanoTDFTest.encrypted("123-45-6789"));
+        readerService.addRecord("bob", ConvertRecordFieldsToNanoTDFTest.encrypted("987-65-4321"));
+        runner.addControllerService("reader", readerService);
+        runner.enableControllerService(readerService);
+        runner.setProperty(RecordFieldTransform.RECORD_READER, "reader");
+
+        MockRecordWriter writerService = new MockRecordWriter("name,ssn", false);
+        runner.addControllerService("writer", writerService);
+        runner.enableControllerService(writerService);
+        runner.setProperty(RecordFieldTransform.RECORD_WRITER, "writer");
+        runner.setProperty(RecordFieldTransform.RECORD_FIELDS, "${fields}");
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+        when(mockKAS.unwrapNanoTDF(any(), anyString(), anyString())).thenReturn("key".getBytes());
+
+        // every value stands in for a NanoTDF with the same header
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            SDK.KAS kas = invocationOnMock.getArgument(2);
+            byte[] b = new byte[byteBuffer.remaining()];
+            byteBuffer.get(b);
+            String nanoTDF = new String(b);
+            if (!nanoTDF.startsWith("TDF:")) {
+                throw new IllegalStateException("not a NanoTDF");
+            }
+            kas.unwrapNanoTDF(NanoTDFType.ECCurve.SECP256R1, "header", "https://kas1");
+            outputStream.write(nanoTDF.substring("TDF:".length()).getBytes());
+            return null;
+        }).when(mockNanoTDF).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+    }
+
+    @Test
+    void testSelectedFieldsDecryptedWithOneRewrapPerHeader() {
+        runner.enqueue(new byte[0], Map.of("fields", "ssn"));
+        runner.enqueue(new byte[0], Map.of("fields", "ssn"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertRecordFieldsFromNanoTDF.REL_SUCCESS, 2);
+        for (MockFlowFile flowFile : runner.getFlowFilesForRelationship(ConvertRecordFieldsFromNanoTDF.REL_SUCCESS)) {
+            flowFile.assertContentEquals("name,ssn\nalice,123-45-6789\nbob,987-65-4321\n");
+            flowFile.assertAttributeEquals(RecordFieldTransform.RECORD_COUNT_ATTRIBUTE, "2");
+        }
+        verify(mockNanoTDF, times(4)).readNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(SDK.KAS.class));
+        verify(mockKAS, times(1)).unwrapNanoTDF(eq(NanoTDFType.ECCurve.SECP256R1), eq("header"), eq("https://kas1"));
+        assertEquals(Long.valueOf(3), runner.getCounterValue(ConvertFromNanoTDF.UNWRAP_CACHE_COUNTER + " Hits"));
+    }
+
+    @Test
+    void testUndecryptableFieldRoutesToFailure() {
+        runner.enqueue(new byte[0], Map.of("fields", "name"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertRecordFieldsFromNanoTDF.REL_FAILURE, 1);
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ProcessorMetrics.FAILURES_COUNTER_PREFIX + "IllegalArgumentException"));
+    }
+
+    public static class MockRunner extends ConvertRecordFieldsFromNanoTDF {
+        SDK mockSDK;
+        NanoTDF mockNanoTDF;
+
+        @Override
+        SDK getTDFSDK(ProcessContext processContext) {
+            return mockSDK;
+        }
+
+        @Override
+        NanoTDF getNanoTDF() {
+            return mockNanoTDF;
+        }
+    }
+}
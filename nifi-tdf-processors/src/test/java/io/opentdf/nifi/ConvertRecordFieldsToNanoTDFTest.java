@@ -0,0 +1,135 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.NanoTDF;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.MockRecordWriter;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConvertRecordFieldsToNanoTDFTest {
+    SDK mockSDK;
+    NanoTDF mockNanoTDF;
+    TestRunner runner;
+
+    @BeforeEach
+    void setup() throws Exception {
+        mockSDK = mock(SDK.class);
+        mockNanoTDF = mock(NanoTDF.class);
+        runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertRecordFieldsToNanoTDF.KAS_URL, "https://kas1");
+        Utils.setupTDFControllerService(runner);
+
+        MockRecordParser readerService = new MockRecordParser();
+        readerService.addSchemaField("name", RecordFieldType.STRING);
+        readerService.addSchemaField("ssn", RecordFieldType.STRING);
+        readerService.addSchemaField("age", RecordFieldType.INT);
+        readerService.addRecord("alice", "123-45-6789", 30);
+        readerService.addRecord("bob", "987-65-4321", 40);
+        runner.addControllerService("reader", readerService);
+        runner.enableControllerService(readerService);
+        runner.setProperty(RecordFieldTransform.RECORD_READER, "reader");
+
+        MockRecordWriter writerService = new MockRecordWriter("name,ssn,age", false);
+        runner.addControllerService("writer", writerService);
+        runner.enableControllerService(writerService);
+        runner.setProperty(RecordFieldTransform.RECORD_WRITER, "writer");
+        runner.setProperty(RecordFieldTransform.RECORD_FIELDS, "ssn, age");
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+    }
+
+    static String encrypted(String plaintext) {
+        return Base64.getEncoder().encodeToString(("TDF:" + plaintext).getBytes());
+    }
+
+    @Test
+    void testSelectedFieldsEncryptedUnderOneHeaderPerBatch() throws Exception {
+        Set<Config.NanoTDFConfig> configs = ConcurrentHashMap.newKeySet();
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            Config.NanoTDFConfig config = invocationOnMock.getArgument(2);
+            byte[] b = new byte[byteBuffer.remaining()];
+            byteBuffer.get(b);
+            outputStream.write(("TDF:" + new String(b)).getBytes());
+            assertEquals(Set.of("https://example.org/attr/one/value/a"), Set.copyOf(config.attributes));
+            configs.add(config);
+            return null;
+        }).when(mockNanoTDF).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+
+        Map<String, String> attributes = Map.of(ConvertRecordFieldsToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a");
+        runner.enqueue(new byte[0], attributes);
+        runner.enqueue(new byte[0], attributes);
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertRecordFieldsToNanoTDF.REL_SUCCESS, 2);
+        String expected = "name,ssn,age\n"
+                + "alice," + encrypted("123-45-6789") + "," + encrypted("30") + "\n"
+                + "bob," + encrypted("987-65-4321") + "," + encrypted("40") + "\n";
+        for (MockFlowFile flowFile : runner.getFlowFilesForRelationship(ConvertRecordFieldsToNanoTDF.REL_SUCCESS)) {
+            flowFile.assertContentEquals(expected);
+            flowFile.assertAttributeEquals(RecordFieldTransform.RECORD_COUNT_ATTRIBUTE, "2");
+        }
+        verify(mockNanoTDF, times(8)).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+        assertEquals(1, configs.size(), "all values of the batch share one collection config");
+    }
+
+    @Test
+    void testNoDataAttributesRoutesToFailure() throws Exception {
+        runner.enqueue(new byte[0]);
+        runner.run(1);
+        runner.assertAllFlowFilesTransferred(ConvertRecordFieldsToNanoTDF.REL_FAILURE, 1);
+        verify(mockNanoTDF, never()).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+    }
+
+    @Test
+    void testWithStringFields() {
+        RecordSchema schema = RecordFieldTransform.withStringFields(new SimpleRecordSchema(List.of(
+                new RecordField("age", RecordFieldType.INT.getDataType()),
+                new RecordField("id", RecordFieldType.LONG.getDataType()))), Set.of("age"));
+        assertEquals(RecordFieldType.STRING.getDataType(), schema.getDataType("age").orElseThrow());
+        assertEquals(RecordFieldType.LONG.getDataType(), schema.getDataType("id").orElseThrow());
+        assertEquals(Set.of("a", "b"), RecordFieldTransform.parseFields(" a,,b "));
+    }
+
+    public static class MockRunner extends ConvertRecordFieldsToNanoTDF {
+        SDK mockSDK;
+        NanoTDF mockNanoTDF;
+
+        @Override
+        SDK getTDFSDK(ProcessContext processContext) {
+            return mockSDK;
+        }
+
+        @Override
+        NanoTDF getNanoTDF() {
+            return mockNanoTDF;
+        }
+    }
+}
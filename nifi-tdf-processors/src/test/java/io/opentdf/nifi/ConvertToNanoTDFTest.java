@@ -11,11 +11,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -54,10 +61,11 @@ class ConvertToNanoTDFTest {
             OutputStream outputStream = invocationOnMock.getArgument(1);
             Config.NanoTDFConfig config = invocationOnMock.getArgument(2);
             SDK.KAS kas = invocationOnMock.getArgument(3);
-            byte[] b = byteBuffer.array();
+            byte[] b = new byte[byteBuffer.remaining()];
+            byteBuffer.get(b);
             outputStream.write(("TDF:" + new String(b)).getBytes());
             assertNotNull(kas, "KAS is not null");
-            assertSame(mockKAS, kas, "Expected KAS passed in");
+            assertSame(mockKAS, ((CachingKAS) kas).getDelegate(), "Expected KAS wrapped");
             if (new String(b).equals("message two")) {
                 assertEquals(2, config.attributes.size());
                 assertTrue(config.attributes.containsAll(Arrays.asList("https://example.org/attr/one/value/a", "https://example.org/attr/one/value/b")));
@@ -107,6 +115,268 @@ class ConvertToNanoTDFTest {
         assertEquals(1, flowFileList.size(), "One flowfile for failure exceeds");
         assertEquals(1, flowFileList.stream().filter(x -> x.getAttribute("filename")
                 .equals(messageFour.getAttribute("filename"))).count());
+
+        // the second encryption reused the input buffer released by the first
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ByteBufferPool.HITS_COUNTER));
+    }
+
+    @Test
+    void testToNanoConcurrentTransforms() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(AbstractTDFProcessor.CONCURRENT_TRANSFORMS, "4");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        SDK.KAS mockKAS = mock(SDK.KAS.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+
+        Set<String> transformThreads = ConcurrentHashMap.newKeySet();
+        Set<Config.NanoTDFConfig> configs = ConcurrentHashMap.newKeySet();
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            transformThreads.add(Thread.currentThread().getName());
+            configs.add(invocationOnMock.getArgument(2));
+            byte[] b = new byte[byteBuffer.remaining()];
+            byteBuffer.get(b);
+            if (new String(b).equals("message fail")) {
+                throw new IOException("encrypt failed");
+            }
+            outputStream.write(("TDF:" + new String(b)).getBytes());
+            return null;
+        }).when(mockNanoTDF).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+
+        for (int i = 0; i < 9; i++) {
+            runner.enqueue(("message " + i).getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        }
+        MockFlowFile failing = runner.enqueue("message fail".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+
+        runner.run(1);
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertToNanoTDF.REL_SUCCESS);
+        assertEquals(9, flowFileList.size(), "Nine flowfiles for success relationship");
+        for (int i = 0; i < 9; i++) {
+            flowFileList.get(i).assertContentEquals("TDF:message " + i);
+        }
+        flowFileList = runner.getFlowFilesForRelationship(ConvertToNanoTDF.REL_FAILURE);
+        assertEquals(1, flowFileList.size(), "One flowfile for failure relationship");
+        flowFileList.get(0).assertAttributeEquals("filename", failing.getAttribute("filename"));
+        flowFileList.get(0).assertContentEquals("message fail");
+        assertFalse(transformThreads.contains(Thread.currentThread().getName()), "transforms ran on the executor");
+        assertEquals(10, configs.size(), "concurrent transforms do not share a config");
+        // content is staged straight into one pooled buffer per FlowFile
+        assertEquals(Long.valueOf(10), runner.getCounterValue(ByteBufferPool.HITS_COUNTER) +
+                runner.getCounterValue(ByteBufferPool.MISSES_COUNTER));
+    }
+
+    @Test
+    void testToNanoBufferPoolRetainedBytesCap() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(AbstractTDFProcessor.BUFFER_POOL_MAX_RETAINED, "1 KB");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            byte[] b = new byte[byteBuffer.remaining()];
+            byteBuffer.get(b);
+            outputStream.write(b);
+            return null;
+        }).when(mockNanoTDF).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+
+        runner.enqueue(new byte[1000], Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.enqueue(new byte[3000], Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.enqueue(new byte[3000], Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.enqueue(new byte[1000], Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToNanoTDF.REL_SUCCESS, 4);
+        // the 4 KiB buffers do not fit within the cap, so only the 1 KiB buffer is reused
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ByteBufferPool.HITS_COUNTER));
+        assertEquals(Long.valueOf(3), runner.getCounterValue(ByteBufferPool.MISSES_COUNTER));
+    }
+
+    @Test
+    void testToNanoCollectionMode() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(ConvertToNanoTDF.COLLECTION_MODE, "true");
+        runner.setProperty(ConvertToNanoTDF.COLLECTION_MAX_ITEMS, "3");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        SDK.KAS mockKAS = mock(SDK.KAS.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mockKAS);
+
+        List<Config.NanoTDFConfig> configs = new ArrayList<>();
+        doAnswer(invocationOnMock -> {
+            configs.add(invocationOnMock.getArgument(2));
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            outputStream.write("TDF".getBytes());
+            return null;
+        }).when(mockNanoTDF).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+
+        for (int i = 0; i < 4; i++) {
+            runner.enqueue(("message " + i).getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE,
+                    "https://example.org/attr/one/value/a,https://example.org/attr/one/value/b"));
+        }
+        // same policy with the attributes in a different order
+        runner.enqueue("message 4".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE,
+                "https://example.org/attr/one/value/b,https://example.org/attr/one/value/a"));
+        // different policy
+        runner.enqueue("message 5".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE,
+                "https://example.org/attr/one/value/c"));
+
+        runner.run(1);
+        runner.assertAllFlowFilesTransferred(ConvertToNanoTDF.REL_SUCCESS, 6);
+        assertEquals(6, configs.size());
+        assertSame(configs.get(0), configs.get(1), "items share the collection header");
+        assertSame(configs.get(0), configs.get(2), "items share the collection header");
+        assertNotSame(configs.get(0), configs.get(3), "new collection after max items");
+        assertSame(configs.get(3), configs.get(4), "attribute order does not change the policy");
+        assertNotSame(configs.get(3), configs.get(5), "one collection per policy");
+    }
+
+    @Test
+    void testToNanoCollectionMaxItemsBounds() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(ConvertToNanoTDF.COLLECTION_MODE, "true");
+        Utils.setupTDFControllerService(runner);
+        runner.setProperty(ConvertToNanoTDF.COLLECTION_MAX_ITEMS, String.valueOf(1 << 24));
+        runner.assertNotValid();
+        runner.setProperty(ConvertToNanoTDF.COLLECTION_MAX_ITEMS, String.valueOf((1 << 24) - 1));
+        runner.assertValid();
+    }
+
+    @Test
+    void testToNanoChunkSizeBounds() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(ConvertToNanoTDF.CHUNKED_MODE, "true");
+        Utils.setupTDFControllerService(runner);
+        runner.setProperty(ConvertToNanoTDF.CHUNK_SIZE, "1 B");
+        runner.assertNotValid();
+        runner.setProperty(ConvertToNanoTDF.CHUNK_SIZE, "15 KB");
+        runner.assertNotValid();
+        runner.setProperty(ConvertToNanoTDF.CHUNK_SIZE, "32 MB");
+        runner.assertNotValid();
+        runner.setProperty(ConvertToNanoTDF.CHUNK_SIZE, "16 KB");
+        runner.assertValid();
+    }
+
+    @Test
+    void testToNanoChunkedMode() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(ConvertToNanoTDF.CHUNKED_MODE, "true");
+        runner.setProperty(ConvertToNanoTDF.CHUNK_SIZE, "8 MB");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+
+        List<Config.NanoTDFConfig> configs = new ArrayList<>();
+        doAnswer(invocationOnMock -> {
+            ByteBuffer byteBuffer = invocationOnMock.getArgument(0);
+            OutputStream outputStream = invocationOnMock.getArgument(1);
+            configs.add(invocationOnMock.getArgument(2));
+            outputStream.write(("TDF:" + byteBuffer.remaining() + ";").getBytes());
+            return null;
+        }).when(mockNanoTDF).createNanoTDF(any(ByteBuffer.class), any(OutputStream.class), any(Config.NanoTDFConfig.class), any(SDK.KAS.class));
+
+        byte[] large = new byte[(int) (ConvertToNanoTDF.MAX_SIZE + 10)];
+        runner.enqueue(large, Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.enqueue("small".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToNanoTDF.REL_SUCCESS, 2);
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertToNanoTDF.REL_SUCCESS);
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        PushbackInputStream chunked = new PushbackInputStream(new ByteArrayInputStream(flowFileList.get(0).toByteArray()),
+                ChunkedNanoTDF.MAGIC.length);
+        assertTrue(ChunkedNanoTDF.readMagic(chunked));
+        ChunkedNanoTDF.read(chunked, chunks, new ByteBufferPool(1024, 0, false), (chunk, outputStream) -> {
+            byte[] b = new byte[chunk.remaining()];
+            chunk.get(b);
+            outputStream.write(b);
+        });
+        assertEquals("TDF:8388608;TDF:8388608;TDF:12;", chunks.toString());
+        flowFileList.get(1).assertContentEquals("TDF:5;");
+
+        assertEquals(4, configs.size());
+        assertSame(configs.get(0), configs.get(1), "chunks share one header");
+        assertSame(configs.get(0), configs.get(2), "chunks share one header");
+        assertNotSame(configs.get(0), configs.get(3));
+    }
+
+    @Test
+    void testAttributeParsingMemoized() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        Utils.setupTDFControllerService(runner);
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+
+        AbstractToProcessor processor = (AbstractToProcessor) runner.getProcessor();
+        AbstractToProcessor.ParsedAttribute parsed = processor.parseAttribute("https://example.org/attr/one/value/a,,https://example.org/attr/one/value/b");
+        assertEquals(List.of("https://example.org/attr/one/value/a", "https://example.org/attr/one/value/b"), parsed.values());
+        assertSame(parsed, processor.parseAttribute("https://example.org/attr/one/value/a,,https://example.org/attr/one/value/b"));
+        assertThrows(UnsupportedOperationException.class, () -> parsed.valueSet().add("https://example.org/attr/one/value/c"));
+
+        // default KAS URL and data attribute are each parsed once, then served from the cache on the second run
+        runner.enqueue("message one".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.run(1);
+        runner.enqueue("message two".getBytes(), Map.of(ConvertToNanoTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.run(1);
+        runner.assertAllFlowFilesTransferred(ConvertToNanoTDF.REL_SUCCESS, 2);
+        assertEquals(Long.valueOf(3), runner.getCounterValue(AbstractToProcessor.ATTRIBUTE_PARSE_CACHE_COUNTER + " Hits"));
+        assertEquals(Long.valueOf(3), runner.getCounterValue(AbstractToProcessor.ATTRIBUTE_PARSE_CACHE_COUNTER + " Misses"));
+    }
+
+    @Test
+    void testAdaptivePullBoundedByBytes() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertToNanoTDFTest.MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockNanoTDF = mockNanoTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        runner.setProperty(AbstractTDFProcessor.ADAPTIVE_PULL, "true");
+        runner.setProperty(AbstractTDFProcessor.PULL_BYTE_LIMIT, "1 KB");
+        Utils.setupTDFControllerService(runner);
+
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(mock(SDK.KAS.class));
+
+        for (int i = 0; i < 3; i++) {
+            runner.enqueue(new byte[600]);
+        }
+        runner.run(1);
+        runner.assertAllFlowFilesTransferred(ConvertToNanoTDF.REL_SUCCESS, 1);
+        assertEquals(2, runner.getQueueSize().getObjectCount());
     }
 
     public static class MockRunner extends ConvertToNanoTDF {
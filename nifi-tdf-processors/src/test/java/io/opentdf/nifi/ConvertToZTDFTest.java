@@ -1,10 +1,17 @@
 package io.opentdf.nifi;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
 import io.opentdf.platform.policy.attributes.AttributesServiceGrpc;
 import io.opentdf.platform.sdk.*;
 import io.opentdf.platform.sdk.Config;
 import org.apache.commons.codec.DecoderException;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.apache.commons.io.IOUtils;
 import org.apache.nifi.key.service.api.PrivateKeyService;
 import org.apache.nifi.processor.ProcessContext;
@@ -15,12 +22,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
+import java.security.interfaces.RSAPublicKey;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -147,6 +157,247 @@ class ConvertToZTDFTest {
         assertEquals(1, flowFileList.size(), "one success flow file");
     }
 
+    @Test
+    void testToTDF_ConfigPerFlowFile() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        Utils.setupTDFControllerService(runner);
+        Captures captures = commonProcessorTestSetup(runner);
+
+        runner.enqueue("message a".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.enqueue("message b".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c",
+                ConvertToZTDF.KAS_URL_ATTRIBUTE, "https://kas2"));
+        runner.enqueue("message c".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 3);
+        List<Config.TDFConfig> configs = captures.configArgumentCaptor.getAllValues();
+        assertEquals(3, configs.size());
+        // FlowFiles are grouped by policy, so message c is encrypted right after message a, with its own config
+        assertNotSame(configs.get(0), configs.get(1), "config per FlowFile");
+        assertNotSame(configs.get(0).kasInfoList.get(0), configs.get(1).kasInfoList.get(0), "KAS info per FlowFile");
+        assertEquals("https://kas1", configs.get(1).kasInfoList.get(0).URL);
+        assertEquals("https://kas2", configs.get(2).kasInfoList.get(0).URL);
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertToZTDF.REL_SUCCESS);
+        assertEquals(List.of("TDF:message a", "TDF:message c", "TDF:message b"),
+                flowFileList.stream().map(MockFlowFile::getContent).toList());
+    }
+
+    @Test
+    void testToTDF_ConcurrentTransformsDecrypt() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockTDF = mockTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, ZTDFPayloadReaderTest.KAS_URL);
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "16 KB");
+        runner.setProperty(AbstractTDFProcessor.CONCURRENT_TRANSFORMS, "4");
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+        sdkWriterSetup();
+
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            payloads.add(ZTDFPayloadReaderTest.payload(20_000 + i));
+            runner.enqueue(payloads.get(i), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a"));
+        }
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 16);
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertToZTDF.REL_SUCCESS);
+        for (int i = 0; i < 16; i++) {
+            byte[] ztdf = flowFileList.get(i).toByteArray();
+            try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(ztdf))) {
+                ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+                reader.readPayload(ZTDFPayloadReaderTest.unwrapPayloadKey(reader, ztdf, ZTDFPayloadReaderTest.kas()),
+                        plaintext, null, 1);
+                assertArrayEquals(payloads.get(i), plaintext.toByteArray(), "FlowFile " + i + " decrypts");
+            }
+        }
+    }
+
+    @Test
+    void testToTDF_AssertionsCachedAndSigningKeyResolvedOnce() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        runner.setProperty(ConvertToZTDF.SIGN_ASSERTIONS, "true");
+        PrivateKeyService privateKeyService = mock(PrivateKeyService.class);
+        when(privateKeyService.validate(any())).thenReturn(Collections.emptyList());
+        when(privateKeyService.getIdentifier()).thenReturn(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName());
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        when(privateKeyService.getPrivateKey()).thenReturn(generator.generateKeyPair().getPrivate());
+        runner.addControllerService(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName(), privateKeyService, new HashMap<>());
+        runner.enableControllerService(privateKeyService);
+        runner.setProperty(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE, ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName());
+        Utils.setupTDFControllerService(runner);
+        Captures captures = commonProcessorTestSetup(runner);
+
+        String assertion = """
+                {"id": "1111", "type": "handling", "appliesToState": "unencrypted", "scope": "payload",
+                 "statement": {"value": "a test assertion", "format": "sample"}}
+                """;
+        runner.enqueue("message two".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE,
+                "https://example.org/attr/one/value/a,https://example.org/attr/one/value/b", ConvertToZTDF.TDF_ASSERTION_PREFIX + "1", assertion));
+        runner.enqueue("message three".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE,
+                "https://example.org/attr/one/value/c", ConvertToZTDF.TDF_ASSERTION_PREFIX + "1", assertion));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 2);
+        List<Config.TDFConfig> configs = captures.configArgumentCaptor.getAllValues();
+        assertNotSame(configs.get(0), configs.get(1), "one config per policy");
+        AssertionConfig first = configs.get(0).assertionConfigList.get(0);
+        AssertionConfig second = configs.get(1).assertionConfigList.get(0);
+        assertNotSame(first, second, "assertion config per FlowFile");
+        assertEquals(first.id, second.id);
+        assertEquals(first.statement.value, second.statement.value);
+        assertEquals(AssertionConfig.AssertionKeyAlg.RS256, second.signingKey.alg);
+        verify(privateKeyService, times(1)).getPrivateKey();
+        assertEquals(Long.valueOf(1), runner.getCounterValue(ConvertToZTDF.ASSERTION_CACHE_COUNTER + " Hits"));
+    }
+
+    @Test
+    void testToTDF_SegmentProperties() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "1 MB");
+        runner.setProperty(ConvertToZTDF.INTEGRITY_ALGORITHM, "GMAC");
+        runner.setProperty(ConvertToZTDF.SEGMENT_INTEGRITY_ALGORITHM, "HS256");
+        Utils.setupTDFControllerService(runner);
+        Captures captures = commonProcessorTestSetup(runner);
+
+        runner.enqueue("message a".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 1);
+        Config.TDFConfig config = captures.configArgumentCaptor.getValue();
+        assertEquals(1024 * 1024, config.defaultSegmentSize);
+        assertEquals(Config.IntegrityAlgorithm.GMAC, config.integrityAlgorithm);
+        assertEquals(Config.IntegrityAlgorithm.HS256, config.segmentIntegrityAlgorithm);
+    }
+
+    @Test
+    void testToTDF_SegmentSizeBounds() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        runner.setProperty(ConvertToZTDF.KAS_URL, "https://kas1");
+        Utils.setupTDFControllerService(runner);
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "8 MB");
+        runner.assertNotValid();
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "1 KB");
+        runner.assertNotValid();
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "64 KB");
+        runner.assertValid();
+    }
+
+    @Test
+    void testToTDF_PipelinedEncryption() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        runner.setProperty(ConvertToZTDF.PIPELINED_ENCRYPTION, "true");
+        runner.setProperty(ConvertToZTDF.SEGMENT_SIZE, "64 KB");
+        runner.setProperty(ConvertToZTDF.SEGMENTS_IN_FLIGHT, "2");
+        Utils.setupTDFControllerService(runner);
+        Captures captures = commonProcessorTestSetup(runner);
+
+        byte[] large = new byte[(int) AbstractTDFProcessor.CONCURRENT_STAGING_LIMIT + 12345];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) ('a' + i % 26);
+        }
+        runner.enqueue(large, Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.enqueue("message a".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/c"));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 2);
+        List<MockFlowFile> flowFileList = runner.getFlowFilesForRelationship(ConvertToZTDF.REL_SUCCESS);
+        byte[] expected = new byte[large.length + 4];
+        System.arraycopy("TDF:".getBytes(), 0, expected, 0, 4);
+        System.arraycopy(large, 0, expected, 4, large.length);
+        assertArrayEquals(expected, flowFileList.get(0).toByteArray(), "segments written in order");
+        assertEquals("TDF:message a", flowFileList.get(1).getContent());
+        // only the content above the staging limit goes through the pipeline
+        List<InputStream> inputStreams = captures.inputStreamArgumentCaptor.getAllValues();
+        assertNotEquals(inputStreams.get(0).getClass(), inputStreams.get(1).getClass());
+    }
+
+    @Test
+    void testToTDF_SignedAssertionVerifies() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        ((MockRunner) runner.getProcessor()).mockSDK = mockSDK;
+        ((MockRunner) runner.getProcessor()).mockTDF = mockTDF;
+        runner.setProperty(ConvertToZTDF.KAS_URL, ZTDFPayloadReaderTest.KAS_URL);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        signingKeySetup(runner, keyPair.getPrivate());
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+        sdkWriterSetup();
+
+        runner.enqueue("message a".getBytes(), Map.of(ConvertToZTDF.TDF_ATTRIBUTE, "https://example.org/attr/one/value/a",
+                ConvertToZTDF.TDF_ASSERTION_PREFIX + "1", """
+                        {"id": "1111", "type": "handling", "appliesToState": "unencrypted", "scope": "payload",
+                         "statement": {"value": "a test assertion", "format": "sample"}}
+                        """));
+        runner.run(1);
+
+        runner.assertAllFlowFilesTransferred(ConvertToZTDF.REL_SUCCESS, 1);
+        byte[] ztdf = runner.getFlowFilesForRelationship(ConvertToZTDF.REL_SUCCESS).get(0).toByteArray();
+        JsonObject manifest;
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(ztdf)).get();
+             InputStream inputStream = zipFile.getInputStream(zipFile.getEntry("0.manifest.json"))) {
+            manifest = JsonParser.parseString(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+        }
+        JsonObject assertion = manifest.getAsJsonArray("assertions").get(0).getAsJsonObject();
+        assertEquals("1111", assertion.get("id").getAsString());
+        JWSObject signature = JWSObject.parse(assertion.getAsJsonObject("binding").get("signature").getAsString());
+        assertEquals(JWSAlgorithm.RS256, signature.getHeader().getAlgorithm());
+        assertTrue(signature.verify(new RSASSAVerifier((RSAPublicKey) keyPair.getPublic())), "assertion signed with the RSA key");
+        assertFalse(signature.verify(new RSASSAVerifier((RSAPublicKey) generator.generateKeyPair().getPublic())),
+                "assertion not verified by another key");
+    }
+
+    @Test
+    void testToTDF_ECSigningKeyRejected() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(MockRunner.class);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        signingKeySetup(runner, generator.generateKeyPair().getPrivate());
+        Utils.setupTDFControllerService(runner);
+        runner.assertValid();
+        assertTrue(ConvertToZTDF.getAssertionKeyAlg(generator.generateKeyPair().getPrivate()).isEmpty());
+
+        runner.enqueue("message a".getBytes());
+        // scheduling fails rather than encrypting without the requested signature
+        assertThrows(AssertionError.class, () -> runner.run(1));
+        runner.assertQueueNotEmpty();
+    }
+
+    /**
+     * Enables assertion signing with a private key service providing the given key.
+     */
+    private static void signingKeySetup(TestRunner runner, PrivateKey privateKey) throws Exception {
+        runner.setProperty(ConvertToZTDF.SIGN_ASSERTIONS, "true");
+        PrivateKeyService privateKeyService = mock(PrivateKeyService.class);
+        when(privateKeyService.validate(any())).thenReturn(Collections.emptyList());
+        when(privateKeyService.getIdentifier()).thenReturn(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName());
+        when(privateKeyService.getPrivateKey()).thenReturn(privateKey);
+        runner.addControllerService(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName(), privateKeyService, new HashMap<>());
+        runner.enableControllerService(privateKeyService);
+        runner.setProperty(ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE, ConvertToZTDF.PRIVATE_KEY_CONTROLLER_SERVICE.getName());
+    }
+
+    /**
+     * Creates ZTDFs with the SDK, for {@link ZTDFPayloadReaderTest#kas()}.
+     */
+    private void sdkWriterSetup() throws Exception {
+        SDK.Services mockServices = mock(SDK.Services.class);
+        when(mockSDK.getServices()).thenReturn(mockServices);
+        when(mockServices.kas()).thenReturn(ZTDFPayloadReaderTest.kas());
+        TDF tdf = new TDF();
+        doAnswer(invocationOnMock -> {
+            Config.TDFConfig config = invocationOnMock.getArgument(2);
+            // no attributes service here, so the key is split by the configured KAS rather than by attribute grants
+            Config.withAutoconfigure(false).accept(config);
+            return tdf.createTDF(invocationOnMock.getArgument(0), invocationOnMock.getArgument(1), config,
+                    invocationOnMock.getArgument(3), null);
+        }).when(mockTDF).createTDF(any(), any(), any(), any(), any());
+    }
+
     private Captures commonProcessorTestSetup(TestRunner runner) throws IOException, JOSEException, ExecutionException, InterruptedException, DecoderException {
         ((ConvertToZTDFTest.MockRunner) runner.getProcessor()).mockSDK = mockSDK;
         ((ConvertToZTDFTest.MockRunner) runner.getProcessor()).mockTDF = mockTDF;
@@ -169,7 +420,7 @@ class ConvertToZTDFTest {
             byte[] b = IOUtils.toByteArray(inputStream);
             outputStream.write(("TDF:" + new String(b)).getBytes());
             assertNotNull(kas, "KAS is not null");
-            assertSame(mockKAS, kas, "Expected KAS passed in");
+            assertSame(mockKAS, ((CachingKAS) kas).getDelegate(), "Expected KAS wrapped");
             if (new String(b).equals("message two")) {
                 assertEquals(2, config.attributes.size());
                 assertTrue(config.attributes.containsAll(Arrays.asList(new Autoconfigure.AttributeValueFQN("https://example.org/attr/one/value/a"), new Autoconfigure.AttributeValueFQN("https://example.org/attr/one/value/b"))));
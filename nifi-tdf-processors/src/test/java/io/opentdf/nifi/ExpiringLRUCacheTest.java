@@ -0,0 +1,47 @@
+package io.opentdf.nifi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringLRUCacheTest {
+
+    @Test
+    void testEntriesExpireAfterTTL() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringLRUCache<String, String> cache = new ExpiringLRUCache<>(10, 100, clock::get);
+        cache.put("a", "1");
+        clock.set(99);
+        assertEquals("1", cache.get("a"));
+        clock.set(100);
+        assertNull(cache.get("a"), "expired");
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryEvicted() {
+        ExpiringLRUCache<String, String> cache = new ExpiringLRUCache<>(2, Long.MAX_VALUE / 2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"), "least recently used entry evicted");
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void testInvalidate() {
+        ExpiringLRUCache<String, String> cache = new ExpiringLRUCache<>(2, Long.MAX_VALUE / 2);
+        cache.put("a", "1");
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+    }
+}
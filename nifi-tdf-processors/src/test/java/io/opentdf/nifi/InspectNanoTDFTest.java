@@ -0,0 +1,115 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InspectNanoTDFTest {
+
+    static final String POLICY = "{\"uuid\":\"1\",\"body\":{\"dataAttributes\":[{\"attribute\":\"https://example.org/attr/one/value/a\"}," +
+            "{\"attribute\":\"https://example.org/attr/two/value/b\"}],\"dissem\":[]}}";
+
+    /**
+     * Writes a NanoTDF header per the NanoTDF specification, followed by a stand-in for the binding, ephemeral key
+     * and payload.
+     */
+    static byte[] nanoTDF(int policyMode, byte[] policy, byte[] payload) throws IOException {
+        ByteArrayOutputStream nanoTDF = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(nanoTDF);
+        dataOutputStream.write(NanoTDFHeader.MAGIC);
+        // https, 2 byte key identifier
+        dataOutputStream.writeByte(0x11);
+        dataOutputStream.writeByte("kas.local".length());
+        dataOutputStream.writeBytes("kas.local");
+        dataOutputStream.writeBytes("e1");
+        // GMAC binding, secp256r1
+        dataOutputStream.writeByte(0x00);
+        // no signature, AES-256-GCM with a 96 bit tag
+        dataOutputStream.writeByte(0x01);
+        dataOutputStream.writeByte(policyMode);
+        if (policyMode == 0) {
+            dataOutputStream.writeByte(0x01);
+            dataOutputStream.writeByte(policy.length);
+        } else {
+            dataOutputStream.writeShort(policy.length);
+        }
+        dataOutputStream.write(policy);
+        dataOutputStream.write(payload);
+        return nanoTDF.toByteArray();
+    }
+
+    @Test
+    void testHeaderWrittenToAttributes() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(InspectNanoTDF.class);
+        byte[] plaintextPolicy = nanoTDF(1, POLICY.getBytes(StandardCharsets.UTF_8), new byte[1024]);
+        byte[] encryptedPolicy = nanoTDF(2, new byte[40], new byte[1024]);
+        runner.enqueue(plaintextPolicy);
+        runner.enqueue(encryptedPolicy);
+        runner.enqueue("not a NanoTDF".getBytes());
+        runner.run(1);
+
+        runner.assertTransferCount(AbstractTDFProcessor.REL_SUCCESS, 2);
+        runner.assertTransferCount(AbstractTDFProcessor.REL_FAILURE, 1);
+        MockFlowFile plaintext = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS).get(0);
+        plaintext.assertContentEquals(plaintextPolicy);
+        plaintext.assertAttributeEquals(InspectZTDF.KAS_URLS_ATTRIBUTE, "https://kas.local");
+        plaintext.assertAttributeEquals(InspectNanoTDF.KAS_KID_ATTRIBUTE, "e1");
+        plaintext.assertAttributeEquals(InspectNanoTDF.CURVE_ATTRIBUTE, "secp256r1");
+        plaintext.assertAttributeEquals(InspectNanoTDF.POLICY_BINDING_ATTRIBUTE, "gmac");
+        plaintext.assertAttributeEquals(InspectNanoTDF.CIPHER_ATTRIBUTE, "AES-256-GCM-96bit");
+        plaintext.assertAttributeEquals(InspectNanoTDF.POLICY_MODE_ATTRIBUTE, "EMBEDDED_PLAINTEXT");
+        plaintext.assertAttributeEquals(InspectZTDF.DATA_ATTRIBUTES_ATTRIBUTE,
+                "https://example.org/attr/one/value/a,https://example.org/attr/two/value/b");
+        plaintext.assertAttributeEquals(InspectNanoTDF.CHUNKED_ATTRIBUTE, "false");
+
+        MockFlowFile encrypted = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS).get(1);
+        encrypted.assertContentEquals(encryptedPolicy);
+        encrypted.assertAttributeEquals(InspectNanoTDF.POLICY_MODE_ATTRIBUTE, "EMBEDDED_ENCRYPTED");
+        encrypted.assertAttributeNotExists(InspectZTDF.DATA_ATTRIBUTES_ATTRIBUTE);
+        runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_FAILURE).get(0).assertContentEquals("not a NanoTDF");
+    }
+
+    @Test
+    void testRemotePolicy() throws Exception {
+        Map<String, String> attributes = InspectNanoTDF.describe(new ByteArrayInputStream(
+                nanoTDF(0, "policy.local/p1".getBytes(StandardCharsets.UTF_8), new byte[16])));
+        assertEquals("REMOTE", attributes.get(InspectNanoTDF.POLICY_MODE_ATTRIBUTE));
+        assertEquals("https://policy.local/p1", attributes.get(InspectNanoTDF.POLICY_URL_ATTRIBUTE));
+    }
+
+    @Test
+    void testChunkedNanoTDFFirstChunkHeader() throws Exception {
+        byte[] chunk = nanoTDF(1, POLICY.getBytes(StandardCharsets.UTF_8), new byte[64]);
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(chunked);
+        dataOutputStream.write(ChunkedNanoTDF.MAGIC);
+        dataOutputStream.writeInt(chunk.length);
+        dataOutputStream.write(chunk);
+        dataOutputStream.writeInt(0);
+        Map<String, String> attributes = InspectNanoTDF.describe(new ByteArrayInputStream(chunked.toByteArray()));
+        assertEquals("true", attributes.get(InspectNanoTDF.CHUNKED_ATTRIBUTE));
+        assertEquals("https://kas.local", attributes.get(InspectZTDF.KAS_URLS_ATTRIBUTE));
+
+        byte[] empty = ChunkedNanoTDF.MAGIC.clone();
+        assertThrows(IOException.class, () -> InspectNanoTDF.describe(new ByteArrayInputStream(empty)));
+    }
+
+    @Test
+    void testOnlyHeaderRead() throws Exception {
+        byte[] payload = new byte[1024 * 1024];
+        byte[] nanoTDF = nanoTDF(1, POLICY.getBytes(StandardCharsets.UTF_8), payload);
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(nanoTDF);
+        InspectNanoTDF.describe(inputStream);
+        assertEquals(payload.length, inputStream.available(), "payload left unread");
+    }
+}
@@ -0,0 +1,114 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InspectZTDFTest {
+
+    @Test
+    void testManifestWrittenToAttributes() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(InspectZTDF.class);
+        byte[] tdf = ZTDFPayloadReaderTest.createTDF(ZTDFPayloadReaderTest.payload(40_000), 16 * 1024,
+                Config.IntegrityAlgorithm.GMAC);
+        runner.enqueue(tdf);
+        runner.enqueue("not a ZTDF".getBytes());
+        runner.run(1);
+
+        runner.assertTransferCount(AbstractTDFProcessor.REL_SUCCESS, 1);
+        runner.assertTransferCount(AbstractTDFProcessor.REL_FAILURE, 1);
+        MockFlowFile inspected = runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_SUCCESS).get(0);
+        inspected.assertContentEquals(tdf);
+        inspected.assertAttributeEquals(InspectZTDF.DATA_ATTRIBUTES_ATTRIBUTE, "https://example.org/attr/one/value/a");
+        inspected.assertAttributeEquals(InspectZTDF.KAS_URLS_ATTRIBUTE, ZTDFPayloadReaderTest.KAS_URL);
+        inspected.assertAttributeEquals(InspectZTDF.SEGMENT_COUNT_ATTRIBUTE, "3");
+        inspected.assertAttributeEquals(InspectZTDF.PAYLOAD_SIZE_ATTRIBUTE, "40000");
+        inspected.assertAttributeEquals(InspectZTDF.ASSERTION_IDS_ATTRIBUTE, "");
+        runner.getFlowFilesForRelationship(AbstractTDFProcessor.REL_FAILURE).get(0).assertContentEquals("not a ZTDF");
+    }
+
+    @Test
+    void testPayloadNotRead() throws Exception {
+        int payloadSize = 4 * 1024 * 1024;
+        byte[] tdf = ZTDFPayloadReaderTest.createTDF(new byte[payloadSize], 1024 * 1024, Config.IntegrityAlgorithm.GMAC);
+        AtomicLong bytesRead = new AtomicLong();
+        StreamSeekableChannel channel = new StreamSeekableChannel(tdf.length, () -> new FilterInputStream(new ByteArrayInputStream(tdf)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                bytesRead.addAndGet(Math.max(read, 0));
+                return read;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                bytesRead.addAndGet(read < 0 ? 0 : 1);
+                return read;
+            }
+        });
+        ZTDFManifest manifest = InspectZTDF.readManifest(channel);
+        assertEquals(payloadSize, manifest.getPayloadSize());
+        assertTrue(bytesRead.get() < 64 * 1024, "read " + bytesRead.get() + " bytes of a " + tdf.length + " byte ZTDF");
+    }
+
+    private static byte[] zipWithManifest(String manifest) throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+            zipOutputStream.putNextEntry(new ZipEntry(ZTDFManifest.MANIFEST_ENTRY));
+            zipOutputStream.write(manifest.getBytes(StandardCharsets.UTF_8));
+            zipOutputStream.closeEntry();
+        }
+        return zip.toByteArray();
+    }
+
+    @Test
+    void testMalformedManifestRoutedToFailure() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(InspectZTDF.class);
+        for (String manifest : new String[]{"[]", "{\"payload\": {}}", "{\"encryptionInformation\": \"split\"}", "{not json"}) {
+            runner.enqueue(zipWithManifest(manifest));
+        }
+        runner.run(1);
+        runner.assertAllFlowFilesTransferred(AbstractTDFProcessor.REL_FAILURE, 4);
+    }
+
+    @Test
+    void testManifestErrorsNameTheMember() {
+        String integrity = """
+                {"rootSignature": {"alg": "HS256", "sig": "AAAA"}, "segmentHashAlg": "GMAC",
+                 "segmentSizeDefault": 1000, "encryptedSegmentSizeDefault": 1028, "segments": %s}""";
+        String manifest = """
+                {"encryptionInformation": {"keyAccess": [], "policy": "e30=", "method": {"algorithm": "AES-256-GCM"},
+                 "integrityInformation": %s}, "payload": {"url": "0.payload"}}""";
+        assertDoesNotThrow(() -> ZTDFManifest.parse(manifest.formatted(integrity.formatted("[]"))));
+
+        IOException e = assertThrows(IOException.class, () -> ZTDFManifest.parse("{\"payload\": {}}"));
+        assertEquals("invalid ZTDF manifest: encryptionInformation is missing", e.getMessage());
+        e = assertThrows(IOException.class, () -> ZTDFManifest.parse(manifest.formatted("[]")));
+        assertEquals("invalid ZTDF manifest: encryptionInformation.integrityInformation is not an object", e.getMessage());
+        e = assertThrows(IOException.class, () -> ZTDFManifest.parse(manifest.formatted(integrity.formatted("[7]"))));
+        assertEquals("invalid ZTDF manifest: encryptionInformation.integrityInformation.segments[0] is not a segment object",
+                e.getMessage());
+        e = assertThrows(IOException.class, () -> ZTDFManifest.parse(manifest.formatted(integrity.formatted(
+                "[{\"hash\": \"not base64!\", \"segmentSize\": 10}]"))));
+        assertEquals("invalid ZTDF manifest: encryptionInformation.integrityInformation.segments[0].hash is not Base64",
+                e.getMessage());
+        e = assertThrows(IOException.class, () -> ZTDFManifest.parse(manifest.formatted(integrity.formatted(
+                "[{\"hash\": \"AAAA\", \"segmentSize\": \"ten\"}]"))));
+        assertEquals("invalid ZTDF manifest: encryptionInformation.integrityInformation.segments[0].segmentSize is not a number",
+                e.getMessage());
+    }
+}
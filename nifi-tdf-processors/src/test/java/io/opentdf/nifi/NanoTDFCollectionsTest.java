@@ -0,0 +1,45 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class NanoTDFCollectionsTest {
+
+    @Test
+    void testCollectionReusedUntilMaxItems() {
+        NanoTDFCollections collections = new NanoTDFCollections(2, TimeUnit.MINUTES.toNanos(5), 10);
+        Config.NanoTDFConfig first = collections.next("a", () -> mock(Config.NanoTDFConfig.class));
+        assertSame(first, collections.next("a", () -> mock(Config.NanoTDFConfig.class)));
+        Config.NanoTDFConfig third = collections.next("a", () -> mock(Config.NanoTDFConfig.class));
+        assertNotSame(first, third, "new collection after max items");
+        assertSame(third, collections.next("a", () -> mock(Config.NanoTDFConfig.class)));
+    }
+
+    @Test
+    void testCollectionExpiresAfterMaxAge() {
+        AtomicLong clock = new AtomicLong();
+        NanoTDFCollections collections = new NanoTDFCollections(100, 1000, 10, clock::get);
+        Config.NanoTDFConfig first = collections.next("a", () -> mock(Config.NanoTDFConfig.class));
+        clock.set(999);
+        assertSame(first, collections.next("a", () -> mock(Config.NanoTDFConfig.class)));
+        clock.set(1000);
+        assertNotSame(first, collections.next("a", () -> mock(Config.NanoTDFConfig.class)), "new collection after max age");
+    }
+
+    @Test
+    void testCollectionsPerPolicyAreBounded() {
+        NanoTDFCollections collections = new NanoTDFCollections(100, TimeUnit.MINUTES.toNanos(5), 2);
+        Config.NanoTDFConfig a = collections.next("a", () -> mock(Config.NanoTDFConfig.class));
+        Config.NanoTDFConfig b = collections.next("b", () -> mock(Config.NanoTDFConfig.class));
+        assertNotSame(a, b, "one collection per policy");
+        collections.next("c", () -> mock(Config.NanoTDFConfig.class));
+        assertEquals(2, collections.size());
+        assertNotSame(a, collections.next("a", () -> mock(Config.NanoTDFConfig.class)), "least recently used policy dropped");
+    }
+}
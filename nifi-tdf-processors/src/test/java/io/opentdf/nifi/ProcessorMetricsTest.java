@@ -0,0 +1,84 @@
+package io.opentdf.nifi;
+
+import org.apache.nifi.processor.ProcessSession;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProcessorMetricsTest {
+
+    @Test
+    void testPercentilesOfRecentSamples() {
+        ProcessorMetrics.Samples samples = new ProcessorMetrics.Samples();
+        assertEquals(0, samples.percentile(99));
+        for (int i = 1; i <= 100; i++) {
+            samples.record(i);
+        }
+        assertEquals(50, samples.percentile(50));
+        assertEquals(99, samples.percentile(99));
+        assertEquals(100, samples.percentile(100));
+
+        for (int i = 0; i < ProcessorMetrics.SAMPLE_WINDOW; i++) {
+            samples.record(1000);
+        }
+        assertEquals(1000, samples.percentile(1), "older samples leave the window");
+        assertEquals(100 + ProcessorMetrics.SAMPLE_WINDOW, samples.getCount());
+    }
+
+    @Test
+    void testCountersPublishDeltas() {
+        ProcessorMetrics metrics = new ProcessorMetrics();
+        ProcessSession session = mock(ProcessSession.class);
+        metrics.recordTransform(100, 150, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordKASRewrap(TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.adjustCounters(session);
+        verify(session).adjustCounter(ProcessorMetrics.BYTES_IN_COUNTER, 100, false);
+        verify(session).adjustCounter(ProcessorMetrics.BYTES_OUT_COUNTER, 150, false);
+        verify(session).adjustCounter(ProcessorMetrics.TRANSFORM_TIME_COUNTER, 3, false);
+        verify(session).adjustCounter(ProcessorMetrics.KAS_REWRAP_COUNTER, 1, false);
+        verify(session).adjustCounter(ProcessorMetrics.KAS_REWRAP_TIME_COUNTER, 20, false);
+        verify(session, never()).adjustCounter(eq(ProcessorMetrics.KAS_PUBLIC_KEY_COUNTER), anyLong(), anyBoolean());
+
+        ProcessSession nextSession = mock(ProcessSession.class);
+        metrics.recordTransform(10, 10, 0);
+        metrics.adjustCounters(nextSession);
+        verify(nextSession).adjustCounter(ProcessorMetrics.BYTES_IN_COUNTER, 10, false);
+        verify(nextSession, never()).adjustCounter(eq(ProcessorMetrics.KAS_REWRAP_COUNTER), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void testFailuresByRootCause() {
+        ProcessorMetrics metrics = new ProcessorMetrics();
+        metrics.recordFailure(new IOException(new IllegalArgumentException("bad policy")));
+        metrics.recordFailure(new IOException("short read"));
+        metrics.recordFailure((Throwable) null);
+        assertEquals(1, metrics.getFailures("IllegalArgumentException"));
+        assertEquals(1, metrics.getFailures("IOException"));
+        assertEquals(1, metrics.getFailures("Unknown"));
+    }
+
+    @Test
+    void testSnapshot() {
+        ProcessorMetrics metrics = new ProcessorMetrics();
+        ExpiringLRUCache<String, String> cache = new ExpiringLRUCache<>(10, Long.MAX_VALUE);
+        metrics.registerCache("Test Cache", cache::getHits, cache::getMisses);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        metrics.recordKASPublicKey(TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.recordBatch(7);
+
+        Map<String, Number> snapshot = metrics.snapshot();
+        assertEquals(0.75, snapshot.get("Test Cache Hit Rate").doubleValue());
+        assertEquals(4.0, snapshot.get("KAS Public Key Time p99 (ms)").doubleValue());
+        assertEquals(7L, snapshot.get("Batch Size p99"));
+        assertEquals(1L, snapshot.get(ProcessorMetrics.KAS_PUBLIC_KEY_COUNTER));
+    }
+}
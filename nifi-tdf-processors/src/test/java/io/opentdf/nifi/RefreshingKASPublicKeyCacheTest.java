@@ -0,0 +1,189 @@
+package io.opentdf.nifi;
+
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.NanoTDFType;
+import io.opentdf.platform.sdk.SDK;
+import org.apache.nifi.logging.ComponentLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class RefreshingKASPublicKeyCacheTest {
+
+    AtomicLong clock;
+    SDK.KAS mockKAS;
+    SDK.KAS refreshKAS;
+    RefreshingKASPublicKeyCache cache;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong();
+        mockKAS = mock(SDK.KAS.class);
+        refreshKAS = mockKAS;
+        cache = new RefreshingKASPublicKeyCache(1000, mock(ComponentLog.class), () -> refreshKAS, clock::get, null);
+    }
+
+    static Config.KASInfo kasInfo(String url, String kid) {
+        Config.KASInfo kasInfo = new Config.KASInfo();
+        kasInfo.URL = url;
+        kasInfo.KID = kid;
+        return kasInfo;
+    }
+
+    @Test
+    void testKeyCachedWithinTTL() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        assertEquals("r1", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        clock.set(999);
+        assertEquals("r1", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        verify(mockKAS, times(1)).getPublicKey(any());
+
+        clock.set(1000);
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        verify(mockKAS, times(2)).getPublicKey(any());
+    }
+
+    @Test
+    void testKeysCachedByAlgorithmAndKid() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        when(mockKAS.getECPublicKey(any(), any())).thenReturn(kasInfo("https://kas1", "e1"));
+        assertEquals("r1", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        assertEquals("e1", cache.getECPublicKey(mockKAS, kasInfo("https://kas1", null), NanoTDFType.ECCurve.SECP256R1).KID);
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", "r0"));
+        assertEquals(3, cache.size());
+        verify(mockKAS, times(2)).getPublicKey(any());
+    }
+
+    @Test
+    void testRefreshedBeforeExpiry() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        clock.set(700);
+        cache.refreshExpiring();
+        verify(mockKAS, times(1)).getPublicKey(any());
+
+        clock.set(800);
+        cache.refreshExpiring();
+        verify(mockKAS, times(2)).getPublicKey(any());
+        clock.set(1500);
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        verify(mockKAS, times(2)).getPublicKey(any());
+    }
+
+    @Test
+    void testRotationInvalidatesOtherKeysOfKAS() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"), kasInfo("https://kas1", "r2"));
+        when(mockKAS.getECPublicKey(any(), any())).thenReturn(kasInfo("https://kas1", "e1"), kasInfo("https://kas1", "e2"));
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        clock.set(500);
+        cache.getECPublicKey(mockKAS, kasInfo("https://kas1", null), NanoTDFType.ECCurve.SECP256R1);
+
+        clock.set(1000);
+        assertEquals("r2", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        clock.set(1001);
+        assertEquals("e2", cache.getECPublicKey(mockKAS, kasInfo("https://kas1", null), NanoTDFType.ECCurve.SECP256R1).KID,
+                "EC key refetched after the KAS rotated its RSA key");
+    }
+
+    @Test
+    void testRotationKeepsRefreshedKey() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"), kasInfo("https://kas1", "r2"));
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        clock.set(1000);
+        assertEquals("r2", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        clock.set(1001);
+        assertEquals("r2", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        verify(mockKAS, times(2)).getPublicKey(any());
+    }
+
+    @Test
+    void testConcurrentMissesFetchOnce() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockKAS.getPublicKey(any())).thenAnswer(invocation -> {
+            fetching.countDown();
+            release.await();
+            return kasInfo("https://kas1", "r1");
+        });
+        AtomicReference<String> firstKid = new AtomicReference<>();
+        Thread first = new Thread(() -> firstKid.set(cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID));
+        first.start();
+        assertTrue(fetching.await(10, TimeUnit.SECONDS));
+        AtomicReference<String> secondKid = new AtomicReference<>();
+        Thread second = new Thread(() -> secondKid.set(cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID));
+        second.start();
+        while (second.getState() != Thread.State.BLOCKED) {
+            assertTrue(second.isAlive(), "second miss waits for the first fetch");
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.join(10000);
+        second.join(10000);
+        assertEquals("r1", firstKid.get());
+        assertEquals("r1", secondKid.get());
+        verify(mockKAS, times(1)).getPublicKey(any());
+    }
+
+    @Test
+    void testExpiredKeyServedWhileRefreshing() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        cache = new RefreshingKASPublicKeyCache(1000, mock(ComponentLog.class), () -> refreshKAS, clock::get, scheduler);
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"), kasInfo("https://kas1", "r2"));
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+
+        clock.set(1000);
+        assertEquals("r1", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        assertEquals("r1", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).execute(refresh.capture());
+        verify(mockKAS, times(1)).getPublicKey(any());
+
+        refresh.getValue().run();
+        assertEquals("r2", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+        verify(mockKAS, times(2)).getPublicKey(any());
+
+        // a key more than a TTL past its expiry is no longer served while refreshing
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r3"));
+        clock.set(3000);
+        assertEquals("r3", cache.getPublicKey(mockKAS, kasInfo("https://kas1", null)).KID);
+    }
+
+    @Test
+    void testUnusedKeysDropped() {
+        when(mockKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        cache.getPublicKey(mockKAS, kasInfo("https://kas1", null));
+        clock.set(2000);
+        cache.refreshExpiring();
+        assertEquals(0, cache.size());
+        verify(mockKAS, times(1)).getPublicKey(any());
+    }
+
+    @Test
+    void testRefreshUsesOwnedKASAndCopiedKey() {
+        SDK.KAS callerKAS = mock(SDK.KAS.class);
+        refreshKAS = mock(SDK.KAS.class);
+        when(callerKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        when(refreshKAS.getPublicKey(any())).thenReturn(kasInfo("https://kas1", "r1"));
+        Config.KASInfo requested = kasInfo("https://kas1", "r1");
+        cache.getPublicKey(callerKAS, requested);
+        // the caller reuses its KAS info for another KAS after the miss
+        requested.URL = "https://kas2";
+        requested.KID = null;
+
+        clock.set(800);
+        cache.refreshExpiring();
+        verify(callerKAS, times(1)).getPublicKey(any());
+        verify(refreshKAS, times(1)).getPublicKey(argThat(kasInfo -> "https://kas1".equals(kasInfo.URL) && "r1".equals(kasInfo.KID)));
+    }
+}
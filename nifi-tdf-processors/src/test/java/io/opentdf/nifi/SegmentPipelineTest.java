@@ -0,0 +1,175 @@
+package io.opentdf.nifi;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentPipelineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
+    @Test
+    void testContentTransformedInOrder() throws Exception {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 1000, 2);
+        for (int size : new int[]{0, 1, 999, 1000, 1001, 25_678}) {
+            byte[] content = content(size);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            pipeline.run(new ByteArrayInputStream(content), outputStream, (in, out) -> {
+                out.write(0x7f);
+                byte[] buffer = new byte[333];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            });
+            byte[] written = outputStream.toByteArray();
+            assertEquals(size + 1, written.length);
+            assertEquals(0x7f, written[0]);
+            for (int i = 0; i < size; i++) {
+                assertEquals(content[i], written[i + 1], "byte " + i + " of " + size);
+            }
+        }
+    }
+
+    @Test
+    void testReadFailurePropagates() {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 100, 2);
+        InputStream failing = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (++read > 250) {
+                    throw new IOException("content unavailable");
+                }
+                return 1;
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> pipeline.run(failing, new ByteArrayOutputStream(),
+                (in, out) -> IOUtils.copy(in, out)));
+        assertEquals("content unavailable", e.getMessage());
+    }
+
+    @Test
+    void testWriteFailurePropagates() {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 100, 1);
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("repository full");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> pipeline.run(new ByteArrayInputStream(content(10_000)), failing,
+                (in, out) -> IOUtils.copy(in, out)));
+        assertEquals("repository full", e.getMessage());
+    }
+
+    @Test
+    void testTransformFailureReleasesThreads() throws Exception {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 100, 1);
+        assertThrows(IOException.class, () -> pipeline.run(new ByteArrayInputStream(content(10_000)), new ByteArrayOutputStream(),
+                (in, out) -> {
+                    in.read();
+                    throw new IOException("encryption failed");
+                }));
+        // the read-ahead task blocked on a full queue was cancelled, so both threads are free for the next pipeline
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        pipeline.run(new ByteArrayInputStream(content(500)), outputStream, (in, out) -> IOUtils.copy(in, out));
+        assertArrayEquals(content(500), outputStream.toByteArray());
+    }
+
+    @Test
+    void testTransformFailureJoinsReader() {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 100, 1);
+        AtomicInteger reading = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        InputStream slow = new InputStream() {
+            @Override
+            public int read() {
+                return 1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                reading.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // finish the read, as a content repository file read does, keeping the interrupt
+                    Thread.currentThread().interrupt();
+                }
+                reads.incrementAndGet();
+                reading.decrementAndGet();
+                Arrays.fill(b, off, off + len, (byte) 1);
+                return len;
+            }
+        };
+        assertThrows(IOException.class, () -> pipeline.run(slow, new ByteArrayOutputStream(), (in, out) -> {
+            in.read();
+            throw new IOException("encryption failed");
+        }));
+        // the content stream is only valid until the pipeline returns, so the read-ahead task has stopped using it
+        assertEquals(0, reading.get());
+        int readsAtReturn = reads.get();
+        assertDoesNotThrow(() -> Thread.sleep(100));
+        assertEquals(readsAtReturn, reads.get());
+    }
+
+    @Test
+    void testSegmentBuffersReused() throws Exception {
+        SegmentPipeline pipeline = new SegmentPipeline(executor, 100, 2);
+        Set<byte[]> readBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        InputStream recording = new InputStream() {
+            private int remaining = 10_000;
+
+            @Override
+            public int read() {
+                return remaining-- > 0 ? 1 : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                readBuffers.add(b);
+                if (remaining == 0) {
+                    return -1;
+                }
+                int read = Math.min(len, remaining);
+                remaining -= read;
+                Arrays.fill(b, off, off + read, (byte) 1);
+                return read;
+            }
+        };
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        pipeline.run(recording, outputStream, (in, out) -> IOUtils.copy(in, out));
+        assertEquals(10_000, outputStream.size());
+        assertTrue(readBuffers.size() <= 4, "read-ahead used " + readBuffers.size() + " buffers for 100 segments");
+    }
+}
@@ -1,13 +1,28 @@
 package io.opentdf.nifi;
 
+import com.google.common.util.concurrent.Futures;
+import io.opentdf.platform.policy.namespaces.ListNamespacesRequest;
+import io.opentdf.platform.policy.namespaces.ListNamespacesResponse;
+import io.opentdf.platform.policy.namespaces.NamespaceServiceGrpc;
+import io.opentdf.platform.sdk.SDK;
+import io.opentdf.platform.sdk.SDKBuilder;
 import org.apache.nifi.controller.ConfigurationContext;
 import org.apache.nifi.reporting.InitializationException;
 import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.opentdf.nifi.SimpleOpenTDFControllerService.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class SimpleOpenTDFControllerServiceTest {
@@ -66,4 +81,89 @@ class SimpleOpenTDFControllerServiceTest {
         // Ensure that the enabled method throws an InitializationException
         assertThrows(InitializationException.class, () -> service.enabled(context));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSharedSDKBuiltOnceAndClosedOnDisable() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertFromNanoTDF.class);
+        SDK mockSDK = Mockito.mock(SDK.class);
+        SDKBuilder mockSDKBuilder = Mockito.mock(SDKBuilder.class);
+        Mockito.when(mockSDKBuilder.platformEndpoint("http://platform")).thenReturn(mockSDKBuilder);
+        Mockito.when(mockSDKBuilder.clientSecret("my-client", "123-456")).thenReturn(mockSDKBuilder);
+        Mockito.when(mockSDKBuilder.build()).thenReturn(mockSDK);
+
+        MockService service = new MockService();
+        service.mockSDKBuilder = mockSDKBuilder;
+        Map<String, String> controllerPropertyMap = new HashMap<>();
+        controllerPropertyMap.put(PLATFORM_ENDPOINT.getName(), "http://platform");
+        controllerPropertyMap.put(CLIENT_ID.getName(), "my-client");
+        controllerPropertyMap.put(CLIENT_SECRET.getName(), "123-456");
+        controllerPropertyMap.put(USE_PLAINTEXT.getName(), "false");
+        runner.addControllerService("tdf-service", service, controllerPropertyMap);
+        runner.enableControllerService(service);
+
+        assertSame(mockSDK, service.getSDK());
+        assertSame(mockSDK, service.getSDK());
+        Mockito.verify(mockSDKBuilder, Mockito.times(1)).build();
+
+        runner.disableControllerService(service);
+        Mockito.verify(mockSDK, Mockito.times(1)).close();
+    }
+
+    @Test
+    void testTokenKeepAliveIsOptIn() {
+        assertFalse(TOKEN_REFRESH_INTERVAL.isRequired());
+        assertNull(TOKEN_REFRESH_INTERVAL.getDefaultValue());
+    }
+
+    @Test
+    void testTokenRefreshUsesSharedSDKOnceBuilt() throws Exception {
+        TestRunner runner = TestRunners.newTestRunner(ConvertFromNanoTDF.class);
+        SDK mockSDK = Mockito.mock(SDK.class);
+        SDK.Services mockServices = Mockito.mock(SDK.Services.class);
+        NamespaceServiceGrpc.NamespaceServiceFutureStub mockNamespaces = Mockito.mock(NamespaceServiceGrpc.NamespaceServiceFutureStub.class);
+        Mockito.when(mockSDK.getServices()).thenReturn(mockServices);
+        Mockito.when(mockServices.namespaces()).thenReturn(mockNamespaces);
+        Mockito.when(mockNamespaces.listNamespaces(Mockito.any(ListNamespacesRequest.class)))
+                .thenReturn(Futures.immediateFuture(ListNamespacesResponse.getDefaultInstance()));
+        SDKBuilder mockSDKBuilder = Mockito.mock(SDKBuilder.class);
+        Mockito.when(mockSDKBuilder.platformEndpoint("http://platform")).thenReturn(mockSDKBuilder);
+        Mockito.when(mockSDKBuilder.clientSecret("my-client", "123-456")).thenReturn(mockSDKBuilder);
+        Mockito.when(mockSDKBuilder.build()).thenReturn(mockSDK);
+
+        MockService service = new MockService();
+        service.mockSDKBuilder = mockSDKBuilder;
+        Map<String, String> controllerPropertyMap = new HashMap<>();
+        controllerPropertyMap.put(PLATFORM_ENDPOINT.getName(), "http://platform");
+        controllerPropertyMap.put(CLIENT_ID.getName(), "my-client");
+        controllerPropertyMap.put(CLIENT_SECRET.getName(), "123-456");
+        controllerPropertyMap.put(USE_PLAINTEXT.getName(), "false");
+        controllerPropertyMap.put(TOKEN_REFRESH_INTERVAL.getName(), "1 hour");
+        runner.addControllerService("tdf-service", service, controllerPropertyMap);
+        runner.enableControllerService(service);
+
+        // nothing to refresh before a processor has used the SDK
+        service.refreshToken();
+        Mockito.verify(mockSDKBuilder, Mockito.never()).build();
+
+        service.getSDK();
+        service.refreshToken();
+        Mockito.verify(mockNamespaces, Mockito.times(1)).listNamespaces(Mockito.any(ListNamespacesRequest.class));
+
+        // repeated failures are tolerated and retried at the next interval
+        Mockito.when(mockNamespaces.listNamespaces(Mockito.any(ListNamespacesRequest.class)))
+                .thenReturn(Futures.immediateFailedFuture(new IllegalStateException("permission denied")));
+        service.refreshToken();
+        service.refreshToken();
+        Mockito.verify(mockNamespaces, Mockito.times(3)).listNamespaces(Mockito.any(ListNamespacesRequest.class));
+        runner.disableControllerService(service);
+    }
+
+    public static class MockService extends SimpleOpenTDFControllerService {
+        SDKBuilder mockSDKBuilder;
+
+        @Override
+        SDKBuilder createSDKBuilder() {
+            return mockSDKBuilder;
+        }
+    }
+}
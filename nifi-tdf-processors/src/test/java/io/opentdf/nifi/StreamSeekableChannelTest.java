@@ -0,0 +1,55 @@
+package io.opentdf.nifi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamSeekableChannelTest {
+
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes();
+
+    private static String read(StreamSeekableChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.position(position);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        }
+        return new String(buffer.array(), 0, buffer.position());
+    }
+
+    @Test
+    void testSeekForwardSkipsAndSeekBackwardReopens() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        try (StreamSeekableChannel channel = new StreamSeekableChannel(CONTENT.length, () -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(CONTENT);
+        })) {
+            assertEquals(16, channel.size());
+            assertEquals("cdef", read(channel, 12, 4));
+            assertEquals(16, channel.position());
+            assertEquals(1, opens.get());
+            assertEquals("23", read(channel, 2, 2));
+            assertEquals(2, opens.get(), "backward seek opens a new stream");
+            assertEquals("89", read(channel, 8, 2));
+            assertEquals(2, opens.get(), "forward seek skips");
+            assertEquals("ef", read(channel, 14, 10), "read stops at the end of the content");
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void testForwardOnly() throws Exception {
+        StreamSeekableChannel channel = StreamSeekableChannel.forward(new ByteArrayInputStream(CONTENT), CONTENT.length);
+        assertEquals("4567", read(channel, 4, 4));
+        assertEquals("a", read(channel, 10, 1));
+        assertThrows(IOException.class, () -> read(channel, 0, 1));
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertThrows(ClosedChannelException.class, () -> channel.position(0));
+    }
+}
@@ -0,0 +1,292 @@
+package io.opentdf.nifi;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.opentdf.platform.policy.KeyAccessServer;
+import io.opentdf.platform.policy.kasregistry.KeyAccessServerRegistryServiceGrpc;
+import io.opentdf.platform.policy.kasregistry.ListKeyAccessServersRequest;
+import io.opentdf.platform.policy.kasregistry.ListKeyAccessServersResponse;
+import io.opentdf.platform.sdk.AsymDecryption;
+import io.opentdf.platform.sdk.Config;
+import io.opentdf.platform.sdk.CryptoUtils;
+import io.opentdf.platform.sdk.KeyType;
+import io.opentdf.platform.sdk.Manifest;
+import io.opentdf.platform.sdk.SDK;
+import io.opentdf.platform.sdk.TDF;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ZTDFPayloadReaderTest {
+
+    static final String KAS_URL = "https://kas.local";
+    static final String PLATFORM_URL = "https://platform.local";
+
+    private static final KeyPair KEY_PAIR = CryptoUtils.generateRSAKeypair();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a KAS serving its public key and unwrapping the keys of the ZTDFs created by {@link #createTDF}
+     */
+    static SDK.KAS kas() {
+        SDK.KAS kas = mock(SDK.KAS.class);
+        when(kas.getPublicKey(any(Config.KASInfo.class))).thenAnswer(invocation -> {
+            Config.KASInfo kasInfo = new Config.KASInfo();
+            kasInfo.URL = ((Config.KASInfo) invocation.getArgument(0)).URL;
+            kasInfo.KID = "r1";
+            kasInfo.PublicKey = CryptoUtils.getRSAPublicKeyPEM(KEY_PAIR.getPublic());
+            return kasInfo;
+        });
+        when(kas.unwrap(any(Manifest.KeyAccess.class), any(), any(KeyType.class))).thenAnswer(invocation -> {
+            Manifest.KeyAccess keyAccess = invocation.getArgument(0);
+            return new AsymDecryption(KEY_PAIR.getPrivate()).decrypt(Base64.getDecoder().decode(keyAccess.wrappedKey));
+        });
+        return kas;
+    }
+
+    /**
+     * Creates a ZTDF with the SDK, wrapping its key for {@link #kas()}.
+     */
+    static byte[] createTDF(byte[] payload, int segmentSize, Config.IntegrityAlgorithm segmentIntegrityAlgorithm) throws Exception {
+        Config.KASInfo kasInfo = new Config.KASInfo();
+        kasInfo.URL = KAS_URL;
+        kasInfo.KID = "r1";
+        kasInfo.PublicKey = CryptoUtils.getRSAPublicKeyPEM(KEY_PAIR.getPublic());
+        // no attributes service here, so the key is split by the configured KAS rather than by attribute grants
+        Config.TDFConfig config = Config.newTDFConfig(Config.withKasInformation(kasInfo), Config.withSegmentSize(segmentSize),
+                Config.withDataAttributes("https://example.org/attr/one/value/a"), Config.withAutoconfigure(false));
+        config.segmentIntegrityAlgorithm = segmentIntegrityAlgorithm;
+        SDK.KAS kas = kas();
+        ByteArrayOutputStream tdf = new ByteArrayOutputStream();
+        new TDF().createTDF(new ByteArrayInputStream(payload), tdf, config, kas, null);
+        return tdf.toByteArray();
+    }
+
+    /**
+     * @return a KAS registry listing the given KAS URLs, from which the SDK reader builds its KAS allowlist
+     */
+    static KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub kasRegistry(String... kasUrls) {
+        ListKeyAccessServersResponse.Builder response = ListKeyAccessServersResponse.newBuilder();
+        for (String kasUrl : kasUrls) {
+            response.addKeyAccessServers(KeyAccessServer.newBuilder().setUri(kasUrl).build());
+        }
+        KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub kasRegistry =
+                mock(KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub.class);
+        when(kasRegistry.listKeyAccessServers(any(ListKeyAccessServersRequest.class)))
+                .thenReturn(Futures.immediateFuture(response.build()));
+        return kasRegistry;
+    }
+
+    /**
+     * Unwraps the payload key with the SDK reader, allowing {@link #KAS_URL}.
+     */
+    static byte[] unwrapPayloadKey(ZTDFPayloadReader reader, byte[] tdf, SDK.KAS kas) throws IOException {
+        return unwrapPayloadKey(reader, tdf, kas, kasRegistry(KAS_URL));
+    }
+
+    static byte[] unwrapPayloadKey(ZTDFPayloadReader reader, byte[] tdf, SDK.KAS kas,
+                                   KeyAccessServerRegistryServiceGrpc.KeyAccessServerRegistryServiceFutureStub kasRegistry) throws IOException {
+        return reader.unwrapPayloadKey(kas, capturingKAS -> new TDF().loadTDF(new SeekableInMemoryByteChannel(tdf), capturingKAS,
+                Config.newTDFReaderConfig(Config.withDisableAssertionVerification(true)), kasRegistry, PLATFORM_URL));
+    }
+
+    /**
+     * Rewrites the manifest of a ZTDF, copying the other entries as they are.
+     */
+    static byte[] editManifest(byte[] tdf, Consumer<JsonObject> edit) throws IOException {
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(tdf)).get();
+             ZipArchiveOutputStream zip = new ZipArchiveOutputStream(edited)) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+                if (!entry.getName().equals(ZTDFManifest.MANIFEST_ENTRY)) {
+                    zip.addRawArchiveEntry(entry, zipFile.getRawInputStream(entry));
+                    continue;
+                }
+                JsonObject manifest = JsonParser.parseString(new String(zipFile.getInputStream(entry).readAllBytes(),
+                        StandardCharsets.UTF_8)).getAsJsonObject();
+                edit.accept(manifest);
+                byte[] json = manifest.toString().getBytes(StandardCharsets.UTF_8);
+                CRC32 crc = new CRC32();
+                crc.update(json);
+                ZipArchiveEntry manifestEntry = new ZipArchiveEntry(entry.getName());
+                manifestEntry.setMethod(ZipEntry.STORED);
+                manifestEntry.setSize(json.length);
+                manifestEntry.setCrc(crc.getValue());
+                zip.putArchiveEntry(manifestEntry);
+                zip.write(json);
+                zip.closeArchiveEntry();
+            }
+        }
+        return edited.toByteArray();
+    }
+
+    static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    @Test
+    void testParallelAndSequentialDecryption() throws Exception {
+        byte[] payload = payload(100_000);
+        for (Config.IntegrityAlgorithm algorithm : Config.IntegrityAlgorithm.values()) {
+            byte[] tdf = createTDF(payload, 16 * 1024, algorithm);
+            for (ExecutorService segmentExecutor : new ExecutorService[]{null, executor}) {
+                try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+                    assertEquals(7, reader.getManifest().getSegments().size());
+                    assertEquals(algorithm.name(), reader.getManifest().getSegmentHashAlgorithm());
+                    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+                    reader.readPayload(unwrapPayloadKey(reader, tdf, kas()), plaintext, segmentExecutor, 3);
+                    assertArrayEquals(payload, plaintext.toByteArray(), algorithm + " with executor " + segmentExecutor);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testManifest() throws Exception {
+        byte[] tdf = createTDF(payload(40_000), 16 * 1024, Config.IntegrityAlgorithm.GMAC);
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+            ZTDFManifest manifest = reader.getManifest();
+            assertEquals(40_000, manifest.getPayloadSize());
+            assertEquals(3, manifest.getSegments().size());
+            assertEquals(List.of(KAS_URL), manifest.getKasUrls());
+            assertEquals(List.of("https://example.org/attr/one/value/a"), manifest.getDataAttributes());
+            assertTrue(manifest.getAssertionIds().isEmpty());
+        }
+    }
+
+    @Test
+    void testReadRange() throws Exception {
+        byte[] payload = payload(100_000);
+        byte[] tdf = createTDF(payload, 16 * 1024, Config.IntegrityAlgorithm.HS256);
+        ZTDFPayloadReader index;
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+            index = reader;
+        }
+        long[][] ranges = {{0, 10}, {16 * 1024 - 5, 10}, {16 * 1024, 16 * 1024}, {99_990, 100}, {100_000, 5}, {5, 0}, {1, 99_999}};
+        for (long[] range : ranges) {
+            ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+            try (ZTDFPayloadReader reader = index.withChannel(StreamSeekableChannel.forward(new ByteArrayInputStream(tdf), tdf.length))) {
+                reader.readRange(unwrapPayloadKey(index, tdf, kas()), range[0], range[1], plaintext, executor, 2);
+            }
+            int end = (int) Math.min(payload.length, range[0] + range[1]);
+            assertArrayEquals(Arrays.copyOfRange(payload, (int) range[0], end), plaintext.toByteArray(),
+                    "range " + range[0] + "+" + range[1]);
+        }
+        try (ZTDFPayloadReader reader = index.withChannel(new SeekableInMemoryByteChannel(tdf))) {
+            byte[] payloadKey = unwrapPayloadKey(reader, tdf, kas());
+            assertThrows(IOException.class, () -> reader.readRange(payloadKey, 100_001, 1, new ByteArrayOutputStream(), null, 1));
+        }
+    }
+
+    @Test
+    void testTamperedSegmentRejected() throws Exception {
+        byte[] payload = payload(50_000);
+        byte[] tdf = createTDF(payload, 16 * 1024, Config.IntegrityAlgorithm.GMAC);
+        // the payload entry comes first, so this byte lies in the ciphertext of the second segment
+        tdf[16 * 1024 + 300] ^= 1;
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+            byte[] payloadKey = unwrapPayloadKey(reader, tdf, kas());
+            assertThrows(IOException.class, () -> reader.readPayload(payloadKey, new ByteArrayOutputStream(), executor, 2));
+        }
+    }
+
+    @Test
+    void testUnlistedKASRejected() throws Exception {
+        byte[] tdf = createTDF(payload(1000), 16 * 1024, Config.IntegrityAlgorithm.GMAC);
+        SDK.KAS kas = kas();
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+            assertThrows(IOException.class, () -> unwrapPayloadKey(reader, tdf, kas, kasRegistry("https://other.kas")));
+        }
+        verify(kas, never()).unwrap(any(), any(), any());
+    }
+
+    @Test
+    void testECWrappedKey() throws Exception {
+        byte[] payload = payload(40_000);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        String ephemeralPublicKey = "-----BEGIN PUBLIC KEY-----\n" +
+                Base64.getMimeEncoder().encodeToString(generator.generateKeyPair().getPublic().getEncoded()) +
+                "\n-----END PUBLIC KEY-----\n";
+        byte[] tdf = editManifest(createTDF(payload, 16 * 1024, Config.IntegrityAlgorithm.HS256), manifest -> {
+            JsonObject keyAccess = manifest.getAsJsonObject("encryptionInformation").getAsJsonArray("keyAccess")
+                    .get(0).getAsJsonObject();
+            keyAccess.addProperty("type", "ec-wrapped");
+            keyAccess.addProperty("ephemeralPublicKey", ephemeralPublicKey);
+        });
+        // the KAS stand-in unwraps by the wrapped key alone, so the key type is only what the reader passes along
+        List<Manifest.KeyAccess> unwrapped = new ArrayList<>();
+        SDK.KAS kas = kas();
+        doAnswer(invocation -> {
+            Manifest.KeyAccess keyAccess = invocation.getArgument(0);
+            unwrapped.add(keyAccess);
+            return new AsymDecryption(KEY_PAIR.getPrivate()).decrypt(Base64.getDecoder().decode(keyAccess.wrappedKey));
+        }).when(kas).unwrap(any(Manifest.KeyAccess.class), any(), any(KeyType.class));
+        try (ZTDFPayloadReader reader = ZTDFPayloadReader.open(new SeekableInMemoryByteChannel(tdf))) {
+            ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+            reader.readPayload(unwrapPayloadKey(reader, tdf, kas), plaintext, executor, 2);
+            assertArrayEquals(payload, plaintext.toByteArray());
+        }
+        assertEquals(1, unwrapped.size());
+        assertEquals("ec-wrapped", unwrapped.get(0).keyType);
+        assertEquals(ephemeralPublicKey, unwrapped.get(0).ephemeralPublicKey);
+    }
+
+    @Test
+    void testNotAZTDF() {
+        assertThrows(IOException.class, () -> ZTDFPayloadReader.open(new SeekableInMemoryByteChannel("not a zip".getBytes())));
+    }
+
+    @Test
+    void testSignatureEncodings() throws Exception {
+        byte[] key = new byte[32];
+        byte[] data = "segment".getBytes(StandardCharsets.UTF_8);
+        byte[] hs256 = ZTDFPayloadReader.signature("HS256", key, data);
+        assertEquals(32, hs256.length);
+        assertTrue(ZTDFPayloadReader.matches(hs256, hs256));
+        assertTrue(ZTDFPayloadReader.matches(hs256, HexFormat.of().formatHex(hs256).getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(ZTDFPayloadReader.matches(hs256, new byte[32]));
+
+        byte[] encrypted = new byte[40];
+        encrypted[39] = 7;
+        byte[] gmac = ZTDFPayloadReader.signature("GMAC", key, encrypted);
+        assertEquals(16, gmac.length);
+        assertEquals(7, gmac[15]);
+        assertThrows(IOException.class, () -> ZTDFPayloadReader.signature("SHA1", key, data));
+    }
+}